@@ -0,0 +1,380 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts, latency histograms and error counts of the operations of a MemberArchive.
+ * Every archive has one, from MemberArchive.getMetrics.
+ *
+ * <p>Every operation is counted, but reading the clock costs about as much as a lookup, so
+ * the latency of single operations is only measured for a random sample of them, by default one
+ * in 16. Each sampled latency stands in for the operations around it, so the percentiles are
+ * estimates over all operations. Batches, e.g. MemberArchive.registerPoints(int[], int[]), and
+ * upgrade runs are always timed, and each element of a batch is recorded with the mean time of
+ * the batch.</p>
+ *
+ * <p>Counts are kept per thread, so a thread counts an operation with a plain increment of its
+ * own counter rather than an atomic update of a shared one, and the counters of every thread
+ * are summed when they are read. Recording allocates nothing and takes no lock, so the metrics
+ * can stay on in production. Read them with snapshot, or through JMX after
+ * registerMBeans.</p>
+ *
+ * <p>A thread's counters refer to nothing but themselves and their thread, weakly, so neither
+ * the metrics nor an archive dropped by its owner is kept alive by the threads that used it.
+ * When a thread has ended, its counts are added to a total and its counters are dropped, the
+ * next time the counters are read or a new thread starts recording.</p>
+ *
+ * @author mort
+ */
+public class ArchiveMetrics {
+  /**
+   * The kinds of archive operations measured.
+   */
+  public enum Operation {
+    /** Adding members, with addMember or addMembers. */
+    ADD("add"),
+    /** Crediting points, with registerPoints. */
+    CREDIT("credit"),
+    /** Looking up members, with findMember. */
+    LOOKUP("lookup"),
+    /** Members logging in to check their points, with findPoints. */
+    LOGIN("login"),
+    /** Upgrade runs, with checkAndUpgradeMembers or checkAndUpgradeCandidates. */
+    UPGRADE("upgrade");
+
+    private final String name;
+
+    Operation(String name) {
+      this.name = name;
+    }
+
+    /**
+     * Returns the name of the operation, as used in the JMX object names.
+     *
+     * @return the name of the operation.
+     */
+    public String getName() {
+      return name;
+    }
+  }
+
+  public static final int DEFAULT_SAMPLE_INTERVAL = 16;
+  static final long NOT_TIMED = Long.MIN_VALUE; // from Recorder.startTimer, when not timed
+  private static final String DOMAIN = "no.ntnu.iir.olavval.oblig2";
+  private static final Operation[] OPERATIONS = Operation.values();
+  private static final VarHandle COUNTER = MethodHandles.arrayElementVarHandle(long[].class);
+
+  private final ThreadLocal<Recorder> recorders = ThreadLocal.withInitial(this::newRecorder);
+  private final List<Recorder> allRecorders = new ArrayList<>(); // guarded by itself
+  private final long[] endedCounts = new long[2 * OPERATIONS.length]; // of ended threads
+  private int recordersAtLastSweep;
+  private final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+  private final List<ObjectName> registeredNames = new ArrayList<>();
+  private volatile int sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+
+  /**
+   * Creates empty metrics.
+   */
+  public ArchiveMetrics() {
+    for (int i = 0; i < OPERATIONS.length; i++) {
+      latencies[i] = new LatencyHistogram();
+    }
+  }
+
+  /**
+   * Sets how many single operations there are, on average, for each one whose latency is
+   * measured. 1 measures every operation, which is exact but costly: besides taking time itself,
+   * reading the clock waits for the memory reads before it, so lookups can no longer overlap.
+   *
+   * @param sampleInterval the sample interval, from 1 to 1024.
+   * @throws IllegalArgumentException if sampleInterval is not from 1 to 1024.
+   */
+  public void setSampleInterval(int sampleInterval) {
+    if (sampleInterval < 1 || sampleInterval > 1024) {
+      throw new IllegalArgumentException(
+          "Sample interval must be from 1 to 1024: " + sampleInterval);
+    }
+    this.sampleInterval = sampleInterval;
+  }
+
+  /**
+   * Returns how many single operations there are for each one whose latency is measured.
+   *
+   * @return the sample interval.
+   */
+  public int getSampleInterval() {
+    return sampleInterval;
+  }
+
+  /**
+   * Returns the recorder of the calling thread, which counts the single operations of that
+   * thread and decides which of them to time. Fetch it once per operation, and only use it from
+   * the thread that fetched it.
+   *
+   * @return the recorder of the calling thread.
+   */
+  Recorder recorder() {
+    return recorders.get();
+  }
+
+  /**
+   * Records a single operation that has just ended.
+   *
+   * @param recorder   the recorder of the calling thread.
+   * @param operation  the operation.
+   * @param startNanos the value recorder.startTimer returned when it started.
+   * @param failed     true if it failed.
+   */
+  void record(Recorder recorder, Operation operation, long startNanos, boolean failed) {
+    recorder.count(operation, 1, failed ? 1 : 0);
+    if (startNanos != NOT_TIMED) {
+      latencies[operation.ordinal()].record(System.nanoTime() - startNanos, recorder.weight);
+      recorder.rearm(sampleInterval);
+    }
+  }
+
+  /**
+   * Records a batch of operations, or a single long operation such as an upgrade run, that has
+   * just ended. Unlike single operations, these are always timed.
+   *
+   * @param operation  the operation.
+   * @param startNanos the System.nanoTime when the batch started.
+   * @param count      the number of operations in the batch.
+   * @param failures   the number of operations in the batch that failed.
+   */
+  void recordBatch(Operation operation, long startNanos, int count, int failures) {
+    if (count > 0) {
+      latencies[operation.ordinal()].record((System.nanoTime() - startNanos) / count, count);
+    }
+    recorders.get().count(operation, count, failures);
+  }
+
+  private Recorder newRecorder() {
+    Recorder recorder = new Recorder(Thread.currentThread(), sampleInterval);
+    synchronized (allRecorders) {
+      allRecorders.add(recorder);
+      if (allRecorders.size() > 2 * recordersAtLastSweep) { // amortized O(1) per thread
+        sweepEndedThreads();
+      }
+    }
+    return recorder;
+  }
+
+  /**
+   * Adds the counts of the threads that have ended to endedCounts, and drops their recorders.
+   * An ended thread records nothing more, so its counts are final.
+   */
+  private void sweepEndedThreads() {
+    allRecorders.removeIf(recorder -> {
+      Thread thread = recorder.thread.get();
+      if (thread != null && thread.isAlive()) {
+        return false;
+      }
+      for (int slot = 0; slot < endedCounts.length; slot++) {
+        endedCounts[slot] += (long) COUNTER.getAcquire(recorder.counters, slot);
+      }
+      return true;
+    });
+    recordersAtLastSweep = allRecorders.size();
+  }
+
+  /**
+   * Sums a counter over every thread that recorded operations.
+   */
+  private long sum(int slot) {
+    synchronized (allRecorders) { // so a recorder is not counted both swept and live
+      sweepEndedThreads();
+      long sum = endedCounts[slot];
+      for (Recorder recorder : allRecorders) {
+        sum += (long) COUNTER.getAcquire(recorder.counters, slot);
+      }
+      return sum;
+    }
+  }
+
+
+  /**
+   * Returns the metrics of the specified operation as they are now.
+   *
+   * @param operation the operation.
+   * @return a snapshot of the metrics of the operation.
+   * @throws IllegalArgumentException if operation is null.
+   */
+  public OperationStats snapshot(Operation operation) {
+    if (operation == null) {
+      throw new IllegalArgumentException("Operation cannot be null.");
+    }
+    LatencyHistogram histogram = latencies[operation.ordinal()];
+    long[] buckets = new long[LatencyHistogram.BUCKETS];
+    histogram.copyCounts(buckets);
+    return new OperationStats(operation, sum(2 * operation.ordinal()),
+        sum(2 * operation.ordinal() + 1), histogram.getTotalNanos(), histogram.getMaxNanos(),
+        buckets);
+  }
+
+  /**
+   * Returns the metrics of every operation as they are now.
+   * Operations still running while the snapshot is taken may be counted for some operations
+   * and not others.
+   *
+   * @return a snapshot of the metrics of each operation.
+   */
+  public Map<Operation, OperationStats> snapshot() {
+    Map<Operation, OperationStats> snapshot = new EnumMap<>(Operation.class);
+    for (Operation operation : OPERATIONS) {
+      snapshot.put(operation, snapshot(operation));
+    }
+    return snapshot;
+  }
+
+  /**
+   * Registers an MBean for each operation with the platform MBean server, named
+   * no.ntnu.iir.olavval.oblig2:type=MemberArchive,name=archiveName,operation=the operation.
+   *
+   * @param archiveName the name of the archive, telling it apart from other archives.
+   * @throws JMException if the beans cannot be registered, e.g. if the name is taken.
+   * @throws IllegalArgumentException if archiveName is null or empty.
+   */
+  public synchronized void registerMBeans(String archiveName) throws JMException {
+    if (archiveName == null || archiveName.isEmpty()) {
+      throw new IllegalArgumentException("Archive name cannot be null or empty.");
+    }
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      for (Operation operation : OPERATIONS) {
+        ObjectName name = new ObjectName(DOMAIN + ":type=MemberArchive,name="
+            + ObjectName.quote(archiveName) + ",operation=" + operation.getName());
+        server.registerMBean(new OperationBean(operation), name);
+        registeredNames.add(name);
+      }
+    } catch (JMException e) {
+      unregisterMBeans();
+      throw e;
+    }
+  }
+
+  /**
+   * Unregisters the MBeans registered by registerMBeans, if any.
+   */
+  public synchronized void unregisterMBeans() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    for (ObjectName name : registeredNames) {
+      try {
+        server.unregisterMBean(name);
+      } catch (JMException e) {
+        // already unregistered by someone else
+      }
+    }
+    registeredNames.clear();
+  }
+
+  /**
+   * Counts the operations of one thread, and decides which of them to time.
+   * Only that thread writes its counters, so they are updated without atomic instructions.
+   * The number of operations between two timed ones is random, with a mean of the sample
+   * interval, so that a workload repeating with the same period is not always timed at the
+   * same step.
+   *
+   * <p>It is static, and refers to its thread only weakly, so the thread-local entry holding it
+   * keeps neither the metrics nor the thread alive.</p>
+   */
+  static final class Recorder {
+    // the count of operation i at 2 * i, and its errors at 2 * i + 1
+    private final long[] counters = new long[2 * OPERATIONS.length];
+    private final WeakReference<Thread> thread;
+    private int untilTimed;
+    private int weight; // the operations the next timed one stands for
+
+    private Recorder(Thread thread, int sampleInterval) {
+      this.thread = new WeakReference<>(thread);
+      this.untilTimed = 1 + ThreadLocalRandom.current().nextInt(sampleInterval);
+      this.weight = sampleInterval;
+    }
+
+    /**
+     * Decides whether to measure the latency of a single operation that is about to start.
+     * A timed operation stays due until it is recorded with ArchiveMetrics.record.
+     *
+     * @return the System.nanoTime now if the operation is timed, or NOT_TIMED.
+     */
+    long startTimer() {
+      if (--untilTimed > 0) {
+        return NOT_TIMED;
+      }
+      return System.nanoTime();
+    }
+
+    /**
+     * Picks the number of operations until the next timed one, after a timed one is recorded.
+     */
+    private void rearm(int interval) {
+      weight = interval;
+      untilTimed = interval == 1 ? 1 : 1 + ThreadLocalRandom.current().nextInt(2 * interval - 1);
+    }
+
+    private void count(Operation operation, int count, int failures) {
+      int slot = 2 * operation.ordinal();
+      COUNTER.setRelease(counters, slot, counters[slot] + count);
+      if (failures > 0) {
+        COUNTER.setRelease(counters, slot + 1, counters[slot + 1] + failures);
+      }
+    }
+  }
+
+  /**
+   * The MBean of one operation.
+   */
+  private class OperationBean implements OperationMetricsMXBean {
+    private final Operation operation;
+
+    private OperationBean(Operation operation) {
+      this.operation = operation;
+    }
+
+    @Override
+    public long getCount() {
+      return sum(2 * operation.ordinal());
+    }
+
+    @Override
+    public long getErrors() {
+      return sum(2 * operation.ordinal() + 1);
+    }
+
+    @Override
+    public double getMeanNanos() {
+      return snapshot(operation).getMeanNanos();
+    }
+
+    @Override
+    public long getP50Nanos() {
+      return snapshot(operation).getPercentileNanos(50);
+    }
+
+    @Override
+    public long getP99Nanos() {
+      return snapshot(operation).getPercentileNanos(99);
+    }
+
+    @Override
+    public long getP999Nanos() {
+      return snapshot(operation).getPercentileNanos(99.9);
+    }
+
+    @Override
+    public long getMaxNanos() {
+      return latencies[operation.ordinal()].getMaxNanos();
+    }
+  }
+}
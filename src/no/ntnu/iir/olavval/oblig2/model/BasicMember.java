@@ -4,6 +4,7 @@ import java.time.LocalDate;
 
 /**
  * Represents a Basic level member, the lowest level of Bonus member.
+ * Upgrades change the member's level in place, see BonusMember.getLevel().
  * @author mort
  */
 public class BasicMember extends BonusMember {
@@ -11,14 +12,4 @@ public class BasicMember extends BonusMember {
   public BasicMember(int memberNo, Personals personal, LocalDate enrolledDate) {
     super(memberNo, personal, enrolledDate);
   }
-
-  @Override
-  public String getMembershipLevel() {
-    return "Basic";
-  }
-
-  @Override
-  public void registerPoints(int points) {
-    super.point += points;
-  }
 }
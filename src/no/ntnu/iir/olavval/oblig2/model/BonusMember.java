@@ -1,24 +1,38 @@
 package no.ntnu.iir.olavval.oblig2.model;
 
 import java.time.LocalDate;
-import java.time.Period;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 
 /**
  * Represents a Bonus Member. A member earns bonus points from traveling with the company.
- * There are three subclasses of BonusMember, BasicMember, SilverMember and GoldMember.
+ * There are three subclasses of BonusMember, BasicMember, SilverMember and GoldMember,
+ * which create a member at that membership level.
+ *
+ * <p>The membership level is part of the member's state, and an upgrade changes it in place.
+ * A BasicMember object upgraded to Gold is therefore a Gold level member;
+ * use getLevel() or getMembershipLevel() rather than the class to find a member's level.
+ * Points are added atomically, so several threads may register points on the same member.</p>
  *
  * @author mort
  */
 public abstract class BonusMember implements Comparable<BonusMember> {
+  private static final AtomicIntegerFieldUpdater<BonusMember> POINT_UPDATER =
+      AtomicIntegerFieldUpdater.newUpdater(BonusMember.class, "point");
+  private static final AtomicReferenceFieldUpdater<BonusMember, MembershipLevel> LEVEL_UPDATER =
+      AtomicReferenceFieldUpdater.newUpdater(BonusMember.class, MembershipLevel.class, "level");
 
   private final int memberNo;
   private final Personals personals;
   private final LocalDate enrolledDate;
-  protected int point = 0;
+  private final long enrolledEpochDay;
+  private final long qualificationEndEpochDay; // first day the membership is one year old
+  private volatile int point = 0;
+  private volatile MembershipLevel level;
 
   /**
-   * Bonus member costructor.
+   * Bonus member costructor, for a Basic level member with no points.
    *
    * @param memberNo     A unique integer representing member number.
    * @param personals    A Personals object containing details regarding the member.
@@ -26,16 +40,54 @@ public abstract class BonusMember implements Comparable<BonusMember> {
    * @throws IllegalArgumentException for null parameters, or negative value memberNo.
    */
   public BonusMember(int memberNo, Personals personals, LocalDate enrolledDate) {
-    if (memberNo < 0 || personals == null || enrolledDate == null) {
+    this(memberNo, personals, enrolledDate, 0, MembershipLevel.BASIC);
+  }
+
+  /**
+   * Bonus member constructor for a member at a given level that already holds points,
+   * e.g. a member moved over from another archive.
+   *
+   * @param memberNo     A unique integer representing member number.
+   * @param personals    A Personals object containing details regarding the member.
+   * @param enrolledDate The date the member was first enrolled in the Bonus program.
+   * @param points       The points already held by the member.
+   * @param level        The membership level of the member.
+   * @throws IllegalArgumentException for null parameters, or negative value memberNo.
+   */
+  protected BonusMember(int memberNo, Personals personals, LocalDate enrolledDate, int points,
+                        MembershipLevel level) {
+    if (memberNo < 0 || personals == null || enrolledDate == null || level == null) {
       throw new IllegalArgumentException(
-          "Either personals or enrolledDate was null, or memberNo was negative.");
+          "Either personals, enrolledDate or level was null, or memberNo was negative.");
     } else {
       this.memberNo = memberNo;
       this.personals = personals;
       this.enrolledDate = enrolledDate;
+      this.enrolledEpochDay = enrolledDate.toEpochDay();
+      this.qualificationEndEpochDay = findFirstAnniversary(enrolledDate).toEpochDay();
+      this.point = points;
+      this.level = level;
     }
   }
 
+  /**
+   * Constructor for members whose points, level and personals are kept outside the object,
+   * like the views handed out by OffHeapMemberStore. Such a subclass must override
+   * getPoints, addPoints, getLevel, upgradeTo, getPersonals and getEnrolledDate.
+   *
+   * @param memberNo                 the member number.
+   * @param enrolledEpochDay         the epoch day the member was enrolled.
+   * @param qualificationEndEpochDay the epoch day the member's first year ends.
+   */
+  BonusMember(int memberNo, long enrolledEpochDay, long qualificationEndEpochDay) {
+    this.memberNo = memberNo;
+    this.personals = null;
+    this.enrolledDate = null;
+    this.enrolledEpochDay = enrolledEpochDay;
+    this.qualificationEndEpochDay = qualificationEndEpochDay;
+    this.level = null;
+  }
+
   /**
    * Compares this object with the specified object for order.
    * Throws IllegalArgumentException if otheMember parameter is null.
@@ -49,7 +101,7 @@ public abstract class BonusMember implements Comparable<BonusMember> {
     if (otherMember == null) {
       throw new IllegalArgumentException("Parameter cannot be null.");
     }
-    return Integer.compare(this.point, otherMember.point);
+    return Integer.compare(this.getPoints(), otherMember.getPoints());
   }
 
   /**
@@ -107,15 +159,15 @@ public abstract class BonusMember implements Comparable<BonusMember> {
   }
 
   public String getFirstName() {
-    return personals.getFirstname();
+    return getPersonals().getFirstname();
   }
 
   public String getSurname() {
-    return personals.getSurname();
+    return getPersonals().getSurname();
   }
 
   public String getEmail() {
-    return personals.getEMailAddress();
+    return getPersonals().getEMailAddress();
   }
 
   /**
@@ -127,14 +179,88 @@ public abstract class BonusMember implements Comparable<BonusMember> {
     return enrolledDate;
   }
 
-  public abstract String getMembershipLevel();
+  /**
+   * Returns the date this member was enrolled in the Bonus program, as a count of days since
+   * 1970-01-01 (see LocalDate.toEpochDay).
+   *
+   * @return the epoch day this member was enrolled in the Bonus program.
+   */
+  public long getEnrolledEpochDay() {
+    return enrolledEpochDay;
+  }
+
+  /**
+   * Returns the name of this member's membership level, e.g. "Silver".
+   *
+   * @return the name of this member's membership level.
+   */
+  public String getMembershipLevel() {
+    return getLevel().getName();
+  }
+
+  /**
+   * Returns this member's membership level.
+   *
+   * @return this member's membership level.
+   */
+  public MembershipLevel getLevel() {
+    return level;
+  }
+
+  /**
+   * Adds points to this members account, factoring in the bonus multiplier of the member's
+   * current membership level.
+   *
+   * @param points The number of points to be added to the member account.
+   * @return the number of points added, after the bonus multiplier.
+   */
+  public int registerPoints(int points) {
+    int credited = getLevel().applyFactor(points);
+    addPoints(credited);
+    return credited;
+  }
+
+  /**
+   * Moves this member up to a higher membership level. The member keeps its points, and points
+   * registered from then on get the bonus multiplier of the new level.
+   * A member is never moved down, so the upgrade is refused if newLevel is not above the
+   * current level. Of several threads upgrading the same member at once, only one succeeds.
+   *
+   * @param newLevel the membership level to move this member up to.
+   * @return true if the member was upgraded, false if it already was at newLevel or above.
+   */
+  boolean upgradeTo(MembershipLevel newLevel) {
+    MembershipLevel current;
+    do {
+      current = level;
+      if (newLevel == null || newLevel.compareTo(current) <= 0) {
+        return false;
+      }
+    } while (!LEVEL_UPDATER.compareAndSet(this, current, newLevel));
+    return true;
+  }
 
   /**
-   * Adds points to this members account.
+   * Tells whether the specified object is this very member, and not just a member with the same
+   * member number, e.g. one added after this member was removed. Unlike equals, it compares
+   * identity; a view of a member kept outside the object compares the member it refers to.
+   *
+   * @param other the member to compare to, possibly null.
+   * @return true if other is this member.
+   */
+  boolean isSameMemberAs(BonusMember other) {
+    return this == other;
+  }
+
+  /**
+   * Atomically adds points to this members account, without any bonus multiplier.
+   * Subclasses call this after factoring in their own multiplier.
    *
    * @param points The number of points to be added to the member account.
    */
-  public abstract void registerPoints(int points);
+  protected void addPoints(int points) {
+    POINT_UPDATER.addAndGet(this, points);
+  }
 
   /**
    * Checks if the member has been part of the Bonus program for less than one year, using the
@@ -148,15 +274,54 @@ public abstract class BonusMember implements Comparable<BonusMember> {
    *        membership is less than one year old.
    */
   public int findQualificationPoints(LocalDate testDate) {
+    return findQualificationPoints(testDate.toEpochDay());
+  }
 
-    int qualifiedPoints = 0;
+  /**
+   * Returns the first date, as an epoch day, on which this member has been part of the Bonus
+   * program for a whole year and no longer earns qualification points.
+   *
+   * @return the epoch day this member's first year ends.
+   */
+  long getQualificationEndEpochDay() {
+    return qualificationEndEpochDay;
+  }
 
-    if (Period.between(enrolledDate, testDate).getYears() < 1) {
-      qualifiedPoints = point;
-    }
-    // check if less than a year has passed.
+  /**
+   * Same as findQualificationPoints(LocalDate), but takes the test date as an epoch day
+   * (see LocalDate.toEpochDay). Does not allocate, so a caller checking many members against
+   * the same date can convert the date once.
+   *
+   * @param testEpochDay The date to compare member enrollment date to, as an epoch day.
+   * @return 0 if membership is more than one year old,
+   *        or the number of points held by the member if
+   *        membership is less than one year old.
+   */
+  public int findQualificationPoints(long testEpochDay) {
+    return isInQualificationPeriod(testEpochDay) ? getPoints() : 0;
+  }
 
-    return qualifiedPoints;
+  /**
+   * Checks if the member has been part of the Bonus program for less than one year on the
+   * specified date. Dates before the enrollment date count as less than one year.
+   *
+   * @param testEpochDay The date to compare member enrollment date to, as an epoch day.
+   * @return true if membership is less than one year old on the test date.
+   */
+  public boolean isInQualificationPeriod(long testEpochDay) {
+    return testEpochDay < qualificationEndEpochDay;
+  }
 
+  /**
+   * Returns the first date on which Period.between(enrolledDate, date) is a whole year or more.
+   * That is one year after enrollment, except for members enrolled on February 29th,
+   * whose first year only ends on March 1st when the next year is not a leap year.
+   */
+  static LocalDate findFirstAnniversary(LocalDate enrolledDate) {
+    LocalDate anniversary = enrolledDate.plusYears(1); // February 29th becomes February 28th
+    if (anniversary.getDayOfMonth() != enrolledDate.getDayOfMonth()) {
+      anniversary = anniversary.plusDays(1);
+    }
+    return anniversary;
   }
 }
@@ -0,0 +1,72 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps the e-mail addresses of the members of a MemberArchive to their member numbers, so a
+ * member is found by e-mail address in constant time rather than by scanning the archive.
+ *
+ * <p>Addresses are compared without regard to case or surrounding white space, so
+ * "Ole@Dot.com" and "ole@dot.com" are the same address. Each address maps to at most one
+ * member. The index is safe for concurrent callers.</p>
+ *
+ * @author mort
+ */
+class EmailIndex {
+  private final ConcurrentHashMap<String, Integer> memberNos = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the form an e-mail address is kept in by the index.
+   * No string is allocated for an address that is already trimmed and in lower case.
+   *
+   * @param email the e-mail address.
+   * @return the address, trimmed and in lower case.
+   */
+  static String normalize(String email) {
+    return email.trim().toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Maps the e-mail address to the member number, unless the address is already in use.
+   *
+   * @param email    the e-mail address of the member.
+   * @param memberNo the member number of the member.
+   * @return true if the address was mapped, false if it already maps to a member.
+   */
+  boolean claim(String email, int memberNo) {
+    return memberNos.putIfAbsent(normalize(email), memberNo) == null;
+  }
+
+  /**
+   * Maps the e-mail address to the member number, replacing any member it mapped to before.
+   * For members that are known to hold the address, e.g. when replaying a log.
+   *
+   * @param email    the e-mail address of the member.
+   * @param memberNo the member number of the member.
+   */
+  void put(String email, int memberNo) {
+    memberNos.put(normalize(email), memberNo);
+  }
+
+  /**
+   * Drops the e-mail address, if it maps to the member number.
+   *
+   * @param email    the e-mail address of the member.
+   * @param memberNo the member number of the member.
+   */
+  void release(String email, int memberNo) {
+    memberNos.remove(normalize(email), memberNo);
+  }
+
+  /**
+   * Returns the member number the e-mail address maps to.
+   *
+   * @param email the e-mail address, in any case.
+   * @return the member number, or -1 if no member has the address.
+   */
+  int get(String email) {
+    Integer memberNo = memberNos.get(normalize(email));
+    return memberNo == null ? -1 : memberNo;
+  }
+}
@@ -0,0 +1,68 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+/**
+ * The outcome of an export with MemberExporter.
+ *
+ * @author mort
+ */
+public class ExportResult {
+  private final long exportedMembers;
+  private final long bytesWritten;
+  private final long elapsedNanos;
+
+  /**
+   * Creates an export result.
+   *
+   * @param exportedMembers the number of members written.
+   * @param bytesWritten    the number of bytes written.
+   * @param elapsedNanos    the time the export took, in nanoseconds.
+   */
+  ExportResult(long exportedMembers, long bytesWritten, long elapsedNanos) {
+    this.exportedMembers = exportedMembers;
+    this.bytesWritten = bytesWritten;
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  /**
+   * Returns the number of members written.
+   *
+   * @return the number of members written.
+   */
+  public long getExportedMembers() {
+    return exportedMembers;
+  }
+
+  /**
+   * Returns the number of bytes written.
+   *
+   * @return the number of bytes written.
+   */
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  /**
+   * Returns the time the export took, in nanoseconds.
+   *
+   * @return the time the export took.
+   */
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  /**
+   * Returns the number of members written per second.
+   *
+   * @return the export throughput in members per second.
+   */
+  public double getMembersPerSecond() {
+    return elapsedNanos == 0 ? 0 : exportedMembers * 1e9 / elapsedNanos;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ExportResult{exportedMembers=%d, bytesWritten=%d, membersPerSecond=%.0f, "
+        + "megabytesPerSecond=%.1f}", exportedMembers, bytesWritten, getMembersPerSecond(),
+        elapsedNanos == 0 ? 0 : bytesWritten * 1e9 / elapsedNanos / (1 << 20));
+  }
+}
@@ -0,0 +1,72 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.time.Instant;
+
+/**
+ * A failed archive operation, as kept by FailureReporter.
+ *
+ * @author mort
+ */
+public class FailureEvent {
+  private final FailureReporter.Reason reason;
+  private final int memberNo;
+  private final long value;
+  private final long timeMillis;
+
+  /**
+   * Creates a failure event.
+   *
+   * @param reason     why the operation failed.
+   * @param memberNo   the member number involved, or -1 if there is none.
+   * @param value      the value involved, e.g. the points of a credit, or 0.
+   * @param timeMillis when it failed, as System.currentTimeMillis.
+   */
+  FailureEvent(FailureReporter.Reason reason, int memberNo, long value, long timeMillis) {
+    this.reason = reason;
+    this.memberNo = memberNo;
+    this.value = value;
+    this.timeMillis = timeMillis;
+  }
+
+  /**
+   * Returns why the operation failed.
+   *
+   * @return the reason of the failure.
+   */
+  public FailureReporter.Reason getReason() {
+    return reason;
+  }
+
+  /**
+   * Returns the member number involved, e.g. the unknown member number of a credit.
+   *
+   * @return the member number, or -1 if there is none.
+   */
+  public int getMemberNo() {
+    return memberNo;
+  }
+
+  /**
+   * Returns the value involved, e.g. the points of a rejected credit.
+   *
+   * @return the value, or 0 if there is none.
+   */
+  public long getValue() {
+    return value;
+  }
+
+  /**
+   * Returns when the operation failed.
+   *
+   * @return the time of the failure.
+   */
+  public Instant getTime() {
+    return Instant.ofEpochMilli(timeMillis);
+  }
+
+  @Override
+  public String toString() {
+    return "FailureEvent{reason=" + reason + ", memberNo=" + memberNo + ", value=" + value
+        + ", time=" + getTime() + "}";
+  }
+}
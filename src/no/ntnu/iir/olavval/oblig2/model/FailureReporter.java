@@ -0,0 +1,155 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Counts and keeps the failed operations of a MemberArchive, e.g. credits for unknown members,
+ * and logs them at a limited rate. Every archive has one, from MemberArchive.getFailureReporter.
+ *
+ * <p>Failures come in bursts, e.g. a batch of credits for closed accounts, so reporting one
+ * must be cheap. The latest RECENT_EVENTS failures are kept in event records that are allocated
+ * once and overwritten, and at most one warning is logged per reason and second, telling how
+ * many failures there were since the last one. Nothing is formatted unless it is logged.</p>
+ *
+ * @author mort
+ */
+public class FailureReporter {
+  /**
+   * Why an operation failed.
+   */
+  public enum Reason {
+    /** Points were credited to a member number with no member. */
+    UNKNOWN_MEMBER("credits for unknown members"),
+    /** Points were credited with a negative value. */
+    NEGATIVE_POINTS("credits with negative points"),
+    /** A member was added without personal details or enrollment date, or with invalid ones. */
+    INVALID_DETAILS("members added with missing or invalid details"),
+    /** A member was added when every member number was taken. */
+    NUMBERS_EXHAUSTED("members added with every member number taken"),
+    /** A member was added with an e-mail address another member has. */
+    DUPLICATE_EMAIL("members added with an e-mail address already in use");
+
+    private final String description;
+
+    Reason(String description) {
+      this.description = description;
+    }
+
+    /**
+     * Returns what failed, as used in the log.
+     *
+     * @return a description of the failures with this reason.
+     */
+    public String getDescription() {
+      return description;
+    }
+  }
+
+  public static final int RECENT_EVENTS = 64;
+  static final long LOG_INTERVAL_MILLIS = 1000;
+  private static final Reason[] REASONS = Reason.values();
+
+  private final Logger logger;
+  private final AtomicLong[] counts = new AtomicLong[REASONS.length];
+  private final AtomicLong[] loggedCounts = new AtomicLong[REASONS.length];
+  private final AtomicLong[] nextLogMillis = new AtomicLong[REASONS.length];
+  private final EventRecord[] recent = new EventRecord[RECENT_EVENTS];
+  private final AtomicLong reported = new AtomicLong();
+
+  /**
+   * Creates a reporter logging to the specified logger.
+   *
+   * @param logger the logger to log warnings to.
+   * @throws IllegalArgumentException if logger is null.
+   */
+  FailureReporter(Logger logger) {
+    if (logger == null) {
+      throw new IllegalArgumentException("Logger cannot be null.");
+    }
+    this.logger = logger;
+    for (int i = 0; i < REASONS.length; i++) {
+      counts[i] = new AtomicLong();
+      loggedCounts[i] = new AtomicLong();
+      nextLogMillis[i] = new AtomicLong(Long.MIN_VALUE);
+    }
+    for (int i = 0; i < RECENT_EVENTS; i++) {
+      recent[i] = new EventRecord();
+    }
+  }
+
+  /**
+   * Reports a failed operation.
+   *
+   * @param reason   why it failed.
+   * @param memberNo the member number involved, or -1 if there is none.
+   * @param value    the value involved, e.g. the points of a credit, or 0.
+   */
+  void report(Reason reason, int memberNo, long value) {
+    long now = System.currentTimeMillis();
+    long count = counts[reason.ordinal()].incrementAndGet();
+    EventRecord event = recent[(int) (reported.getAndIncrement() % RECENT_EVENTS)];
+    synchronized (event) {
+      event.reason = reason;
+      event.memberNo = memberNo;
+      event.value = value;
+      event.timeMillis = now;
+    }
+
+    AtomicLong nextLog = nextLogMillis[reason.ordinal()];
+    long next = nextLog.get();
+    if (now >= next && nextLog.compareAndSet(next, now + LOG_INTERVAL_MILLIS)
+        && logger.isLoggable(Level.WARNING)) {
+      long sinceLogged = count - loggedCounts[reason.ordinal()].getAndSet(count);
+      logger.warning(sinceLogged + " " + reason.getDescription()
+          + " since the last report, the latest for member " + memberNo + " with value " + value);
+    }
+  }
+
+  /**
+   * Returns the number of failures with the specified reason.
+   *
+   * @param reason the reason.
+   * @return the number of failures with that reason.
+   * @throws IllegalArgumentException if reason is null.
+   */
+  public long getCount(Reason reason) {
+    if (reason == null) {
+      throw new IllegalArgumentException("Reason cannot be null.");
+    }
+    return counts[reason.ordinal()].get();
+  }
+
+  /**
+   * Returns the latest failures, at most RECENT_EVENTS of them, oldest first.
+   *
+   * @return the latest failures.
+   */
+  public List<FailureEvent> getRecentFailures() {
+    long end = reported.get();
+    List<FailureEvent> events = new ArrayList<>(RECENT_EVENTS);
+    for (long i = Math.max(0, end - RECENT_EVENTS); i < end; i++) {
+      EventRecord event = recent[(int) (i % RECENT_EVENTS)];
+      synchronized (event) {
+        if (event.reason != null) { // claimed, but not yet written
+          events.add(new FailureEvent(event.reason, event.memberNo, event.value,
+              event.timeMillis));
+        }
+      }
+    }
+    return events;
+  }
+
+  /**
+   * A slot of the ring of recent failures, overwritten in place.
+   */
+  private static class EventRecord {
+    private Reason reason;
+    private int memberNo;
+    private long value;
+    private long timeMillis;
+  }
+}
@@ -4,6 +4,7 @@ import java.time.LocalDate;
 
 /**
  * Represents a Gold level Bonus member.
+ * Points registered on the member are factored by the Gold level bonus multiplier.
  * @author mort
  */
 public class GoldMember extends BonusMember {
@@ -19,26 +20,9 @@ public class GoldMember extends BonusMember {
    * @param points       current points held by member.
    */
   public GoldMember(int memberNo, Personals personals, LocalDate enrolledDate, int points) {
-    super(memberNo, personals, enrolledDate);
+    // Transfers existing points from old member to the new member,
+    // without factoring by FACTOR_GOLD.
+    super(memberNo, personals, enrolledDate, points, MembershipLevel.GOLD);
 
-    // Transfers existing points from old member to the new member.
-    // Direct call to super.registerPoints avoids factoring by FACTOR_GOLD.
-    super.point = points;
-
-  }
-
-  @Override
-  public String getMembershipLevel() {
-    return "Gold";
-  }
-
-  /**
-   * Adds points to this Gold level Bonus member, factoring in the Gold level bonus multiplier.
-   *
-   * @param points Number of points to be added.
-   **/
-  @Override
-  public void registerPoints(int points) {
-    super.point += ((int) (FACTOR_GOLD * points));
   }
 }
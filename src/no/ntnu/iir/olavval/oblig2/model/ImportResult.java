@@ -0,0 +1,138 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a bulk import with MemberImporter. Rows that could not be imported are
+ * counted, and the first MAX_REPORTED_REJECTS of them are kept with their line number and
+ * the reason, so a file with millions of bad rows does not fill the memory.
+ *
+ * @author mort
+ */
+public class ImportResult {
+  public static final int MAX_REPORTED_REJECTS = 1000;
+
+  private final long importedRows;
+  private final long rejectedRows;
+  private final long bytesRead;
+  private final long elapsedNanos;
+  private final List<Reject> rejects;
+
+  /**
+   * Creates an import result.
+   *
+   * @param importedRows the number of rows imported.
+   * @param rejectedRows the number of rows that could not be imported.
+   * @param bytesRead    the size of the imported file, in bytes.
+   * @param elapsedNanos the time the import took, in nanoseconds.
+   * @param rejects      the first rejected rows.
+   */
+  ImportResult(long importedRows, long rejectedRows, long bytesRead, long elapsedNanos,
+               List<Reject> rejects) {
+    this.importedRows = importedRows;
+    this.rejectedRows = rejectedRows;
+    this.bytesRead = bytesRead;
+    this.elapsedNanos = elapsedNanos;
+    this.rejects = Collections.unmodifiableList(new ArrayList<>(rejects));
+  }
+
+  /**
+   * Returns the number of rows imported.
+   *
+   * @return the number of rows imported.
+   */
+  public long getImportedRows() {
+    return importedRows;
+  }
+
+  /**
+   * Returns the number of rows that could not be imported.
+   *
+   * @return the number of rejected rows.
+   */
+  public long getRejectedRows() {
+    return rejectedRows;
+  }
+
+  /**
+   * Returns the number of bytes read from the file.
+   *
+   * @return the number of bytes read.
+   */
+  public long getBytesRead() {
+    return bytesRead;
+  }
+
+  /**
+   * Returns the time the import took, in nanoseconds.
+   *
+   * @return the time the import took.
+   */
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  /**
+   * Returns the number of rows, imported or rejected, handled per second.
+   *
+   * @return the import throughput in rows per second.
+   */
+  public double getRowsPerSecond() {
+    return elapsedNanos == 0 ? 0 : (importedRows + rejectedRows) * 1e9 / elapsedNanos;
+  }
+
+  /**
+   * Returns the first rejected rows found, at most MAX_REPORTED_REJECTS of them,
+   * by line number.
+   *
+   * @return the first rejected rows.
+   */
+  public List<Reject> getRejects() {
+    return rejects;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ImportResult{importedRows=%d, rejectedRows=%d, rowsPerSecond=%.0f, "
+        + "megabytesPerSecond=%.1f}", importedRows, rejectedRows, getRowsPerSecond(),
+        elapsedNanos == 0 ? 0 : bytesRead * 1e9 / elapsedNanos / (1 << 20));
+  }
+
+  /**
+   * A row that could not be imported.
+   */
+  public static class Reject {
+    private final long lineNumber;
+    private final String reason;
+
+    Reject(long lineNumber, String reason) {
+      this.lineNumber = lineNumber;
+      this.reason = reason;
+    }
+
+    /**
+     * Returns the line number of the row in the file, counting from 1.
+     *
+     * @return the line number of the row.
+     */
+    public long getLineNumber() {
+      return lineNumber;
+    }
+
+    /**
+     * Returns why the row could not be imported.
+     *
+     * @return why the row was rejected.
+     */
+    public String getReason() {
+      return reason;
+    }
+
+    @Override
+    public String toString() {
+      return "line " + lineNumber + ": " + reason;
+    }
+  }
+}
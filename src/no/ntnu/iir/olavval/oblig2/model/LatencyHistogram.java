@@ -0,0 +1,97 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies in nanoseconds, with buckets laid out like an HdrHistogram:
+ * values below 32 each have a bucket, and every power of two above that is split into
+ * 32 buckets, so a recorded value is off by at most about 3%. Values up to about 18 minutes are
+ * recorded; longer ones count as the longest.
+ *
+ * <p>Recording a value only increments counters in a fixed array, so it allocates nothing and
+ * takes no lock, and several threads may record at once.</p>
+ *
+ * @author mort
+ */
+class LatencyHistogram {
+  static final int SUB_BUCKET_BITS = 5;
+  static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  static final int MAX_EXPONENT = 40; // 2^40 ns is about 18 minutes
+  static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder totalNanos = new LongAdder();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  /**
+   * Records a latency.
+   *
+   * @param nanos the latency in nanoseconds.
+   */
+  void record(long nanos) {
+    record(nanos, 1);
+  }
+
+  /**
+   * Records the same latency a number of times, e.g. the average latency of each operation in
+   * a batch.
+   *
+   * @param nanos the latency in nanoseconds.
+   * @param times the number of times to record it.
+   */
+  void record(long nanos, long times) {
+    if (nanos < 0) {
+      nanos = 0; // nanoTime is not guaranteed to be monotonic across cores on every platform
+    }
+    counts.addAndGet(bucketOf(nanos), times);
+    totalNanos.add(nanos * times);
+    long max = maxNanos.get();
+    while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+      max = maxNanos.get();
+    }
+  }
+
+  /**
+   * Copies the bucket counts into the specified array, which must hold BUCKETS elements.
+   */
+  void copyCounts(long[] target) {
+    for (int i = 0; i < BUCKETS; i++) {
+      target[i] = counts.get(i);
+    }
+  }
+
+  long getTotalNanos() {
+    return totalNanos.sum();
+  }
+
+  long getMaxNanos() {
+    return maxNanos.get();
+  }
+
+  static int bucketOf(long nanos) {
+    if (nanos < SUB_BUCKETS) {
+      return (int) nanos;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+    if (exponent > MAX_EXPONENT) {
+      return BUCKETS - 1;
+    }
+    int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+    return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * Returns the highest latency that falls in the specified bucket.
+   */
+  static long highestIn(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+    long subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+    int shift = exponent - SUB_BUCKET_BITS;
+    return ((subBucket + 1) << shift) - 1;
+  }
+}
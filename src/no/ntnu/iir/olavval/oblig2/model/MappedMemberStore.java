@@ -0,0 +1,209 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An off-heap member store kept in files, so that the members survive a restart.
+ * The record and string slabs of the OffHeapMemberStore are memory mapped from two files in
+ * a directory, members.dat and personals.dat, so points and level changes are written in place
+ * and opening the store maps the files rather than reading every member into memory.
+ *
+ * <p>members.dat starts with a header that records whether the store was closed cleanly.
+ * After a clean close the store is opened from the counts in the header. Otherwise the process
+ * or machine may have stopped in the middle of a write, and every record is checked against its
+ * checksums when the store is opened. Records that fail the check, e.g. a member that was only
+ * partly written, are dropped and counted by getDroppedRecords.</p>
+ *
+ * <p>Changes reach the files when the operating system writes the mapped pages back, or when
+ * force or close is called. Changes made after the last force may be lost if the machine stops,
+ * but not if only the process stops. Like OffHeapMemberStore, adding and removing members is not
+ * thread safe.</p>
+ *
+ * <p>A MemberArchive reads every member of the store when it is created, to mark its member
+ * number as taken. If the archive indexes e-mail addresses or names it also decodes their
+ * personal details, which takes far longer than mapping the files; see MemberArchive.Index.</p>
+ *
+ * @author mort
+ */
+public class MappedMemberStore extends OffHeapMemberStore implements Closeable {
+  private static final int MAGIC = 0x424D5253; // "BMRS"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 4096;
+  private static final int STATE_OPEN = 1;
+  private static final int STATE_CLEAN = 2;
+
+  // header layout, in bytes
+  private static final int HEADER_MAGIC = 0;
+  private static final int HEADER_VERSION = 4;
+  private static final int HEADER_BYTE_ORDER = 8; // 1 for little endian, 2 for big endian
+  private static final int HEADER_STATE = 12;
+  private static final int HEADER_RECORD_COUNT = 16;
+  private static final int HEADER_STRING_SLABS = 20;
+  private static final int HEADER_STRING_POSITION = 24;
+  private static final int HEADER_CHECKSUM = 28;
+
+  private final FileChannel recordChannel;
+  private final FileChannel stringChannel;
+  private final MappedByteBuffer header;
+  private final List<MappedByteBuffer> mappedSlabs = new ArrayList<>();
+  private final boolean recovered;
+  private final int droppedRecords;
+
+  /**
+   * Opens the member store kept in the specified directory, or creates an empty one if the
+   * directory holds no store. The directory is created if it does not exist.
+   *
+   * @param directory the directory holding the store files.
+   * @throws IOException if the files cannot be opened, or do not hold a member store.
+   */
+  public MappedMemberStore(Path directory) throws IOException {
+    Files.createDirectories(directory);
+    Path recordFile = directory.resolve("members.dat");
+    Path stringFile = directory.resolve("personals.dat");
+    boolean existing = Files.exists(recordFile) && Files.size(recordFile) >= HEADER_SIZE;
+    this.recordChannel = FileChannel.open(recordFile, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.stringChannel = FileChannel.open(stringFile, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.header = recordChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+    header.order(ByteOrder.nativeOrder());
+
+    if (!existing) {
+      header.putInt(HEADER_MAGIC, MAGIC);
+      header.putInt(HEADER_VERSION, VERSION);
+      header.putInt(HEADER_BYTE_ORDER, byteOrderCode());
+      this.recovered = false;
+      this.droppedRecords = 0;
+    } else {
+      checkHeader(recordFile);
+      if (header.getInt(HEADER_STATE) == STATE_CLEAN
+          && header.getInt(HEADER_CHECKSUM) == headerChecksum()) {
+        int recordCount = header.getInt(HEADER_RECORD_COUNT);
+        this.droppedRecords = rebuild(slabsFor(recordCount), recordCount,
+            header.getInt(HEADER_STRING_SLABS), header.getInt(HEADER_STRING_POSITION), false);
+        this.recovered = false;
+      } else {
+        // not closed cleanly, so only the file sizes can be trusted
+        int recordSlabs = (int) ((recordChannel.size() - HEADER_SIZE) / RECORD_SLAB_BYTES);
+        int stringSlabs = (int) (stringChannel.size() / STRING_SLAB_SIZE);
+        this.droppedRecords = rebuild(recordSlabs, recordSlabs * RECORDS_PER_SLAB,
+            stringSlabs, STRING_SLAB_SIZE, true); // new details go to a fresh slab
+        this.recovered = true;
+      }
+    }
+    header.putInt(HEADER_STATE, STATE_OPEN);
+    header.force();
+  }
+
+  /**
+   * Returns true if the store was not closed cleanly, and was checked when it was opened.
+   *
+   * @return true if the store was recovered after a crash.
+   */
+  public boolean wasRecovered() {
+    return recovered;
+  }
+
+  /**
+   * Returns the number of records that failed the check when the store was recovered.
+   *
+   * @return the number of records dropped during recovery.
+   */
+  public int getDroppedRecords() {
+    return droppedRecords;
+  }
+
+  /**
+   * Writes all changes to the store files.
+   */
+  public void force() {
+    for (MappedByteBuffer slab : mappedSlabs) {
+      slab.force();
+    }
+    writeCounts();
+    header.force();
+  }
+
+  /**
+   * Writes all changes to the store files, marks the store as cleanly closed, and closes
+   * the files. The store must not be used afterwards.
+   *
+   * @throws IOException if the files could not be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    force();
+    header.putInt(HEADER_STATE, STATE_CLEAN);
+    header.putInt(HEADER_CHECKSUM, headerChecksum());
+    header.force();
+    recordChannel.close();
+    stringChannel.close();
+  }
+
+  @Override
+  ByteBuffer allocateRecordSlab(int slabIndex) {
+    return map(recordChannel, HEADER_SIZE + (long) slabIndex * RECORD_SLAB_BYTES,
+        RECORD_SLAB_BYTES).order(ByteOrder.nativeOrder());
+  }
+
+  @Override
+  ByteBuffer allocateStringSlab(int slabIndex) {
+    return map(stringChannel, (long) slabIndex * STRING_SLAB_SIZE, STRING_SLAB_SIZE);
+  }
+
+  private MappedByteBuffer map(FileChannel channel, long position, int length) {
+    try {
+      MappedByteBuffer slab = channel.map(FileChannel.MapMode.READ_WRITE, position, length);
+      mappedSlabs.add(slab);
+      return slab;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void writeCounts() {
+    header.putInt(HEADER_RECORD_COUNT, getRecordCount());
+    header.putInt(HEADER_STRING_SLABS, getStringSlabCount());
+    header.putInt(HEADER_STRING_POSITION, getStringPosition());
+  }
+
+  private void checkHeader(Path recordFile) throws IOException {
+    if (header.getInt(HEADER_MAGIC) != MAGIC) {
+      throw new IOException(recordFile + " does not hold a member store.");
+    }
+    if (header.getInt(HEADER_VERSION) != VERSION) {
+      throw new IOException("Unsupported member store version "
+          + header.getInt(HEADER_VERSION) + " in " + recordFile);
+    }
+    if (header.getInt(HEADER_BYTE_ORDER) != byteOrderCode()) {
+      throw new IOException(recordFile + " was written with another byte order.");
+    }
+  }
+
+  private int headerChecksum() {
+    int h = MAGIC;
+    for (int field = HEADER_VERSION; field < HEADER_CHECKSUM; field += 4) {
+      h = h * 31 + header.getInt(field);
+    }
+    return h;
+  }
+
+  private static int slabsFor(int records) {
+    return (records + RECORDS_PER_SLAB - 1) / RECORDS_PER_SLAB;
+  }
+
+  private static int byteOrderCode() {
+    return ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 2;
+  }
+}
@@ -1,12 +1,23 @@
 package no.ntnu.iir.olavval.oblig2.model;
 
+import no.ntnu.iir.olavval.oblig2.model.ArchiveMetrics.Operation;
+
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
 
@@ -16,21 +27,196 @@ import java.util.stream.Stream;
 /**
  * The archive that holds the collection of all members in the Bonus Member programme.
  *
+ * <p>The archive is thread safe when its member store is, e.g. a StripedMemberStore.
+ * Members are upgraded in place, so points registered during an upgrade always land on the
+ * member object that stays in the archive.</p>
+ *
+ * <p>An archive may keep a WriteAheadLog of its changes. Each change is then on disk before the
+ * method making it returns, and the archive is rebuilt from the log when it is created.
+ * checkpoint writes a snapshot of the archive and deletes the log segments it covers, so that
+ * rebuilding the archive only reads the latest snapshot and the log written after it.</p>
+ *
+ * <p>The count, latency and failures of each add, credit, lookup, login and upgrade are
+ * recorded in the ArchiveMetrics of the archive.</p>
+ *
+ * <p>Members are also indexed by e-mail address, compared without regard to case, so
+ * findByEmail and findPointsByEmail take constant time. No two members have the same address;
+ * adding a member with an address already in use fails. Their first names and surnames are
+ * indexed in name order, for findByName and findByNameFuzzy, and their enrollment days in date
+ * order, for queries over a range of enrollment dates and for upgrade runs that only check the
+ * members still in their first year. Their points are indexed too, most points first, and moved
+ * on every credit, for leaderboards, ranks and point ranges, and so are their membership
+ * levels, for counting and visiting the members of one level.</p>
+ *
+ * <p>The indexes are kept on the heap, whatever the member store, and are filled from the
+ * members already in the store when the archive is created. The e-mail, name and points
+ * indexes may be left out, see Index. The queries they serve then throw IllegalStateException,
+ * and without the e-mail index addresses are not checked for uniqueness.</p>
+ *
  * @author mort
  */
 public class MemberArchive implements Iterable<BonusMember> {
   public static final int SILVER_LIMIT = 25000;
   public static final int GOLD_LIMIT = 75000;
-  private static final Random RANDOM_NUMBER = new Random();
-  private HashMap<Integer, BonusMember> members;
+  public static final int MAX_NAME_DISTANCE = 2;
+
+  /**
+   * The indexes an archive may be created without. Each one speeds up some queries, and costs
+   * heap for every member and work on every change to the members.
+   */
+  public enum Index {
+    /** E-mail addresses, for findByEmail and findPointsByEmail, and to refuse a duplicate. */
+    EMAIL,
+    /** First names and surnames, for findByName and findByNameFuzzy. */
+    NAME,
+    /** Points, most points first, for findTopMembers, getRank, findByPoints, countByPoints. */
+    POINTS
+  }
+
+  private final MemberStore members;
+  private final MemberNumberAllocator numberAllocator;
+  private final Set<Integer> upgradeCandidates; // members whose points passed a limit
+  private final WriteAheadLog log; // null if changes are not logged
+  private final ArchiveMetrics metrics = new ArchiveMetrics();
+  private final FailureReporter failures;
+  private final EmailIndex emails; // null if e-mail addresses are not indexed
+  private final NameIndex names; // null if names are not indexed
+  private final SortedMemberIndex<Long> enrollments = new SortedMemberIndex<>();
+  private final PointsIndex ranking; // null if members are not ranked by points
+  private final TierIndex tiers = new TierIndex();
+  private final Object[] memberLocks; // a credit and a removal of a member take the same one
+  private final int memberLockMask;
   private Logger logger;
 
   /**
    * Member archive registry.
    */
   public MemberArchive() {
+    this(new OpenAddressingMemberStore());
+  }
+
+  /**
+   * Member archive registry, keeping its members in the specified member store.
+   * The archive keeps every index, on the heap, and reads every member already in the store to
+   * fill them, see MemberArchive(MemberStore, MemberNumberAllocator, Set).
+   *
+   * @param members the store that holds the members of this archive.
+   * @throws IllegalArgumentException if members is null.
+   */
+  public MemberArchive(MemberStore members) {
+    this(members, new MemberNumberAllocator());
+  }
+
+  /**
+   * Member archive registry, keeping its members in the specified member store and handing out
+   * member numbers from the specified allocator.
+   * Numbers of members already in the store are marked as taken in the allocator.
+   *
+   * @param members         the store that holds the members of this archive.
+   * @param numberAllocator the allocator that hands out member numbers to new members.
+   * @throws IllegalArgumentException if either parameter is null.
+   */
+  public MemberArchive(MemberStore members, MemberNumberAllocator numberAllocator) {
+    this(members, numberAllocator, EnumSet.allOf(Index.class));
+  }
+
+  /**
+   * Member archive registry, keeping its members in the specified member store, handing out
+   * member numbers from the specified allocator, and keeping only the specified indexes.
+   *
+   * <p>The indexes live on the heap whatever the store, so leaving them out is what keeps an
+   * archive over an OffHeapMemberStore small on the heap. The e-mail index holds an entry of
+   * about 130 bytes per member, and filling it decodes the personal details of every member
+   * already in the store, which adds seconds per million members to opening a MappedMemberStore.
+   * The name index holds two entries per member, a few hundred bytes when names are distinct,
+   * and decodes their personal details too.
+   * An archive without the points index does not move a member in it on every credit, so points
+   * are registered faster.</p>
+   *
+   * @param members         the store that holds the members of this archive.
+   * @param numberAllocator the allocator that hands out member numbers to new members.
+   * @param indexes         the indexes to keep, possibly none.
+   * @throws IllegalArgumentException if any parameter is null.
+   */
+  public MemberArchive(MemberStore members, MemberNumberAllocator numberAllocator,
+                       Set<Index> indexes) {
+    this(members, numberAllocator, null, indexes);
+  }
+
+  /**
+   * Member archive registry, keeping its members in the specified member store and logging
+   * every change to the specified log. The latest snapshot in the log directory, and the
+   * changes logged after it, are read into the store first, so the store should start out
+   * empty.
+   *
+   * @param members the store that holds the members of this archive.
+   * @param log     the log to replay, and to log changes to.
+   * @throws IOException if the snapshot or the log cannot be read.
+   * @throws IllegalArgumentException if either parameter is null.
+   */
+  public MemberArchive(MemberStore members, WriteAheadLog log) throws IOException {
+    this(members, new MemberNumberAllocator(), requireLog(log), EnumSet.allOf(Index.class));
+    log.replayInto(this, MemberSnapshot.readLatest(log.getDirectory(), this));
+  }
+
+  private MemberArchive(MemberStore members, MemberNumberAllocator numberAllocator,
+                        WriteAheadLog log, Set<Index> indexes) {
+    if (members == null || numberAllocator == null || indexes == null) {
+      throw new IllegalArgumentException(
+          "Member store, number allocator and indexes cannot be null.");
+    }
     this.logger = Logger.getLogger(getClass().toString());
-    this.members = new HashMap<>();
+    this.failures = new FailureReporter(logger);
+    this.members = members;
+    this.numberAllocator = numberAllocator;
+    this.upgradeCandidates = ConcurrentHashMap.newKeySet();
+    this.log = log;
+    this.emails = indexes.contains(Index.EMAIL) ? new EmailIndex() : null;
+    this.names = indexes.contains(Index.NAME) ? new NameIndex() : null;
+    this.ranking = indexes.contains(Index.POINTS) ? new PointsIndex() : null;
+    int wanted = Runtime.getRuntime().availableProcessors() * 4;
+    int lockCount = Integer.highestOneBit(wanted);
+    if (lockCount < wanted) {
+      lockCount <<= 1;
+    }
+    this.memberLocks = new Object[lockCount];
+    for (int i = 0; i < lockCount; i++) {
+      memberLocks[i] = new Object();
+    }
+    this.memberLockMask = lockCount - 1;
+    for (BonusMember member : members) {
+      numberAllocator.markTaken(member.getMemberNo());
+      if (emails != null) {
+        emails.put(member.getPersonals().getEMailAddress(), member.getMemberNo());
+      }
+      indexMember(member);
+      trackUpgradeCandidate(member);
+    }
+  }
+
+  private static WriteAheadLog requireLog(WriteAheadLog log) {
+    if (log == null) {
+      throw new IllegalArgumentException("Log cannot be null.");
+    }
+    return log;
+  }
+
+  /**
+   * Returns the metrics of the operations of this archive.
+   *
+   * @return the metrics of this archive.
+   */
+  public ArchiveMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Returns the reporter that counts, keeps and logs the failed operations of this archive.
+   *
+   * @return the failure reporter of this archive.
+   */
+  public FailureReporter getFailureReporter() {
+    return failures;
   }
 
   /**
@@ -49,7 +235,7 @@ public class MemberArchive implements Iterable<BonusMember> {
    */
   @Override
   public void forEach(Consumer<? super BonusMember> action) {
-    this.members.values().forEach(action);
+    this.members.forEach(action);
   }
 
   /**
@@ -59,11 +245,13 @@ public class MemberArchive implements Iterable<BonusMember> {
    */
   @Override
   public Iterator<BonusMember> iterator() {
-    return members.values().iterator();
+    return members.iterator();
   }
 
   public List<BonusMember> getArchiveValuesAsList() {
-    return new ArrayList<>(members.values());
+    List<BonusMember> memberList = new ArrayList<>(members.size());
+    members.forEach(memberList::add);
+    return memberList;
   }
 
   /**
@@ -80,54 +268,333 @@ public class MemberArchive implements Iterable<BonusMember> {
     //  implementing Stream<E> as an interface? I think the main diff
     //  would be that we are not actually overriding any methods in the
     //  Stream interface?
-    return members.values().stream();
+    return members.stream();
+  }
+
+  /**
+   * Copies the members of the archive into columns, for scans over many members.
+   * The columns are a snapshot, and do not follow later changes to the archive.
+   *
+   * @return the members of the archive as columns.
+   */
+  public MemberColumns toColumns() {
+    return new MemberColumns(members, members.size());
+  }
+
+  /**
+   * Writes a snapshot of the archive next to its log in the background, and deletes the log
+   * segments and older snapshots the new snapshot covers once it is on disk.
+   * The archive may be changed while the snapshot is written. Call it periodically, e.g. from a
+   * ScheduledExecutorService, to keep the time it takes to rebuild the archive bounded.
+   *
+   * <p>The caller does not wait for the snapshot: the log is moved on to a new segment, and
+   * the members are copied, on the thread that writes the snapshot. The copy is not taken at
+   * one point in time, but it does not have to be. A change logged before the new segment is
+   * in the copy, and a change logged after it is replayed on top of the snapshot, which gives
+   * the same member whether or not the copy already held it.</p>
+   *
+   * @return a future completing when the snapshot is written and the log is compacted, or
+   *         exceptionally if the log is closed or cannot be written.
+   * @throws IllegalStateException if the archive does not keep a log.
+   */
+  public CompletableFuture<Void> checkpoint() {
+    if (log == null) {
+      throw new IllegalStateException("The archive does not keep a log.");
+    }
+    CompletableFuture<Void> done = new CompletableFuture<>();
+    Thread writer = new Thread(() -> {
+      try {
+        long segment = log.roll();
+        MemberColumns columns = toColumns();
+        MemberSnapshot.write(log.getDirectory(), segment, columns);
+        log.deleteSegmentsBefore(segment);
+        MemberSnapshot.deleteBefore(log.getDirectory(), segment);
+        done.complete(null);
+      } catch (IOException | RuntimeException e) {
+        logger.warning("Could not write a snapshot of the archive: " + e);
+        done.completeExceptionally(e);
+      }
+    }, "MemberArchive snapshot");
+    writer.setDaemon(true);
+    writer.start();
+    return done;
   }
 
   /**
    * Imitates a member logging in to check their point balance.
    * Requires a valid user number and password.
    *
+   * <p>Unknown member numbers and wrong passwords are thrown as exceptions. Where they are
+   * routine, e.g. on a login page, use tryFindPoints, which reports them as result codes.</p>
+   *
    * @param memberNo The users membership number.
    * @param passwd   The users password.
    * @return Number of points held by the member.
    * @throws IllegalArgumentException if member number not found, or password invalid.
    */
   public int findPoints(int memberNo, String passwd) {
-    BonusMember member = members.get(memberNo);
+    PointsResult result = tryFindPoints(memberNo, passwd, new PointsResult());
+    switch (result.getStatus()) {
+      case NO_MEMBER:
+        throw new IllegalArgumentException("No member with number: " + memberNo);
+      case BAD_PASSWORD:
+        throw new IllegalArgumentException("Incorrect password.");
+      default:
+        return result.getPoints();
+    }
+  }
 
-    if (member == null) {
-      throw new IllegalArgumentException("No member with number: " + memberNo);
-    } else if (!member.getPersonals().okPassword(passwd)) {
-      throw new IllegalArgumentException("Incorrect password.");
-    } else {
-      return member.getPoints();
+  /**
+   * Imitates a member logging in to check their point balance, reporting an unknown member
+   * number or a wrong password as a result code rather than an exception.
+   *
+   * @param memberNo The users membership number.
+   * @param passwd   The users password.
+   * @param result   the holder to store the outcome in, which may be reused between calls.
+   * @return result, holding FOUND and the points of the member, NO_MEMBER or BAD_PASSWORD.
+   * @throws IllegalArgumentException if result is null.
+   */
+  public PointsResult tryFindPoints(int memberNo, String passwd, PointsResult result) {
+    if (result == null) {
+      throw new IllegalArgumentException("Result holder cannot be null.");
     }
+    ArchiveMetrics.Recorder recorder = metrics.recorder();
+    long start = recorder.startTimer();
+    checkLogin(members.get(memberNo), passwd, result);
+    metrics.record(recorder, Operation.LOGIN, start, result.getStatus() != ResultCode.FOUND);
+    return result;
+  }
 
+  /**
+   * Imitates a member logging in with their e-mail address to check their point balance.
+   * The address is compared without regard to case.
+   *
+   * @param email  The users e-mail address.
+   * @param passwd The users password.
+   * @return Number of points held by the member.
+   * @throws IllegalArgumentException if no member has the e-mail address, or password invalid.
+   * @throws IllegalStateException if the archive does not index e-mail addresses.
+   */
+  public int findPointsByEmail(String email, String passwd) {
+    PointsResult result = tryFindPointsByEmail(email, passwd, new PointsResult());
+    switch (result.getStatus()) {
+      case NO_MEMBER:
+        throw new IllegalArgumentException("No member with e-mail address: " + email);
+      case BAD_PASSWORD:
+        throw new IllegalArgumentException("Incorrect password.");
+      default:
+        return result.getPoints();
+    }
+  }
 
+  /**
+   * Imitates a member logging in with their e-mail address to check their point balance,
+   * reporting an unknown address or a wrong password as a result code rather than an exception.
+   *
+   * @param email  The users e-mail address, in any case.
+   * @param passwd The users password.
+   * @param result the holder to store the outcome in, which may be reused between calls.
+   * @return result, holding FOUND and the points of the member, NO_MEMBER or BAD_PASSWORD.
+   * @throws IllegalArgumentException if result is null.
+   * @throws IllegalStateException if the archive does not index e-mail addresses.
+   */
+  public PointsResult tryFindPointsByEmail(String email, String passwd, PointsResult result) {
+    if (result == null) {
+      throw new IllegalArgumentException("Result holder cannot be null.");
+    }
+    ArchiveMetrics.Recorder recorder = metrics.recorder();
+    long start = recorder.startTimer();
+    checkLogin(memberByEmail(email), passwd, result);
+    metrics.record(recorder, Operation.LOGIN, start, result.getStatus() != ResultCode.FOUND);
+    return result;
   }
 
+  /**
+   * Checks the password of a member logging in, and stores the outcome in result.
+   *
+   * @param member the member logging in, or null if there is no such member.
+   * @param passwd the password given.
+   * @param result the holder to store the outcome in.
+   */
+  private static void checkLogin(BonusMember member, String passwd, PointsResult result) {
+    if (member == null) {
+      result.set(ResultCode.NO_MEMBER, 0);
+    } else if (!member.getPersonals().okPassword(passwd)) {
+      result.set(ResultCode.BAD_PASSWORD, 0);
+    } else {
+      result.set(ResultCode.FOUND, member.getPoints());
+    }
+  }
 
   /**
    * Adds the specified number of points to a member.
    * Any bonus multipliers are factored automatically.
    *
+   * <p>Failed credits are thrown as exceptions. Where they are routine, use tryRegisterPoints,
+   * which reports them as result codes.</p>
+   *
    * @param memberNo the membership number of the member.
    * @param points   the number of points to be added to the member.
-   * @throws NumberFormatException if points < 0.
-   * @throws NullPointerException  if no member with matching ID exists in collection.
+   * @throws NumberFormatException  if points < 0.
+   * @throws UnknownMemberException if no member with matching ID exists in collection.
    */
   public void registerPoints(int memberNo, int points) {
+    switch (tryRegisterPoints(memberNo, points)) {
+      case NEGATIVE_POINTS:
+        throw new NumberFormatException("Cannot add negative point value:" + points);
+      case NO_MEMBER:
+        throw new UnknownMemberException(memberNo); // no stack trace, so cheap to throw
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Adds the specified number of points to a member, reporting a failed credit as a result
+   * code rather than an exception. Any bonus multipliers are factored automatically.
+   *
+   * @param memberNo the membership number of the member.
+   * @param points   the number of points to be added to the member.
+   * @return FOUND if the points were added, NEGATIVE_POINTS if points < 0, or NO_MEMBER if no
+   *        member has the member number.
+   */
+  public ResultCode tryRegisterPoints(int memberNo, int points) {
+    ArchiveMetrics.Recorder recorder = metrics.recorder();
+    long start = recorder.startTimer();
     if (points < 0) {
-      throw new NumberFormatException("Cannot add negative point value:" + points);
-    } else { // member exists and value is positive
-      try {
-        members.get(memberNo).registerPoints(points); //calls registerPoints method of member object
-      } catch (NullPointerException e) {
-        logger.warning(String.format("Caught %1$s in %2$s : %3$s",
-            e.getClass(), this.getClass(), e));
-        throw new NullPointerException("No member registered with ID " + memberNo);
+      metrics.record(recorder, Operation.CREDIT, start, true);
+      failures.report(FailureReporter.Reason.NEGATIVE_POINTS, memberNo, points);
+      return ResultCode.NEGATIVE_POINTS;
+    } else if (!creditMember(memberNo, points)) { // value is positive, but no such member
+      metrics.record(recorder, Operation.CREDIT, start, true);
+      failures.report(FailureReporter.Reason.UNKNOWN_MEMBER, memberNo, points);
+      return ResultCode.NO_MEMBER;
+    }
+    syncLog();
+    metrics.record(recorder, Operation.CREDIT, start, false);
+    return ResultCode.FOUND;
+  }
+
+  /**
+   * Adds a batch of points to members. Element i of points is credited to the member with
+   * member number memberNos[i], and the same member may appear any number of times.
+   *
+   * <p>Credits are sorted and grouped by member, so each member is looked up once and
+   * receives the sum of its credits in one call, with any bonus multiplier applied to the sum.
+   * Since the multiplier is applied to the sum, the result may be a point or so higher than
+   * registering the credits one at a time, which rounds each credit down separately.</p>
+   *
+   * <p>Unlike registerPoints(int, int), nothing is thrown for a bad credit.
+   * Credits with negative points are skipped, and member numbers with no matching member are
+   * reported in the returned result.</p>
+   *
+   * @param memberNos the membership numbers of the members to credit.
+   * @param points    the number of points to credit each member, before bonus multipliers.
+   * @return the outcome of the batch.
+   * @throws IllegalArgumentException if either array is null, or they differ in length.
+   */
+  public PointBatchResult registerPoints(int[] memberNos, int[] points) {
+    if (memberNos == null || points == null || memberNos.length != points.length) {
+      throw new IllegalArgumentException(
+          "Member numbers and points must be arrays of equal length.");
+    }
+    long start = System.nanoTime();
+
+    // member number in the high half and points in the low half, so sorting groups by member.
+    long[] credits = new long[memberNos.length];
+    int creditCount = 0;
+    int rejectedCredits = 0;
+    for (int i = 0; i < memberNos.length; i++) {
+      if (points[i] < 0) {
+        rejectedCredits++;
+        failures.report(FailureReporter.Reason.NEGATIVE_POINTS, memberNos[i], points[i]);
+      } else {
+        credits[creditCount++] = ((long) memberNos[i] << 32) | points[i];
       }
     }
+    Arrays.sort(credits, 0, creditCount);
+
+    int creditedMembers = 0;
+    long creditedPoints = 0;
+    int[] unknown = new int[8];
+    int unknownCount = 0;
+    int unknownCredits = 0;
+    int i = 0;
+    while (i < creditCount) {
+      int memberNo = (int) (credits[i] >> 32);
+      long sum = 0;
+      int first = i;
+      while (i < creditCount && (int) (credits[i] >> 32) == memberNo) {
+        sum += (int) credits[i]; // low half, never negative
+        i++;
+      }
+      if (creditMemberSum(memberNo, sum)) {
+        creditedMembers++;
+        creditedPoints += sum;
+      } else {
+        unknownCredits += i - first;
+        failures.report(FailureReporter.Reason.UNKNOWN_MEMBER, memberNo, sum);
+        if (unknownCount == unknown.length) {
+          unknown = Arrays.copyOf(unknown, unknownCount * 2);
+        }
+        unknown[unknownCount++] = memberNo;
+      }
+    }
+    syncLog(); // one wait for the whole batch
+    metrics.recordBatch(Operation.CREDIT, start, memberNos.length,
+        rejectedCredits + unknownCredits);
+    return new PointBatchResult(creditedMembers, creditedPoints, rejectedCredits,
+        Arrays.copyOf(unknown, unknownCount));
+  }
+
+  /**
+   * Adds a sum of points that may not fit in an int to the member with the specified member
+   * number, by crediting it in int sized parts.
+   *
+   * @param memberNo the membership number of the member.
+   * @param points   the number of points to be added to the member.
+   * @return true if the points were added, false if no member with that number exists.
+   */
+  private boolean creditMemberSum(int memberNo, long points) {
+    long remaining = points;
+    do {
+      int part = (int) Math.min(remaining, Integer.MAX_VALUE);
+      if (!creditMember(memberNo, part)) {
+        return false;
+      }
+      remaining -= part;
+    } while (remaining > 0);
+    return true;
+  }
+
+  /**
+   * Adds points to the member with the specified member number.
+   *
+   * @param memberNo the membership number of the member.
+   * @param points   the number of points to be added to the member.
+   * @return true if the points were added, false if no member with that number exists.
+   */
+  private boolean creditMember(int memberNo, int points) {
+    BonusMember member = members.get(memberNo);
+    if (member == null) {
+      return false;
+    }
+    member.registerPoints(points); //calls registerPoints method of member object
+    synchronized (lockFor(memberNo)) { // removeMember takes it too, so the member stays
+      if (!member.isSameMemberAs(members.get(memberNo))) {
+        // removed since it was found, and its number may belong to a new member by now, so
+        // the credit is left with the removed member, as if it came just before the removal
+        return true;
+      }
+      if (ranking != null) {
+        ranking.raise(member);
+      }
+      if (log != null) {
+        log.appendCredit(memberNo, member.getPoints()); // the total, so replay is idempotent
+      }
+    }
+    trackUpgradeCandidate(member);
+    return true;
   }
 
   /**
@@ -137,7 +604,292 @@ public class MemberArchive implements Iterable<BonusMember> {
    * @return the member with specified member number, or null if no member with that number exists.
    */
   public BonusMember findMember(int memberNo) {
-    return members.get(memberNo);
+    ArchiveMetrics.Recorder recorder = metrics.recorder();
+    long start = recorder.startTimer();
+    BonusMember member = members.get(memberNo);
+    metrics.record(recorder, Operation.LOOKUP, start, member == null);
+    return member;
+  }
+
+  /**
+   * Finds the member with the specified e-mail address, compared without regard to case.
+   *
+   * @param email the e-mail address of the desired member.
+   * @return the member with the e-mail address, or null if no member has it.
+   * @throws IllegalStateException if the archive does not index e-mail addresses.
+   */
+  public BonusMember findByEmail(String email) {
+    ArchiveMetrics.Recorder recorder = metrics.recorder();
+    long start = recorder.startTimer();
+    BonusMember member = memberByEmail(email);
+    metrics.record(recorder, Operation.LOOKUP, start, member == null);
+    return member;
+  }
+
+  /**
+   * Finds the members with a first name or surname starting with the specified prefix,
+   * compared without regard to case, e.g. "han" finds Tove Hansen. Members are listed by the
+   * first of their names that matches, in name order, and by member number within a name.
+   * A member whose first name and surname both match is listed once.
+   *
+   * <p>Pages are read from the name index, so a page takes time in proportion to offset and
+   * limit rather than to the size of the archive.</p>
+   *
+   * @param prefix the start of the name.
+   * @param offset the number of matching members to skip, e.g. the members of earlier pages.
+   * @param limit  the largest number of members to return.
+   * @return up to limit matching members, after the first offset.
+   * @throws IllegalArgumentException if prefix is null, offset is negative or limit is not
+   *                                  positive.
+   * @throws IllegalStateException    if the archive does not index names.
+   */
+  public List<BonusMember> findByName(String prefix, int offset, int limit) {
+    checkPage(prefix, offset, limit);
+    String start = NameIndex.normalize(prefix);
+    NameSearch search = new NameSearch(name -> name.startsWith(start), offset, limit);
+    requireNames().forEachWithPrefix(start, search);
+    return search.page;
+  }
+
+  /**
+   * Finds the members with a first name or surname at most maxDistance edits from the
+   * specified name, where an edit inserts, deletes or replaces one character, e.g. "hansn"
+   * finds Tove Hansen at distance 1. Case is ignored. Members are listed as by findByName.
+   *
+   * <p>The search walks the distinct names of the archive in order, and skips every name
+   * starting with characters that are already too far from the searched name, so it takes time
+   * in proportion to the number of names near the searched one.</p>
+   *
+   * @param name        the name to search for.
+   * @param maxDistance the largest number of edits, from 0 to MAX_NAME_DISTANCE.
+   * @param offset      the number of matching members to skip, e.g. the members of earlier
+   *                    pages.
+   * @param limit       the largest number of members to return.
+   * @return up to limit matching members, after the first offset.
+   * @throws IllegalArgumentException if name is null, maxDistance is out of range, offset is
+   *                                  negative or limit is not positive.
+   * @throws IllegalStateException    if the archive does not index names.
+   */
+  public List<BonusMember> findByNameFuzzy(String name, int maxDistance, int offset, int limit) {
+    checkPage(name, offset, limit);
+    if (maxDistance < 0 || maxDistance > MAX_NAME_DISTANCE) {
+      throw new IllegalArgumentException(
+          "Distance must be from 0 to " + MAX_NAME_DISTANCE + ": " + maxDistance);
+    }
+    List<String> matched = requireNames().namesWithin(NameIndex.normalize(name), maxDistance);
+    Set<String> matchedSet = new HashSet<>(matched);
+    NameSearch search = new NameSearch(matchedSet::contains, offset, limit);
+    names.forEachIn(matched, search);
+    return search.page;
+  }
+
+  private NameIndex requireNames() {
+    if (names == null) {
+      throw new IllegalStateException("The archive does not index names.");
+    }
+    return names;
+  }
+
+  private static void checkPage(String name, int offset, int limit) {
+    if (name == null) {
+      throw new IllegalArgumentException("Name cannot be null.");
+    }
+    if (offset < 0 || limit <= 0) {
+      throw new IllegalArgumentException(
+          "Offset cannot be negative, and limit must be positive: " + offset + ", " + limit);
+    }
+  }
+
+  /**
+   * Finds the members with the most points, most points first, and by member number among
+   * members with the same points. Read from the points index, so it takes time in proportion
+   * to n and the logarithm of the size of the archive, not to the size of the archive.
+   *
+   * @param n the largest number of members to return.
+   * @return up to n members with the most points.
+   * @throws IllegalArgumentException if n is not positive.
+   * @throws IllegalStateException    if the archive does not rank its members.
+   */
+  public List<BonusMember> findTopMembers(int n) {
+    return findByPoints(0, Integer.MAX_VALUE, 0, n);
+  }
+
+  /**
+   * Returns the rank of a member by points: 1 for the member with the most points, and by
+   * member number among members with the same points. Takes time in proportion to the
+   * logarithm of the size of the archive.
+   *
+   * @param memberNo the member number of the member.
+   * @return the rank of the member, or -1 if no member has the member number.
+   * @throws IllegalStateException if the archive does not rank its members.
+   */
+  public int getRank(int memberNo) {
+    return requireRanking().rankOf(memberNo);
+  }
+
+  /**
+   * Finds the members with from minPoints to maxPoints points, both included, in the order of
+   * findTopMembers. Pages are read from the points index, so a page takes time in proportion to
+   * limit and the logarithm of the size of the archive.
+   *
+   * <p>The page is taken from the index at one instant. A member removed before it is read
+   * from the archive is left out, so a page may hold fewer than limit members.</p>
+   *
+   * @param minPoints the lowest points.
+   * @param maxPoints the highest points.
+   * @param offset    the number of matching members to skip, e.g. the members of earlier pages.
+   * @param limit     the largest number of members to return.
+   * @return up to limit members with points in the range, after the first offset.
+   * @throws IllegalArgumentException if minPoints or offset is negative or limit is not
+   *                                  positive.
+   * @throws IllegalStateException    if the archive does not rank its members.
+   */
+  public List<BonusMember> findByPoints(int minPoints, int maxPoints, int offset, int limit) {
+    checkPoints(minPoints);
+    if (offset < 0 || limit <= 0) {
+      throw new IllegalArgumentException(
+          "Offset cannot be negative, and limit must be positive: " + offset + ", " + limit);
+    }
+    int[] memberNos = requireRanking().memberNosBetween(minPoints, maxPoints, offset, limit);
+    List<BonusMember> page = new ArrayList<>(memberNos.length);
+    for (int memberNo : memberNos) {
+      BonusMember member = members.get(memberNo);
+      if (member != null) {
+        page.add(member);
+      }
+    }
+    return page;
+  }
+
+  /**
+   * Counts the members with from minPoints to maxPoints points, both included. Takes time in
+   * proportion to the logarithm of the size of the archive.
+   *
+   * @param minPoints the lowest points.
+   * @param maxPoints the highest points.
+   * @return the number of members with points in the range.
+   * @throws IllegalArgumentException if minPoints is negative.
+   * @throws IllegalStateException    if the archive does not rank its members.
+   */
+  public int countByPoints(int minPoints, int maxPoints) {
+    checkPoints(minPoints);
+    return requireRanking().countBetween(minPoints, maxPoints);
+  }
+
+  private PointsIndex requireRanking() {
+    if (ranking == null) {
+      throw new IllegalStateException("The archive does not rank its members.");
+    }
+    return ranking;
+  }
+
+  private static void checkPoints(int minPoints) {
+    if (minPoints < 0) {
+      throw new IllegalArgumentException("Points cannot be negative: " + minPoints);
+    }
+  }
+
+  /**
+   * Counts the members at a membership level, in constant time.
+   *
+   * @param level the membership level.
+   * @return the number of members at that level.
+   * @throws IllegalArgumentException if level is null.
+   */
+  public int countAtLevel(MembershipLevel level) {
+    checkLevel(level);
+    return tiers.count(level);
+  }
+
+  /**
+   * Performs the given action for each member at a membership level, e.g. for a campaign
+   * targeting Gold members. The members of the other levels are never visited.
+   *
+   * <p>The members of the level are read from the level index at the time of the call.
+   * A member removed or upgraded out of the level before it is visited is skipped.</p>
+   *
+   * @param level  the membership level.
+   * @param action the action to be performed for each member at that level.
+   * @throws IllegalArgumentException if either parameter is null.
+   */
+  public void forEachAtLevel(MembershipLevel level, Consumer<? super BonusMember> action) {
+    if (action == null) {
+      throw new IllegalArgumentException("Action cannot be null.");
+    }
+    streamAtLevel(level).forEach(action);
+  }
+
+  /**
+   * Returns a Stream of the members at a membership level, read as by forEachAtLevel.
+   * The stream splits evenly, so it may be made parallel.
+   *
+   * @param level the membership level.
+   * @return a Stream of the members at that level.
+   * @throws IllegalArgumentException if level is null.
+   */
+  public Stream<BonusMember> streamAtLevel(MembershipLevel level) {
+    checkLevel(level);
+    return Arrays.stream(tiers.memberNos(level))
+        .mapToObj(members::get)
+        .filter(member -> member != null && member.getLevel() == level);
+  }
+
+  /**
+   * Returns a parallel Stream of the members at a membership level, read as by forEachAtLevel.
+   *
+   * @param level the membership level.
+   * @return a parallel Stream of the members at that level.
+   * @throws IllegalArgumentException if level is null.
+   */
+  public Stream<BonusMember> parallelStreamAtLevel(MembershipLevel level) {
+    return streamAtLevel(level).parallel();
+  }
+
+  private static void checkLevel(MembershipLevel level) {
+    if (level == null) {
+      throw new IllegalArgumentException("Level cannot be null.");
+    }
+  }
+
+  /**
+   * Looks up the member with the specified e-mail address in the e-mail index.
+   *
+   * @param email the e-mail address, in any case, or null.
+   * @return the member with the e-mail address, or null if no member has it.
+   * @throws IllegalStateException if the archive does not index e-mail addresses.
+   */
+  private BonusMember memberByEmail(String email) {
+    EmailIndex index = requireEmails();
+    if (email == null) {
+      return null;
+    }
+    int memberNo = index.get(email);
+    BonusMember member = memberNo < 0 ? null : members.get(memberNo);
+    // The member may have been removed, and its number handed to a new member, since the index
+    // was read. Its address is released before its number is, so reading the index again tells,
+    // and the entry just read is still in the cache, unlike the new member's address.
+    if (member != null && index.get(email) != memberNo) {
+      return null;
+    }
+    return member;
+  }
+
+  private EmailIndex requireEmails() {
+    if (emails == null) {
+      throw new IllegalStateException("The archive does not index e-mail addresses.");
+    }
+    return emails;
+  }
+
+  /**
+   * Drops the e-mail address of a member from the e-mail index, if the archive keeps one.
+   *
+   * @param member the member whose address to drop.
+   */
+  private void releaseEmail(BonusMember member) {
+    if (emails != null) {
+      emails.release(member.getPersonals().getEMailAddress(), member.getMemberNo());
+    }
   }
 
   /**
@@ -146,14 +898,34 @@ public class MemberArchive implements Iterable<BonusMember> {
    *
    * @param person       The personal details of the member.
    * @param dateEnrolled The date of first enrollment into the program.
-   * @return the unique membership number of the member, or -1 if creation failed.
+   * @return the unique membership number of the member, or -1 if creation failed, e.g. because
+   *        another member has the same e-mail address.
    */
   public int addMember(Personals person, LocalDate dateEnrolled) {
+    ArchiveMetrics.Recorder recorder = metrics.recorder();
+    long start = recorder.startTimer();
+    int newMemberNo = createMember(person, dateEnrolled);
+    metrics.record(recorder, Operation.ADD, start, newMemberNo < 0);
+    return newMemberNo;
+  }
+
+  /**
+   * Creates a new member account, for addMember.
+   *
+   * @param person       The personal details of the member.
+   * @param dateEnrolled The date of first enrollment into the program.
+   * @return the unique membership number of the member, or -1 if creation failed.
+   */
+  private int createMember(Personals person, LocalDate dateEnrolled) {
     int newMemberNo = -1; // we assume that member creation failed
 
     if (person != null && dateEnrolled != null) { // requires person and date to be non-null.
       // fetch a member number
       newMemberNo = findAvailableNo();
+      if (newMemberNo < 0) { // every member number is taken
+        failures.report(FailureReporter.Reason.NUMBERS_EXHAUSTED, -1, 0);
+        return -1;
+      }
 
       // inst. new BasicMember object
       BonusMember newMember = null;
@@ -161,137 +933,720 @@ public class MemberArchive implements Iterable<BonusMember> {
         newMember = new BasicMember(newMemberNo, person, dateEnrolled) {
         };
       } catch (IllegalArgumentException e) {
-        logger.warning(String.format("Caught %1$s in %2$s : %3$s",
-            e.getClass(), this.getClass(), e));
-
+        failures.report(FailureReporter.Reason.INVALID_DETAILS, newMemberNo, 0);
       }
 
-      //put member object into collection.
-      if (newMember != null) {
-        putMember(newMember);
+      //put member object into collection, unless its e-mail address is in use.
+      if (newMember == null || !insertMember(newMember, true)) {
+        numberAllocator.release(newMemberNo); // hand the unused number back
+        newMemberNo = -1;
       }
 
+    } else {
+      failures.report(FailureReporter.Reason.INVALID_DETAILS, -1, 0);
     } //if
 
     // returns the member number of the new member, or -1 if creation failed.
     return newMemberNo;
   }
 
+  /**
+   * Creates a new Basic member account for each pair of personal details and enrollment date,
+   * e.g. for a bulk import. persons[i] and enrolledDates[i] make up one member.
+   *
+   * <p>Unlike calling addMember for each member, a logged archive only waits for the log once,
+   * for the whole batch.</p>
+   *
+   * @param persons       the personal details of the new members.
+   * @param enrolledDates the dates of first enrollment into the program.
+   * @return the membership number of each new member, or -1 where creation failed,
+   *        i.e. for null details or dates, for an e-mail address already in use,
+   *        or when every member number is taken.
+   * @throws IllegalArgumentException if either array is null, or they differ in length.
+   */
+  public int[] addMembers(Personals[] persons, LocalDate[] enrolledDates) {
+    if (persons == null || enrolledDates == null || persons.length != enrolledDates.length) {
+      throw new IllegalArgumentException(
+          "Personals and enrollment dates must be arrays of equal length.");
+    }
+    long start = System.nanoTime();
+    int failed = 0;
+    int[] memberNos = new int[persons.length];
+    for (int i = 0; i < persons.length; i++) {
+      memberNos[i] = -1;
+      if (persons[i] == null || enrolledDates[i] == null) {
+        failed++;
+        failures.report(FailureReporter.Reason.INVALID_DETAILS, -1, 0);
+        continue;
+      }
+      int memberNo = findAvailableNo();
+      if (memberNo < 0) { // every member number is taken
+        failed++;
+        failures.report(FailureReporter.Reason.NUMBERS_EXHAUSTED, -1, 0);
+        continue;
+      }
+      BonusMember newMember = new BasicMember(memberNo, persons[i], enrolledDates[i]);
+      if (insertMember(newMember, false)) {
+        memberNos[i] = memberNo;
+      } else {
+        numberAllocator.release(memberNo);
+        failed++;
+      }
+    }
+    syncLog(); // one wait for the whole batch
+    metrics.recordBatch(Operation.ADD, start, persons.length, failed);
+    return memberNos;
+  }
+
   /**
    * Removes the specified member from the archive.
    *
    * @param removedMember The member that is to be removed.
    */
   public void removeMember(BonusMember removedMember) {
-    members.remove(removedMember.getMemberNo());
+    BonusMember removed = members.remove(removedMember.getMemberNo());
+    if (removed != null) {
+      releaseEmail(removed);
+      long ticket = -1;
+      synchronized (lockFor(removed.getMemberNo())) { // a credit in progress goes first
+        unindexMember(removed);
+        upgradeCandidates.remove(removedMember.getMemberNo());
+        if (log != null) {
+          ticket = log.appendRemove(removedMember.getMemberNo());
+        }
+      }
+      if (log != null) { // logged before the number can be handed out again
+        log.awaitDurable(ticket);
+      }
+      numberAllocator.release(removedMember.getMemberNo()); // number can be reused
+    }
   }
 
   /**
    * Puts a member into the members collection, using its member number as key.
    * Do NOT use this method to replace a member already in the archive,
-   * e.g. during membership upgrade. This will fail if the membership number is the same
+   * e.g. to swap in a new member object. This will fail if the membership number is the same
    * for both the old and the upgraded member objects (which they should be, even after an upgrade)
    *
    * <p>see replaceUpgradedMember for interactions with members already in collection.</p>
    *
+   * <p>Nothing is put if another member has the same e-mail address.</p>
+   *
    * @param newMember the member to add to the list.
    */
   protected void putMember(BonusMember newMember) {
-    if (newMember != null && !(members.containsKey(newMember.getMemberNo()))) {
-      members.put(// add newly created member to collection
-          newMember.getMemberNo(), // member number is key
-          newMember); // member object is value
+    if (newMember != null) {
+      insertMember(newMember, true);
     }
   }
 
+  /**
+   * Puts a new member into the members collection and the e-mail index, and logs it.
+   * The e-mail address is claimed first, so two members added at once with the same address
+   * cannot both get in. Without an e-mail index the address is not checked.
+   *
+   * @param newMember the member to add.
+   * @param durable   true to wait until the member is logged, false to leave it to syncLog.
+   * @return true if the member was added, false if its member number or e-mail address is
+   *        taken.
+   */
+  private boolean insertMember(BonusMember newMember, boolean durable) {
+    if (emails != null) {
+      String email = newMember.getPersonals().getEMailAddress();
+      if (!emails.claim(email, newMember.getMemberNo())) {
+        failures.report(FailureReporter.Reason.DUPLICATE_EMAIL, emails.get(email), 0);
+        return false;
+      }
+    }
+    // member number is key, member object is value
+    if (!members.putIfAbsent(newMember)) {
+      releaseEmail(newMember);
+      return false;
+    }
+    indexMember(newMember);
+    numberAllocator.markTaken(newMember.getMemberNo()); // no-op if allocated by addMember
+    trackUpgradeCandidate(newMember);
+    if (log != null) {
+      long ticket = log.appendMember(newMember);
+      if (durable) {
+        log.awaitDurable(ticket);
+      }
+    }
+    return true;
+  }
+
   /**
    * Replaces a member already in collection, with the parameter member object.
    * Do NOT use this method when adding a new member to the archive, e.g. during
-   * membership creation. Should ONLY be used when upgrading a member, as it requires
+   * membership creation. Should ONLY be used when swapping in a new member object, as it requires
    * that an object with the same member number key is already present in the collection.
    * Method does not allow caller to directly specify the member number of the member
    * that is to be replaced. It will automatically fetch and reuse the member number
    * from the old member.
    *
-   * <p>See putMember to add a new member.</p>
+   * <p>The upgrade runs of the archive change the member's level in place, and do not need
+   * this method. See putMember to add a new member.</p>
+   *
+   * <p>If the replacement has another e-mail address, the e-mail index follows it, and nothing
+   * is replaced if that address belongs to another member.</p>
    *
    * @param oldMember         the current member object, that will be replaced.
    * @param replacementMember the new member object that will replace the old one.
+   * @return true if the old member was replaced.
+   */
+  protected boolean replaceUpgradedMember(BonusMember oldMember, BonusMember replacementMember) {
+    if (replacementMember == null     // confirm that this key-value pair is NOT new
+        || (oldMember.getMemberNo() != replacementMember.getMemberNo())
+        || !members.contains(replacementMember.getMemberNo())) {
+      return false;
+    }
+    int memberNo = replacementMember.getMemberNo();
+    String oldEmail = oldMember.getPersonals().getEMailAddress();
+    String newEmail = replacementMember.getPersonals().getEMailAddress();
+    boolean newAddress = emails != null // addresses are only checked if they are indexed
+        && !EmailIndex.normalize(oldEmail).equals(EmailIndex.normalize(newEmail));
+    if (newAddress && !emails.claim(newEmail, memberNo)) {
+      failures.report(FailureReporter.Reason.DUPLICATE_EMAIL, emails.get(newEmail), 0);
+      return false;
+    }
+    boolean replaced = members.replace(
+        oldMember, //memberNo of replacement and old are the same
+        replacementMember);
+    if (newAddress) { // drop whichever address the member no longer has
+      emails.release(replaced ? oldEmail : newEmail, memberNo);
+    }
+    if (replaced) {
+      unindexMember(oldMember);
+      indexMember(replacementMember);
+      upgradeCandidates.remove(oldMember.getMemberNo());
+      trackUpgradeCandidate(replacementMember);
+      if (log != null) {
+        log.awaitDurable(log.appendMember(replacementMember));
+      }
+    }
+    return replaced;
+  }
+
+  /**
+   * Performs the given action for each member that has been part of the Bonus program for less
+   * than one year on the test date, passing the member and its qualification points, in order
+   * of enrollment. Members outside their first year are skipped, since their qualification
+   * points are 0. They are skipped by the enrollment index, so the run takes time in proportion
+   * to the number of members in their first year, and nothing is allocated per member.
+   *
+   * @param testDate The date to compare member enrollment dates to.
+   * @param action   The action to be performed for each member and its qualification points.
+   * @throws IllegalArgumentException if either parameter is null.
    */
-  protected void replaceUpgradedMember(BonusMember oldMember, BonusMember replacementMember) {
-    if (replacementMember != null     // confirm that this key-value pair is NOT new
-        && (oldMember.getMemberNo() == replacementMember.getMemberNo())
-        && members.containsKey(replacementMember.getMemberNo())) {
-      members.replace(
-          oldMember.getMemberNo(), //memberNo of replacement and old are the same
-          replacementMember);
+  public void forEachQualificationPoints(LocalDate testDate,
+                                         ObjIntConsumer<? super BonusMember> action) {
+    if (testDate == null || action == null) {
+      throw new IllegalArgumentException("Test date and action cannot be null.");
     }
+    forEachEnrolledFrom(firstQualifyingDay(testDate), null, member -> {
+      action.accept(member, member.getPoints());
+      return true;
+    });
+  }
+
+  /**
+   * Counts the members that have been part of the Bonus program for less than one year on the
+   * test date, including members enrolled after it. Takes time in proportion to the number of
+   * enrollment days in that year, not the number of members.
+   *
+   * @param testDate the date to compare member enrollment dates to.
+   * @return the number of members in their first year on testDate.
+   * @throws IllegalArgumentException if testDate is null.
+   */
+  public long countInQualificationPeriod(LocalDate testDate) {
+    if (testDate == null) {
+      throw new IllegalArgumentException("Test date cannot be null.");
+    }
+    return enrollments.count(firstQualifyingDay(testDate), null);
+  }
+
+  /**
+   * Counts the members enrolled from one date to another, both included, e.g. the members
+   * enrolled in a quarter. Takes time in proportion to the number of enrollment days in the
+   * range, not the number of members.
+   *
+   * @param from the first enrollment date.
+   * @param to   the last enrollment date.
+   * @return the number of members enrolled from from to to.
+   * @throws IllegalArgumentException if either date is null.
+   */
+  public long countEnrolledBetween(LocalDate from, LocalDate to) {
+    if (from == null || to == null) {
+      throw new IllegalArgumentException("Dates cannot be null.");
+    }
+    return enrollments.count(from.toEpochDay(), to.toEpochDay() + 1);
+  }
+
+  /**
+   * Performs the given action for each member enrolled from one date to another, both
+   * included, in order of enrollment. Members enrolled outside the range are never visited.
+   *
+   * @param from   the first enrollment date.
+   * @param to     the last enrollment date.
+   * @param action the action to be performed for each member.
+   * @throws IllegalArgumentException if any parameter is null.
+   */
+  public void forEachEnrolledBetween(LocalDate from, LocalDate to,
+                                     Consumer<? super BonusMember> action) {
+    if (from == null || to == null || action == null) {
+      throw new IllegalArgumentException("Dates and action cannot be null.");
+    }
+    forEachEnrolledFrom(from.toEpochDay(), to.toEpochDay() + 1, member -> {
+      action.accept(member);
+      return true;
+    });
+  }
+
+  /**
+   * Passes each member enrolled from one epoch day, inclusive, to another, exclusive, to the
+   * visitor, in order of enrollment, until the visitor returns false.
+   *
+   * @param fromDay the first enrollment day.
+   * @param toDay   the enrollment day to stop before, or null to go on to the latest.
+   * @param visitor the visitor to pass the members to.
+   */
+  private void forEachEnrolledFrom(long fromDay, Long toDay, Predicate<BonusMember> visitor) {
+    enrollments.forEachBetween(fromDay, toDay, (day, memberNo) -> {
+      BonusMember member = members.get(memberNo);
+      // skips a member removed since the index was read, or one that took over its number
+      return member == null || member.getEnrolledEpochDay() != day || visitor.test(member);
+    });
+  }
+
+  /**
+   * Returns the first enrollment day of the members still in their first year on the test
+   * date. A year is 365 or 366 days, so it is one of the three days from 366 days before.
+   *
+   * @param testDate the date to compare member enrollment dates to.
+   * @return the earliest epoch day of enrollment that is less than a year before testDate.
+   */
+  private static long firstQualifyingDay(LocalDate testDate) {
+    LocalDate enrolled = testDate.minusDays(366);
+    while (!BonusMember.findFirstAnniversary(enrolled).isAfter(testDate)) {
+      enrolled = enrolled.plusDays(1);
+    }
+    return enrolled.toEpochDay();
   }
 
   /**
    * Checks member registry for members that are eligible for upgrade to silver or gold level.
    *
    * @param testDate Date to test member enrollment date with.
+   * @return a summary of the upgrades made, or an empty summary if testDate is null.
    */
-  public void checkAndUpgradeMembers(LocalDate testDate) {
+  public UpgradeSummary checkAndUpgradeMembers(LocalDate testDate) {
+    UpgradeSummary summary = new UpgradeSummary();
     if (testDate == null) { // sanity check
-      return;
+      return summary;
     }
+    long start = System.nanoTime();
+    long testDay = testDate.toEpochDay(); // converted once for the whole archive
 
-    for (BonusMember member : members.values()) {
+    for (BonusMember member : members) {
       //iterates over all values objects (i.e. members) in collection
+      summary.countChecked(1);
+      summary.countUpgrade(upgradeIfQualified(member, testDay));
+    } //for each
 
-      // member cannot be upgraded past gold, so we check for that first.
-      if (!(member instanceof GoldMember)) { // if not already gold
+    syncLog();
+    metrics.recordBatch(Operation.UPGRADE, start, 1, 0);
+    return summary;
+  }
 
-        // check for gold level qualification first,
-        // since gold level eligibility overrides silver level.
-        // this saves us checking for, and then upgrading to, silver only to
-        // realise later that the member should have been upgraded straight to gold.
+  /**
+   * Checks member registry for members that are eligible for upgrade to silver or gold level,
+   * splitting the members between the threads of a ForkJoinPool.
+   *
+   * <p>The threads only evaluate which members qualify. The qualified members are then upgraded
+   * by the calling thread, so the member store does not need to be thread safe.</p>
+   *
+   * @param testDate    Date to test member enrollment date with.
+   * @param parallelism the number of threads to check members with.
+   * @return a summary of the upgrades made, or an empty summary if testDate is null.
+   * @throws IllegalArgumentException if parallelism is not positive.
+   */
+  public UpgradeSummary checkAndUpgradeMembers(LocalDate testDate, int parallelism) {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+    }
+    UpgradeSummary summary = new UpgradeSummary();
+    if (testDate == null) { // sanity check
+      return summary;
+    }
+    long start = System.nanoTime();
+    long testDay = testDate.toEpochDay(); // converted once for the whole archive
 
-        if (checkGoldQualification(member, testDate)) { //if qualified for gold
-          replaceUpgradedMember(member, upgradeMemberToGold(member));
-          // replace member in HashMap with upgraded member.
-        } else if (checkSilverQualification(member, testDate)) {
-          //check for silver level qualification
-          replaceUpgradedMember(member, upgradeMemberToSilver(member));
-        }
+    BonusMember[] snapshot = new BonusMember[members.size()];
+    int memberCount = 0;
+    for (BonusMember member : members) {
+      if (memberCount == snapshot.length) { // members were added since size() was read
+        snapshot = Arrays.copyOf(snapshot, memberCount * 2 + 1);
+      }
+      snapshot[memberCount++] = member;
+    }
+    summary.countChecked(memberCount);
 
-      } //if !gold member
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    List<BonusMember> qualified;
+    try {
+      qualified = pool.invoke(new QualificationTask(snapshot, 0, memberCount, testDay));
+    } finally {
+      pool.shutdown();
+    }
 
-    } //for each
+    for (BonusMember member : qualified) {
+      // re-checked, since the member may have changed in the meantime
+      summary.countUpgrade(upgradeIfQualified(member, testDay));
+    }
+    syncLog();
+    metrics.recordBatch(Operation.UPGRADE, start, 1, 0);
+    return summary;
+  }
 
+  /**
+   * Checks the upgrade candidates for members that are eligible for upgrade to silver or gold
+   * level. Upgrade candidates are the members whose points passed the limit of the next level
+   * when points were registered through this archive, so the run takes time in proportion
+   * to the number of candidates rather than the size of the archive.
+   *
+   * <p>Every candidate is dropped once checked. A candidate that does not qualify on testDate
+   * has enrolled more than a year before testDate, and will not be checked again by this method
+   * unless more points are registered. Points registered directly on a member object, without
+   * going through the archive, do not make the member a candidate;
+   * use checkAndUpgradeMembers to check every member.</p>
+   *
+   * @param testDate Date to test member enrollment date with.
+   * @return a summary of the upgrades made, or an empty summary if testDate is null.
+   */
+  public UpgradeSummary checkAndUpgradeCandidates(LocalDate testDate) {
+    UpgradeSummary summary = new UpgradeSummary();
+    if (testDate == null) { // sanity check
+      return summary;
+    }
+    long start = System.nanoTime();
+    long testDay = testDate.toEpochDay(); // converted once for the whole archive
+
+    Iterator<Integer> candidates = upgradeCandidates.iterator();
+    while (candidates.hasNext()) {
+      int memberNo = candidates.next();
+      // dropped before the check, so points registered during the check make it a candidate again
+      candidates.remove();
+      BonusMember member = members.get(memberNo);
+      if (member != null) {
+        summary.countChecked(1);
+        summary.countUpgrade(upgradeIfQualified(member, testDay));
+      }
+    }
+    syncLog();
+    metrics.recordBatch(Operation.UPGRADE, start, 1, 0);
+    return summary;
   }
 
   /**
-   * Generates a unique membership number.
+   * Checks the members still in their first year on the test date for members that are eligible
+   * for upgrade to silver or gold level. Only they can qualify, since qualification points are
+   * 0 after the first year, so this upgrades the same members as checkAndUpgradeMembers.
+   * The enrollment index skips the other members, so the run takes time in proportion to the
+   * number of members in their first year rather than the size of the archive, and
+   * getMembersChecked of the summary only counts them.
    *
-   * @return a unique membership number.
+   * @param testDate Date to test member enrollment date with.
+   * @return a summary of the upgrades made, or an empty summary if testDate is null.
    */
-  private int findAvailableNo() {
-    boolean unique = false;
-    int newNo = -1;
-    while (!unique) {
-      newNo = RANDOM_NUMBER.nextInt((1000000));
+  public UpgradeSummary checkAndUpgradeRecentMembers(LocalDate testDate) {
+    UpgradeSummary summary = new UpgradeSummary();
+    if (testDate == null) { // sanity check
+      return summary;
+    }
+    long start = System.nanoTime();
+    long testDay = testDate.toEpochDay(); // converted once for the whole run
+
+    forEachEnrolledFrom(firstQualifyingDay(testDate), null, member -> {
+      summary.countChecked(1);
+      summary.countUpgrade(upgradeIfQualified(member, testDay));
+      return true;
+    });
+    syncLog();
+    metrics.recordBatch(Operation.UPGRADE, start, 1, 0);
+    return summary;
+  }
+
+  /**
+   * Returns the number of members currently waiting to be checked by checkAndUpgradeCandidates.
+   *
+   * @return the number of upgrade candidates.
+   */
+  public int getUpgradeCandidateCount() {
+    return upgradeCandidates.size();
+  }
+
+  /**
+   * Waits until the changes logged so far are on disk, if the archive keeps a log.
+   */
+  private void syncLog() {
+    if (log != null) {
+      log.sync();
+    }
+  }
+
+  /**
+   * Adds a member read from the log, or overwrites the member with the same member number.
+   *
+   * @param member the member as logged.
+   */
+  void replayMember(BonusMember member) {
+    BonusMember replaced = members.remove(member.getMemberNo());
+    if (replaced != null) {
+      releaseEmail(replaced);
+      unindexMember(replaced);
+      upgradeCandidates.remove(member.getMemberNo());
+    }
+    members.putIfAbsent(member);
+    if (emails != null) {
+      emails.put(member.getPersonals().getEMailAddress(), member.getMemberNo());
+    }
+    indexMember(member);
+    numberAllocator.markTaken(member.getMemberNo());
+    trackUpgradeCandidate(member);
+  }
+
+  /**
+   * Raises the points of a member to a total read from the log. Points are never taken away,
+   * so a credit already held by the member, e.g. from a snapshot, changes nothing.
+   *
+   * @param memberNo    the member number of the member.
+   * @param pointsAfter the points of the member after the logged credit.
+   */
+  void replayCredit(int memberNo, int pointsAfter) {
+    BonusMember member = members.get(memberNo);
+    if (member != null && pointsAfter > member.getPoints()) {
+      member.addPoints(pointsAfter - member.getPoints());
+      if (ranking != null) {
+        ranking.raise(member);
+      }
+      trackUpgradeCandidate(member);
+    }
+  }
+
+  /**
+   * Moves a member up to a membership level read from the log.
+   *
+   * @param memberNo the member number of the member.
+   * @param level    the new membership level.
+   */
+  void replayUpgrade(int memberNo, MembershipLevel level) {
+    BonusMember member = members.get(memberNo);
+    if (member != null && member.upgradeTo(level)) {
+      tiers.update(member);
+      upgradeCandidates.remove(memberNo);
+      trackUpgradeCandidate(member);
+    }
+  }
+
+  /**
+   * Removes a member read from the log.
+   *
+   * @param memberNo the member number of the member.
+   */
+  void replayRemove(int memberNo) {
+    BonusMember removed = members.remove(memberNo);
+    if (removed != null) {
+      releaseEmail(removed);
+      unindexMember(removed);
+      upgradeCandidates.remove(memberNo);
+      numberAllocator.release(memberNo);
+    }
+  }
+
+  /**
+   * Adds a member to the name, enrollment, points and level indexes.
+   *
+   * @param member the member to add.
+   */
+  private void indexMember(BonusMember member) {
+    if (names != null) {
+      names.add(member);
+    }
+    enrollments.add(member.getEnrolledEpochDay(), member.getMemberNo());
+    if (ranking != null) {
+      ranking.put(member);
+    }
+    tiers.put(member);
+  }
+
+  /**
+   * Removes a member from the name, enrollment, points and level indexes.
+   *
+   * @param member the member to remove.
+   */
+  private void unindexMember(BonusMember member) {
+    if (names != null) {
+      names.remove(member);
+    }
+    enrollments.remove(member.getEnrolledEpochDay(), member.getMemberNo());
+    if (ranking != null) {
+      ranking.remove(member.getMemberNo());
+    }
+    tiers.remove(member.getMemberNo());
+  }
+
+  /**
+   * Returns the lock that a credit to and a removal of the member with the specified number
+   * both hold. The lock is picked by member number rather than being the member object, since
+   * a store may hand out a new object for the same member on every lookup.
+   *
+   * @param memberNo the member number of the member.
+   * @return the lock of the member.
+   */
+  private Object lockFor(int memberNo) {
+    int h = memberNo * 0x85EBCA6B;
+    return memberLocks[(h ^ (h >>> 15)) & memberLockMask];
+  }
+
+  /**
+   * Makes the member an upgrade candidate if it holds enough points for the next level,
+   * regardless of when it enrolled.
+   *
+   * @param member the member to track.
+   */
+  private void trackUpgradeCandidate(BonusMember member) {
+    int limit;
+    if (member.getLevel() == MembershipLevel.GOLD) {
+      return;
+    } else if (member.getLevel() == MembershipLevel.SILVER) {
+      limit = GOLD_LIMIT;
+    } else {
+      limit = SILVER_LIMIT;
+    }
+    if (member.getPoints() >= limit) {
+      upgradeCandidates.add(member.getMemberNo());
+    }
+  }
+
+  /**
+   * Upgrades a member to the highest level it qualifies for, if that is above its current level.
+   *
+   * @param member   the member to upgrade.
+   * @param testDay  the date to test the members enrollment date with, as an epoch day.
+   * @return the new membership level of the member, or null if it was not upgraded.
+   */
+  private MembershipLevel upgradeIfQualified(BonusMember member, long testDay) {
+    MembershipLevel newLevel = null;
+
+    // member cannot be upgraded past gold, so we check for that first.
+    if (member.getLevel() != MembershipLevel.GOLD) { // if not already gold
+
+      // check for gold level qualification first,
+      // since gold level eligibility overrides silver level.
+      // this saves us checking for, and then upgrading to, silver only to
+      // realise later that the member should have been upgraded straight to gold.
+
+      if (checkGoldQualification(member, testDay)) { //if qualified for gold
+        newLevel = MembershipLevel.GOLD;
+      } else if (checkSilverQualification(member, testDay)) {
+        //check for silver level qualification
+        newLevel = MembershipLevel.SILVER;
+      }
+
+      // upgrade in place. Fails if the member already is at that level,
+      // or another thread upgraded it first.
+      if (newLevel != null && member.upgradeTo(newLevel)) {
+        tiers.update(member);
+        // the upgraded member is below the limit of the level above, if there is one.
+        upgradeCandidates.remove(member.getMemberNo());
+        if (log != null) {
+          log.appendUpgrade(member.getMemberNo(), newLevel);
+        }
+      } else {
+        newLevel = null;
+      }
+
+    } //if !gold member
+
+    return newLevel;
+  }
+
+  /**
+   * Checks if a member qualifies for a higher membership level than it has, without upgrading it.
+   *
+   * @param member   the member to check.
+   * @param testDay  the date to test the members enrollment date with, as an epoch day.
+   * @return true if the member qualifies for a higher level.
+   */
+  private boolean qualifiesForUpgrade(BonusMember member, long testDay) {
+    if (member.getLevel() == MembershipLevel.GOLD) {
+      return false;
+    } else if (member.getLevel() == MembershipLevel.SILVER) {
+      return checkGoldQualification(member, testDay);
+    } else {
+      return checkSilverQualification(member, testDay);
+    }
+  }
+
+  /**
+   * Fork/join task that finds the members in a range of a member array that qualify for an
+   * upgrade, splitting the range in two until it is small enough to check directly.
+   */
+  private class QualificationTask extends RecursiveTask<List<BonusMember>> {
+    private static final long serialVersionUID = 1L;
+    private static final int DIRECT_CHECK_SIZE = 4096;
 
-      if (!members.containsKey(newNo)) {
-        unique = true;
+    private final BonusMember[] snapshot;
+    private final int from;
+    private final int to;
+    private final long testDay;
+
+    QualificationTask(BonusMember[] snapshot, int from, int to, long testDay) {
+      this.snapshot = snapshot;
+      this.from = from;
+      this.to = to;
+      this.testDay = testDay;
+    }
 
+    @Override
+    protected List<BonusMember> compute() {
+      if (to - from <= DIRECT_CHECK_SIZE) {
+        List<BonusMember> qualified = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+          if (qualifiesForUpgrade(snapshot[i], testDay)) {
+            qualified.add(snapshot[i]);
+          }
+        }
+        return qualified;
       }
+      int middle = (from + to) >>> 1;
+      QualificationTask left = new QualificationTask(snapshot, from, middle, testDay);
+      left.fork();
+      List<BonusMember> qualified =
+          new QualificationTask(snapshot, middle, to, testDay).compute();
+      qualified.addAll(left.join());
+      return qualified;
     }
+  }
 
-    return newNo;
+  /**
+   * Generates a unique membership number.
+   *
+   * @return a unique membership number, or -1 if every member number is taken.
+   */
+  private int findAvailableNo() {
+    return numberAllocator.allocate();
   }
 
   /**
    * Checks if a member is eligible for upgrade to silver level.
    *
    * @param member   the member to be checked.
-   * @param testDate the date to test the members enrollment date with.
+   * @param testDay  the date to test the members enrollment date with, as an epoch day.
    * @return true if member is eligible for silver level membership.
    */
-  private boolean checkSilverQualification(BonusMember member, LocalDate testDate) {
-    return (member.findQualificationPoints(testDate) >= SILVER_LIMIT);
+  private boolean checkSilverQualification(BonusMember member, long testDay) {
+    return (member.findQualificationPoints(testDay) >= SILVER_LIMIT);
     // should return true if member has enough valid points to be upgraded to silver.
   }
 
@@ -299,41 +1654,53 @@ public class MemberArchive implements Iterable<BonusMember> {
    * Checks if a member is eligible for upgrade to gold level.
    *
    * @param member   the member to be checked.
-   * @param testDate the date to test the members enrollment date with.
+   * @param testDay  the date to test the members enrollment date with, as an epoch day.
    * @return true if member is eligible for gold level membership.
    */
-  private boolean checkGoldQualification(BonusMember member, LocalDate testDate) {
-    return (member.findQualificationPoints(testDate) >= GOLD_LIMIT);
+  private boolean checkGoldQualification(BonusMember member, long testDay) {
+    return (member.findQualificationPoints(testDay) >= GOLD_LIMIT);
     // should return true if member has enough valid points to be upgraded to gold.
   }
 
   /**
-   * Upgrades the parameter member to silver member status.
-   *
-   * @param currentMember The member who is to be upgraded to silver level.
-   * @return the newly upgraded silver level member.
+   * Collects one page of the members found by a name search. A member is found under each of
+   * its names that matches, and is only listed under the first of them, so it is listed once.
    */
-  private BonusMember upgradeMemberToSilver(BonusMember currentMember) {
-    return new SilverMember(//recycles details from old BasicMember object.
-        currentMember.getMemberNo(),
-        currentMember.getPersonals(),
-        currentMember.getEnrolledDate(),
-        currentMember.getPoints());
-  }
-
-  /**
-   * Upgrades the parameter member to gold member status.
-   *
-   * @param currentMember The member who is to be upgraded to gold level.
-   * @return the newly upgraded gold level member.
-   */
-  private BonusMember upgradeMemberToGold(BonusMember currentMember) {
-    return new GoldMember(//recycles details from old SilverMember or BasicMember object.
-        currentMember.getMemberNo(),
-        currentMember.getPersonals(),
-        currentMember.getEnrolledDate(),
-        currentMember.getPoints());
-  }
+  private class NameSearch implements SortedMemberIndex.Visitor<String> {
+    private final Predicate<String> matches;
+    private final int offset;
+    private final int limit;
+    private final List<BonusMember> page = new ArrayList<>();
+    private int skipped;
 
+    NameSearch(Predicate<String> matches, int offset, int limit) {
+      this.matches = matches;
+      this.offset = offset;
+      this.limit = limit;
+    }
 
+    @Override
+    public boolean visit(String name, int memberNo) {
+      BonusMember member = members.get(memberNo);
+      if (member == null) { // removed since the index was read
+        return true;
+      }
+      // also skips a member that took over the number of a removed member with the name
+      String firstname = NameIndex.normalize(member.getFirstName());
+      String surname = NameIndex.normalize(member.getSurname());
+      String listedUnder = matches.test(firstname) ? firstname : null;
+      if (matches.test(surname) && (listedUnder == null || surname.compareTo(listedUnder) < 0)) {
+        listedUnder = surname;
+      }
+      if (!name.equals(listedUnder)) {
+        return true;
+      }
+      if (skipped < offset) {
+        skipped++;
+        return true;
+      }
+      page.add(member);
+      return page.size() < limit;
+    }
+  }
 }
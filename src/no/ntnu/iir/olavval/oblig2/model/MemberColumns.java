@@ -0,0 +1,263 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * A column-wise copy of the members of an archive, for analytics over many members.
+ * Member number, points, membership level and enrollment date are kept in parallel primitive
+ * arrays, one element per member, with the Personals in a side table. A scan over a column is a
+ * tight loop over one array, instead of following references from the store to each member.
+ *
+ * <p>The columns are a snapshot taken by MemberArchive.toColumns(), and do not follow later
+ * changes to the archive. Members are owned and updated by the archive, so the columns are
+ * meant to be taken once and then scanned many times, e.g. for a batch of reports.</p>
+ *
+ * @author mort
+ */
+public class MemberColumns {
+  private static final MembershipLevel[] LEVELS = MembershipLevel.values();
+
+  private final int size;
+  private final int[] memberNos;
+  private final int[] points;
+  private final byte[] levels; // MembershipLevel ordinals
+  private final long[] enrolledEpochDays;
+  private final long[] qualificationEndEpochDays;
+  private final Personals[] personals;
+
+  /**
+   * Copies the members into columns.
+   *
+   * @param members        the members to copy.
+   * @param expectedMembers the expected number of members, used to size the columns.
+   */
+  MemberColumns(Iterable<BonusMember> members, int expectedMembers) {
+    int capacity = Math.max(expectedMembers, 16);
+    int[] memberNoColumn = new int[capacity];
+    int[] pointColumn = new int[capacity];
+    byte[] levelColumn = new byte[capacity];
+    long[] enrolledColumn = new long[capacity];
+    long[] qualificationEndColumn = new long[capacity];
+    Personals[] personalsColumn = new Personals[capacity];
+
+    int count = 0;
+    for (BonusMember member : members) {
+      if (count == memberNoColumn.length) { // members were added while copying
+        int newCapacity = count * 2;
+        memberNoColumn = Arrays.copyOf(memberNoColumn, newCapacity);
+        pointColumn = Arrays.copyOf(pointColumn, newCapacity);
+        levelColumn = Arrays.copyOf(levelColumn, newCapacity);
+        enrolledColumn = Arrays.copyOf(enrolledColumn, newCapacity);
+        qualificationEndColumn = Arrays.copyOf(qualificationEndColumn, newCapacity);
+        personalsColumn = Arrays.copyOf(personalsColumn, newCapacity);
+      }
+      memberNoColumn[count] = member.getMemberNo();
+      pointColumn[count] = member.getPoints();
+      levelColumn[count] = (byte) member.getLevel().ordinal();
+      enrolledColumn[count] = member.getEnrolledEpochDay();
+      qualificationEndColumn[count] = member.getQualificationEndEpochDay();
+      personalsColumn[count] = member.getPersonals();
+      count++;
+    }
+
+    this.size = count;
+    this.memberNos = memberNoColumn;
+    this.points = pointColumn;
+    this.levels = levelColumn;
+    this.enrolledEpochDays = enrolledColumn;
+    this.qualificationEndEpochDays = qualificationEndColumn;
+    this.personals = personalsColumn;
+  }
+
+  /**
+   * Returns the number of members in the columns.
+   *
+   * @return the number of members in the columns.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the member number of the member at the given row.
+   *
+   * @param row the row of the member, from 0 up to size().
+   * @return the member number of the member.
+   */
+  public int getMemberNo(int row) {
+    checkRow(row);
+    return memberNos[row];
+  }
+
+  /**
+   * Returns the points of the member at the given row, as they were when the columns were taken.
+   *
+   * @param row the row of the member, from 0 up to size().
+   * @return the points of the member.
+   */
+  public int getPoints(int row) {
+    checkRow(row);
+    return points[row];
+  }
+
+  /**
+   * Returns the membership level of the member at the given row.
+   *
+   * @param row the row of the member, from 0 up to size().
+   * @return the membership level of the member.
+   */
+  public MembershipLevel getLevel(int row) {
+    checkRow(row);
+    return LEVELS[levels[row]];
+  }
+
+  /**
+   * Returns the enrollment date, as an epoch day, of the member at the given row.
+   *
+   * @param row the row of the member, from 0 up to size().
+   * @return the epoch day the member enrolled.
+   */
+  public long getEnrolledEpochDay(int row) {
+    checkRow(row);
+    return enrolledEpochDays[row];
+  }
+
+  /**
+   * Returns the personal details of the member at the given row.
+   *
+   * @param row the row of the member, from 0 up to size().
+   * @return the personal details of the member.
+   */
+  public Personals getPersonals(int row) {
+    checkRow(row);
+    return personals[row];
+  }
+
+  /**
+   * Returns the total points held by all members.
+   *
+   * @return the total points held by all members.
+   */
+  public long sumPoints() {
+    long sum = 0;
+    for (int i = 0; i < size; i++) {
+      sum += points[i];
+    }
+    return sum;
+  }
+
+  /**
+   * Returns the total points held by the members at each membership level,
+   * indexed by MembershipLevel.ordinal().
+   *
+   * @return the total points per membership level.
+   */
+  public long[] sumPointsByLevel() {
+    long[] sums = new long[LEVELS.length];
+    for (int i = 0; i < size; i++) {
+      sums[levels[i]] += points[i];
+    }
+    return sums;
+  }
+
+  /**
+   * Returns the number of members at each membership level, indexed by MembershipLevel.ordinal().
+   *
+   * @return the number of members per membership level.
+   */
+  public int[] countByLevel() {
+    int[] counts = new int[LEVELS.length];
+    for (int i = 0; i < size; i++) {
+      counts[levels[i]]++;
+    }
+    return counts;
+  }
+
+  /**
+   * Returns the number of members holding at least the specified number of points.
+   *
+   * @param threshold the least number of points to count a member.
+   * @return the number of members holding at least threshold points.
+   */
+  public int countAtOrAbove(int threshold) {
+    int count = 0;
+    for (int i = 0; i < size; i++) {
+      if (points[i] >= threshold) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns the number of members enrolled between two dates, both inclusive.
+   *
+   * @param from the first enrollment date to count.
+   * @param to   the last enrollment date to count.
+   * @return the number of members enrolled in the period.
+   * @throws IllegalArgumentException if either date is null.
+   */
+  public int countEnrolledBetween(LocalDate from, LocalDate to) {
+    if (from == null || to == null) {
+      throw new IllegalArgumentException("Dates cannot be null.");
+    }
+    long fromDay = from.toEpochDay();
+    long toDay = to.toEpochDay();
+    int count = 0;
+    for (int i = 0; i < size; i++) {
+      if (enrolledEpochDays[i] >= fromDay && enrolledEpochDays[i] <= toDay) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Finds the members that an upgrade run on testDate would move up to the specified level,
+   * using the same rules as MemberArchive.checkAndUpgradeMembers. Nothing is upgraded.
+   *
+   * @param testDate the date to test the members enrollment date with.
+   * @param newLevel the level to find upgrades to, SILVER or GOLD.
+   * @return the member numbers of the members that qualify for an upgrade to newLevel.
+   * @throws IllegalArgumentException if either parameter is null.
+   */
+  public int[] findUpgradesTo(LocalDate testDate, MembershipLevel newLevel) {
+    if (testDate == null || newLevel == null) {
+      throw new IllegalArgumentException("Test date and level cannot be null.");
+    }
+    long testDay = testDate.toEpochDay();
+    int lowerLimit;
+    int upperLimit;
+    if (newLevel == MembershipLevel.GOLD) {
+      lowerLimit = MemberArchive.GOLD_LIMIT;
+      upperLimit = Integer.MAX_VALUE;
+    } else if (newLevel == MembershipLevel.SILVER) {
+      lowerLimit = MemberArchive.SILVER_LIMIT;
+      upperLimit = MemberArchive.GOLD_LIMIT - 1;
+    } else {
+      return new int[0]; // no member is upgraded to Basic
+    }
+    int newOrdinal = newLevel.ordinal();
+
+    int[] found = new int[16];
+    int count = 0;
+    for (int i = 0; i < size; i++) {
+      if (levels[i] < newOrdinal
+          && points[i] >= lowerLimit && points[i] <= upperLimit
+          && testDay < qualificationEndEpochDays[i]) {
+        if (count == found.length) {
+          found = Arrays.copyOf(found, count * 2);
+        }
+        found[count++] = memberNos[i];
+      }
+    }
+    return Arrays.copyOf(found, count);
+  }
+
+  private void checkRow(int row) {
+    if (row < 0 || row >= size) {
+      throw new IndexOutOfBoundsException("Row " + row + " out of " + size);
+    }
+  }
+}
@@ -0,0 +1,183 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Reads members written by MemberEncoder back from a stream.
+ * See MemberEncoder for the format.
+ *
+ * <p>The stream is read in large chunks into a buffer that is reused for the whole stream,
+ * and fields are decoded straight from the buffer, so the only objects created for a member
+ * are the member itself, its Personals, its strings and its enrollment date.
+ * The decoder is not thread safe.</p>
+ *
+ * @author mort
+ */
+public class MemberDecoder implements Closeable {
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final MembershipLevel[] LEVELS = MembershipLevel.values();
+
+  private final InputStream in;
+  private byte[] buffer = new byte[BUFFER_SIZE];
+  private int position;
+  private int limit;
+  private long memberCount;
+
+  /**
+   * Starts reading a stream of members from the specified input stream, and checks the
+   * stream header.
+   *
+   * @param in the stream to read the members from.
+   * @throws IOException if the stream cannot be read, or does not hold members in a known
+   *                     version of the format.
+   * @throws IllegalArgumentException if in is null.
+   */
+  public MemberDecoder(InputStream in) throws IOException {
+    if (in == null) {
+      throw new IllegalArgumentException("Input stream cannot be null.");
+    }
+    this.in = in;
+    if (!fill(5)) {
+      throw new IOException("The stream does not hold members.");
+    }
+    int magic = ((buffer[0] & 0xFF) << 24) | ((buffer[1] & 0xFF) << 16)
+        | ((buffer[2] & 0xFF) << 8) | (buffer[3] & 0xFF);
+    if (magic != MemberEncoder.MAGIC) {
+      throw new IOException("The stream does not hold members.");
+    }
+    if (buffer[4] != MemberEncoder.VERSION) {
+      throw new IOException("Unsupported member format version " + buffer[4]);
+    }
+    position = 5;
+  }
+
+  /**
+   * Returns the number of members read so far.
+   *
+   * @return the number of members read.
+   */
+  public long getMemberCount() {
+    return memberCount;
+  }
+
+  /**
+   * Reads the next member, at the membership level it was written with.
+   *
+   * @return the next member, or null at the end of the stream.
+   * @throws EOFException if the stream ends in the middle of a member.
+   * @throws IOException if the stream cannot be read, or holds an invalid member.
+   */
+  public BonusMember read() throws IOException {
+    if (!fill(1)) {
+      return null;
+    }
+    int memberNo = (int) getVarint(MemberEncoder.MAX_VARINT_INT);
+    int points = (int) getVarint(MemberEncoder.MAX_VARINT_INT);
+    require(1);
+    int levelOrdinal = buffer[position++];
+    if (levelOrdinal < 0 || levelOrdinal >= LEVELS.length) {
+      throw new IOException("Invalid membership level " + levelOrdinal
+          + " for member " + memberNo);
+    }
+    long zigzag = getVarint(MemberEncoder.MAX_VARINT_LONG);
+    LocalDate enrolledDate = LocalDate.ofEpochDay((zigzag >>> 1) ^ -(zigzag & 1));
+    String firstname = getString();
+    String surname = getString();
+    String emailAddress = getString();
+    String password = getString();
+    BonusMember member;
+    try {
+      Personals personals = new Personals(firstname, surname, emailAddress, password);
+      switch (LEVELS[levelOrdinal]) {
+        case GOLD:
+          member = new GoldMember(memberNo, personals, enrolledDate, points);
+          break;
+        case SILVER:
+          member = new SilverMember(memberNo, personals, enrolledDate, points);
+          break;
+        default:
+          member = new BasicMember(memberNo, personals, enrolledDate);
+          member.addPoints(points);
+      }
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Invalid member " + memberNo + ": " + e.getMessage(), e);
+    }
+    memberCount++;
+    return member;
+  }
+
+  /**
+   * Closes the underlying stream.
+   *
+   * @throws IOException if the stream could not be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  private long getVarint(int maxBytes) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 7 * maxBytes; shift += 7) {
+      require(1);
+      byte b = buffer[position++];
+      value |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new IOException("Invalid varint after member " + memberCount);
+  }
+
+  private String getString() throws IOException {
+    int length = (int) getVarint(MemberEncoder.MAX_VARINT_INT);
+    if (length < 0) {
+      throw new IOException("Invalid string length after member " + memberCount);
+    }
+    require(length);
+    String string = new String(buffer, position, length, StandardCharsets.UTF_8);
+    position += length;
+    return string;
+  }
+
+  /**
+   * Makes sure the buffer holds count more bytes, or throws EOFException.
+   */
+  private void require(int count) throws IOException {
+    if (!fill(count)) {
+      throw new EOFException("The stream ends in the middle of member " + (memberCount + 1));
+    }
+  }
+
+  /**
+   * Reads from the stream until the buffer holds count more bytes, moving the unread bytes to
+   * the start of the buffer first. Returns false if the stream ends before that.
+   */
+  private boolean fill(int count) throws IOException {
+    if (limit - position >= count) {
+      return true;
+    }
+    if (buffer.length < count) { // only for members with very long strings
+      byte[] grown = new byte[count];
+      System.arraycopy(buffer, position, grown, 0, limit - position);
+      buffer = grown;
+    } else {
+      System.arraycopy(buffer, position, buffer, 0, limit - position);
+    }
+    limit -= position;
+    position = 0;
+    while (limit < count) {
+      int read = in.read(buffer, limit, buffer.length - limit);
+      if (read < 0) {
+        return false;
+      }
+      limit += read;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,192 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes members to a stream in a compact binary format, to be read back by MemberDecoder.
+ *
+ * <p>The stream starts with the magic number "BMEM" and a version byte. Each member follows
+ * as its member number and points as unsigned varints, its membership level as one byte,
+ * its enrollment date as a zigzag varint of the epoch day, and then its first name, surname,
+ * e-mail address and password, each as a varint byte count followed by UTF-8.
+ * Varints hold 7 bits per byte, lowest bits first, with the top bit set on every byte but the
+ * last, so a member takes only about 10 bytes more than its strings.</p>
+ *
+ * <p>Members are encoded straight into a buffer that is reused for the whole stream, and
+ * written to the underlying stream when the buffer is full, so encoding a member allocates
+ * nothing. The encoder is not thread safe.</p>
+ *
+ * @author mort
+ */
+public class MemberEncoder implements Flushable, Closeable {
+  static final int MAGIC = 0x424D454D; // "BMEM"
+  static final byte VERSION = 1;
+  static final int MAX_VARINT_INT = 5;
+  static final int MAX_VARINT_LONG = 10;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final OutputStream out;
+  private byte[] buffer = new byte[BUFFER_SIZE];
+  private int position;
+  private long memberCount;
+
+  /**
+   * Starts a stream of members on the specified output stream, and writes the stream header.
+   *
+   * @param out the stream to write the members to.
+   * @throws IllegalArgumentException if out is null.
+   */
+  public MemberEncoder(OutputStream out) {
+    if (out == null) {
+      throw new IllegalArgumentException("Output stream cannot be null.");
+    }
+    this.out = out;
+    buffer[position++] = (byte) (MAGIC >>> 24);
+    buffer[position++] = (byte) (MAGIC >>> 16);
+    buffer[position++] = (byte) (MAGIC >>> 8);
+    buffer[position++] = (byte) MAGIC;
+    buffer[position++] = VERSION;
+  }
+
+  /**
+   * Returns the number of members written so far.
+   *
+   * @return the number of members written.
+   */
+  public long getMemberCount() {
+    return memberCount;
+  }
+
+  /**
+   * Writes the specified member.
+   *
+   * @param member the member to write.
+   * @throws IOException if the underlying stream could not be written.
+   * @throws IllegalArgumentException if member is null.
+   */
+  public void write(BonusMember member) throws IOException {
+    if (member == null) {
+      throw new IllegalArgumentException("Member cannot be null.");
+    }
+    Personals personals = member.getPersonals();
+    write(member.getMemberNo(), member.getPoints(), member.getLevel(),
+        member.getEnrolledEpochDay(), personals.getFirstname(), personals.getSurname(),
+        personals.getEMailAddress(), personals.getPassword());
+  }
+
+  /**
+   * Writes a member from its fields, e.g. a row of MemberColumns.
+   */
+  void write(int memberNo, int points, MembershipLevel level, long enrolledEpochDay,
+             String firstname, String surname, String emailAddress, String password)
+      throws IOException {
+    // at most 3 UTF-8 bytes for each char, as a surrogate pair takes 4 bytes for 2 chars
+    long maxSize = 2 * MAX_VARINT_INT + 1 + MAX_VARINT_LONG + 4 * MAX_VARINT_INT
+        + 3L * ((long) firstname.length() + surname.length() + emailAddress.length()
+        + password.length());
+    ensureRoom(maxSize);
+    putVarint(memberNo & 0xFFFFFFFFL);
+    putVarint(points & 0xFFFFFFFFL);
+    buffer[position++] = (byte) level.ordinal();
+    putVarint((enrolledEpochDay << 1) ^ (enrolledEpochDay >> 63)); // zigzag
+    putString(firstname);
+    putString(surname);
+    putString(emailAddress);
+    putString(password);
+    memberCount++;
+  }
+
+  /**
+   * Writes the buffered members to the underlying stream, and flushes it.
+   *
+   * @throws IOException if the underlying stream could not be written.
+   */
+  @Override
+  public void flush() throws IOException {
+    drain();
+    out.flush();
+  }
+
+  /**
+   * Writes the buffered members, and closes the underlying stream.
+   *
+   * @throws IOException if the underlying stream could not be written or closed.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      drain();
+    } finally {
+      out.close();
+    }
+  }
+
+  private void drain() throws IOException {
+    if (position > 0) {
+      out.write(buffer, 0, position);
+      position = 0;
+    }
+  }
+
+  private void ensureRoom(long size) throws IOException {
+    if (buffer.length - position < size) {
+      drain();
+      if (buffer.length < size) { // only for members with very long strings
+        if (size > Integer.MAX_VALUE - 8) {
+          throw new IllegalArgumentException("Member is too large to encode.");
+        }
+        buffer = new byte[(int) size];
+      }
+    }
+  }
+
+  private void putVarint(long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buffer[position++] = (byte) value;
+  }
+
+  /**
+   * Writes the string as UTF-8 after its byte count. The byte count is not known until the
+   * string is encoded, so room is left for it and the bytes are moved if it takes less.
+   */
+  private void putString(String string) {
+    int length = string.length();
+    int countPosition = position;
+    int start = countPosition + MAX_VARINT_INT;
+    int end = start;
+    for (int i = 0; i < length; i++) {
+      char c = string.charAt(i);
+      if (c < 0x80) {
+        buffer[end++] = (byte) c;
+      } else if (c < 0x800) {
+        buffer[end++] = (byte) (0xC0 | (c >> 6));
+        buffer[end++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length
+          && Character.isLowSurrogate(string.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, string.charAt(++i));
+        buffer[end++] = (byte) (0xF0 | (codePoint >> 18));
+        buffer[end++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+        buffer[end++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        buffer[end++] = (byte) (0x80 | (codePoint & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        buffer[end++] = '?'; // an unpaired surrogate, as String.getBytes would write it
+      } else {
+        buffer[end++] = (byte) (0xE0 | (c >> 12));
+        buffer[end++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        buffer[end++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+    int byteCount = end - start;
+    putVarint(byteCount);
+    if (position != start) {
+      System.arraycopy(buffer, start, buffer, position, byteCount);
+    }
+    position += byteCount;
+  }
+}
@@ -0,0 +1,103 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing table of long entries, each holding a member number in its low 32 bits and
+ * whatever an index keeps about that member in the rest, e.g. its points. Probing and removal
+ * work as in OpenAddressingMemberStore, but an entry is one long in one array, so a lookup
+ * touches a single cache line and nothing is allocated per member.
+ *
+ * <p>Entries are never negative. The table is not synchronized; the index owning it guards
+ * it.</p>
+ *
+ * @author mort
+ */
+class MemberEntryTable {
+  static final long NO_ENTRY = -1;
+  private static final float MAX_LOAD = 0.6f;
+
+  private long[] slots = newSlots(16);
+  private int size;
+
+  private static long[] newSlots(int length) {
+    long[] slots = new long[length];
+    Arrays.fill(slots, NO_ENTRY);
+    return slots;
+  }
+
+  /**
+   * Returns the entry of a member number.
+   *
+   * @param memberNo the member number.
+   * @return the entry, or NO_ENTRY if the member number has none.
+   */
+  long get(int memberNo) {
+    return slots[findSlot(memberNo)];
+  }
+
+  /**
+   * Puts an entry, replacing the entry of the same member number.
+   *
+   * @param entry the entry, with the member number in its low 32 bits.
+   * @return the entry it replaced, or NO_ENTRY.
+   */
+  long put(long entry) {
+    if (size + 1 > slots.length * MAX_LOAD) {
+      long[] oldSlots = slots;
+      slots = newSlots(oldSlots.length * 2);
+      for (long oldEntry : oldSlots) {
+        if (oldEntry != NO_ENTRY) {
+          slots[findSlot((int) oldEntry)] = oldEntry;
+        }
+      }
+    }
+    int slot = findSlot((int) entry);
+    long oldEntry = slots[slot];
+    if (oldEntry == NO_ENTRY) {
+      size++;
+    }
+    slots[slot] = entry;
+    return oldEntry;
+  }
+
+  /**
+   * Removes the entry of a member number, moving the following entries of its probe run back
+   * into the gap.
+   *
+   * @param memberNo the member number.
+   * @return the entry it had, or NO_ENTRY.
+   */
+  long remove(int memberNo) {
+    int gap = findSlot(memberNo);
+    long entry = slots[gap];
+    if (entry == NO_ENTRY) {
+      return NO_ENTRY;
+    }
+    int mask = slots.length - 1;
+    int slot = (gap + 1) & mask;
+    while (slots[slot] != NO_ENTRY) {
+      int home = OpenAddressingMemberStore.hash((int) slots[slot]) & mask;
+      if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+        slots[gap] = slots[slot];
+        gap = slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    slots[gap] = NO_ENTRY;
+    size--;
+    return entry;
+  }
+
+  /**
+   * Returns the slot of a member number, or the free slot that ends its probe run.
+   */
+  private int findSlot(int memberNo) {
+    int mask = slots.length - 1;
+    int slot = OpenAddressingMemberStore.hash(memberNo) & mask;
+    while (slots[slot] != NO_ENTRY && (int) slots[slot] != memberNo) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+}
@@ -0,0 +1,305 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.EnumSet;
+
+/**
+ * Exports the members of a MemberArchive to a file or channel, as comma separated text or in
+ * the binary format of MemberEncoder, optionally only the members at some membership levels
+ * or enrolled in some period.
+ *
+ * <p>Members are written straight from the member store as it is iterated, through a buffer of
+ * fixed size, so memory use is the same whatever the size of the archive. Members added or
+ * changed while the export runs may or may not be included.</p>
+ *
+ * <p>The CSV form has a header line, then one member per line as
+ * memberNo,level,points,enrolled,firstname,surname,email with the enrollment date as
+ * yyyy-MM-dd. Passwords are left out. Fields holding commas, quotes or line breaks are quoted.
+ * The binary form holds everything, passwords included, and can be read back by
+ * MemberDecoder.</p>
+ *
+ * @author mort
+ */
+public class MemberExporter {
+  /**
+   * The forms an archive can be exported in.
+   */
+  public enum Format {
+    CSV,
+    BINARY
+  }
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final byte[] CSV_HEADER =
+      "memberNo,level,points,enrolled,firstname,surname,email\n".getBytes(StandardCharsets.UTF_8);
+
+  private final MemberArchive archive;
+  private final EnumSet<MembershipLevel> levels = EnumSet.allOf(MembershipLevel.class);
+  private long fromDay = Long.MIN_VALUE;
+  private long toDay = Long.MAX_VALUE;
+
+  /**
+   * Creates an exporter of every member in the specified archive.
+   *
+   * @param archive the archive to export.
+   * @throws IllegalArgumentException if archive is null.
+   */
+  public MemberExporter(MemberArchive archive) {
+    if (archive == null) {
+      throw new IllegalArgumentException("Archive cannot be null.");
+    }
+    this.archive = archive;
+  }
+
+  /**
+   * Only exports members at the specified membership levels.
+   *
+   * @param levels the membership levels to export.
+   * @throws IllegalArgumentException if no level is given, or a level is null.
+   */
+  public void setLevels(MembershipLevel... levels) {
+    if (levels == null || levels.length == 0) {
+      throw new IllegalArgumentException("At least one membership level must be exported.");
+    }
+    EnumSet<MembershipLevel> chosen = EnumSet.noneOf(MembershipLevel.class);
+    for (MembershipLevel level : levels) {
+      if (level == null) {
+        throw new IllegalArgumentException("Membership level cannot be null.");
+      }
+      chosen.add(level);
+    }
+    this.levels.clear();
+    this.levels.addAll(chosen);
+  }
+
+  /**
+   * Only exports members enrolled between two dates, both inclusive.
+   *
+   * @param from the first enrollment date to export.
+   * @param to   the last enrollment date to export.
+   * @throws IllegalArgumentException if either date is null, or from is after to.
+   */
+  public void setEnrolledBetween(LocalDate from, LocalDate to) {
+    if (from == null || to == null || from.isAfter(to)) {
+      throw new IllegalArgumentException("Invalid enrollment period: " + from + " to " + to);
+    }
+    this.fromDay = from.toEpochDay();
+    this.toDay = to.toEpochDay();
+  }
+
+  /**
+   * Exports the chosen members to the specified file, replacing it if it exists.
+   *
+   * @param file   the file to write.
+   * @param format the form to write the members in.
+   * @return the outcome of the export.
+   * @throws IOException if the file cannot be written.
+   */
+  public ExportResult export(Path file, Format format) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      return export(channel, format);
+    }
+  }
+
+  /**
+   * Exports the chosen members to the specified channel, which is left open.
+   *
+   * @param target the channel to write to.
+   * @param format the form to write the members in.
+   * @return the outcome of the export.
+   * @throws IOException if the channel cannot be written.
+   */
+  public ExportResult export(WritableByteChannel target, Format format) throws IOException {
+    if (target == null || format == null) {
+      throw new IllegalArgumentException("Channel and format cannot be null.");
+    }
+    long start = System.nanoTime();
+    CountingOutputStream out = new CountingOutputStream(Channels.newOutputStream(target));
+    long count = 0;
+    if (format == Format.BINARY) {
+      MemberEncoder encoder = new MemberEncoder(out);
+      for (BonusMember member : archive) {
+        if (isChosen(member)) {
+          encoder.write(member);
+          count++;
+        }
+      }
+      encoder.flush();
+    } else {
+      CsvWriter writer = new CsvWriter(out);
+      for (BonusMember member : archive) {
+        if (isChosen(member)) {
+          writer.write(member);
+          count++;
+        }
+      }
+      writer.flush();
+    }
+    return new ExportResult(count, out.count, System.nanoTime() - start);
+  }
+
+  private boolean isChosen(BonusMember member) {
+    long enrolledDay = member.getEnrolledEpochDay();
+    return enrolledDay >= fromDay && enrolledDay <= toDay && levels.contains(member.getLevel());
+  }
+
+  /**
+   * Passes writes on to a stream, counting the bytes.
+   */
+  private static class CountingOutputStream extends OutputStream {
+    private final OutputStream out;
+    private long count;
+
+    private CountingOutputStream(OutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+  }
+
+  /**
+   * Writes members as comma separated lines into a reused buffer. Room for a whole line is
+   * made before it is written, so the bytes are put without checking for the end of the buffer.
+   */
+  private static class CsvWriter {
+    private static final int MAX_NUMBERS_SIZE = 64; // two ints, a level name, a date and commas
+
+    private final OutputStream out;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+
+    private CsvWriter(OutputStream out) {
+      this.out = out;
+      System.arraycopy(CSV_HEADER, 0, buffer, 0, CSV_HEADER.length);
+      position = CSV_HEADER.length;
+    }
+
+    private void write(BonusMember member) throws IOException {
+      Personals personals = member.getPersonals();
+      String firstname = personals.getFirstname();
+      String surname = personals.getSurname();
+      String emailAddress = personals.getEMailAddress();
+      // quotes and quote doubling at most double a string, and UTF-8 takes up to 3 bytes a char
+      ensureRoom(MAX_NUMBERS_SIZE
+          + 6L * (2 + firstname.length() + surname.length() + emailAddress.length()));
+      putInt(member.getMemberNo());
+      buffer[position++] = ',';
+      putString(member.getLevel().getName());
+      buffer[position++] = ',';
+      putInt(member.getPoints());
+      buffer[position++] = ',';
+      LocalDate enrolled = member.getEnrolledDate();
+      putDigits(enrolled.getYear(), 4);
+      buffer[position++] = '-';
+      putDigits(enrolled.getMonthValue(), 2);
+      buffer[position++] = '-';
+      putDigits(enrolled.getDayOfMonth(), 2);
+      buffer[position++] = ',';
+      putString(firstname);
+      buffer[position++] = ',';
+      putString(surname);
+      buffer[position++] = ',';
+      putString(emailAddress);
+      buffer[position++] = '\n';
+    }
+
+    private void flush() throws IOException {
+      drain();
+      out.flush();
+    }
+
+    private void drain() throws IOException {
+      out.write(buffer, 0, position);
+      position = 0;
+    }
+
+    private void ensureRoom(long size) throws IOException {
+      if (buffer.length - position < size) {
+        drain();
+        if (buffer.length < size) { // only for members with very long strings
+          buffer = new byte[(int) Math.min(size, Integer.MAX_VALUE - 8)];
+        }
+      }
+    }
+
+    private void putInt(int value) {
+      if (value < 0) {
+        buffer[position++] = '-';
+        value = -value; // member numbers and points are never Integer.MIN_VALUE
+      }
+      int digits = 1;
+      for (int rest = value / 10; rest > 0; rest /= 10) {
+        digits++;
+      }
+      putDigits(value, digits);
+    }
+
+    private void putDigits(int value, int digits) {
+      for (int i = position + digits - 1; i >= position; i--) {
+        buffer[i] = (byte) ('0' + value % 10);
+        value /= 10;
+      }
+      position += digits;
+    }
+
+    /**
+     * Writes the string as UTF-8, quoted if it holds a comma, quote or line break.
+     */
+    private void putString(String string) {
+      boolean quoted = false;
+      boolean ascii = true;
+      for (int i = 0; i < string.length(); i++) {
+        char c = string.charAt(i);
+        if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+          quoted = true;
+        } else if (c >= 0x80) {
+          ascii = false;
+        }
+      }
+      if (quoted) {
+        buffer[position++] = '"';
+      }
+      if (ascii) {
+        for (int i = 0; i < string.length(); i++) {
+          char c = string.charAt(i);
+          if (c == '"') {
+            buffer[position++] = '"';
+          }
+          buffer[position++] = (byte) c;
+        }
+      } else {
+        byte[] bytes = (quoted ? string.replace("\"", "\"\"") : string)
+            .getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+      }
+      if (quoted) {
+        buffer[position++] = '"';
+      }
+    }
+  }
+}
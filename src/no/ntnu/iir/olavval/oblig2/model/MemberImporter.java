@@ -0,0 +1,412 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Imports members and point transactions into a MemberArchive from comma separated files,
+ * e.g. when a partner programme is onboarded.
+ *
+ * <p>A member file holds one member per line as firstname,surname,email,password,enrolled,
+ * with the enrollment date as yyyy-MM-dd. Imported members are Basic members, and get new
+ * member numbers from the archive. A point file holds one credit per line as
+ * memberNo,points, and the points are credited as by MemberArchive.registerPoints(int[], int[]).
+ * The first line of each file is a header and is skipped, as are empty lines.
+ * Fields are not quoted, so they cannot hold commas.</p>
+ *
+ * <p>Files are read through a FileChannel in 64 KiB chunks, and rows are fed to the archive in
+ * batches, so memory use does not depend on the size of the file. Numbers and dates are parsed
+ * straight from the bytes read; the only strings created are the personal details that the
+ * new members keep. Rows that cannot be imported, e.g. with blank personal details,
+ * an invalid date or an unknown member number, are skipped and reported in the result.</p>
+ *
+ * @author mort
+ */
+public class MemberImporter {
+  public static final int DEFAULT_BATCH_SIZE = 4096;
+  private static final int CHUNK_SIZE = 64 * 1024;
+  private static final int MEMBER_FIELDS = 5;
+  private static final int POINT_FIELDS = 2;
+
+  private final MemberArchive archive;
+  private final int batchSize;
+
+  /**
+   * Creates an importer into the specified archive, feeding it DEFAULT_BATCH_SIZE rows at a time.
+   *
+   * @param archive the archive to import into.
+   * @throws IllegalArgumentException if archive is null.
+   */
+  public MemberImporter(MemberArchive archive) {
+    this(archive, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Creates an importer into the specified archive.
+   *
+   * @param archive   the archive to import into.
+   * @param batchSize the number of rows fed to the archive at a time.
+   * @throws IllegalArgumentException if archive is null, or batchSize is not positive.
+   */
+  public MemberImporter(MemberArchive archive, int batchSize) {
+    if (archive == null || batchSize <= 0) {
+      throw new IllegalArgumentException(
+          "Archive cannot be null, and batch size must be positive: " + batchSize);
+    }
+    this.archive = archive;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Imports the members in the specified file.
+   *
+   * @param file the member file.
+   * @return the outcome of the import.
+   * @throws IOException if the file cannot be read.
+   */
+  public ImportResult importMembers(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return importMembers(channel);
+    }
+  }
+
+  /**
+   * Imports the members read from the specified channel, which is left open.
+   *
+   * @param source the channel to read the member file from.
+   * @return the outcome of the import.
+   * @throws IOException if the channel cannot be read.
+   */
+  public ImportResult importMembers(ReadableByteChannel source) throws IOException {
+    long start = System.nanoTime();
+    CsvReader reader = new CsvReader(source);
+    Tally tally = new Tally();
+    Personals[] persons = new Personals[batchSize];
+    LocalDate[] dates = new LocalDate[batchSize];
+    long[] lines = new long[batchSize];
+    int count = 0;
+    reader.nextLine(); // header
+    while (reader.nextLine()) {
+      if (reader.isEmpty()) {
+        continue;
+      }
+      try {
+        reader.requireFields(MEMBER_FIELDS);
+        dates[count] = reader.getDate(4);
+      } catch (IllegalArgumentException | DateTimeException e) {
+        tally.reject(reader.getLineNumber(), e.getMessage());
+        continue;
+      }
+      try {
+        persons[count] = new Personals(reader.getString(0), reader.getString(1),
+            reader.getString(2), reader.getString(3));
+      } catch (IllegalArgumentException e) {
+        tally.reject(reader.getLineNumber(), "Invalid personal details.");
+        continue;
+      }
+      lines[count++] = reader.getLineNumber();
+      if (count == batchSize) {
+        addMembers(persons, dates, lines, count, tally);
+        count = 0;
+      }
+    }
+    if (count > 0) {
+      addMembers(Arrays.copyOf(persons, count), Arrays.copyOf(dates, count), lines, count, tally);
+    }
+    return tally.toResult(reader.getBytesRead(), System.nanoTime() - start);
+  }
+
+  /**
+   * Imports the point transactions in the specified file.
+   *
+   * @param file the point file.
+   * @return the outcome of the import.
+   * @throws IOException if the file cannot be read.
+   */
+  public ImportResult importPoints(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return importPoints(channel);
+    }
+  }
+
+  /**
+   * Imports the point transactions read from the specified channel, which is left open.
+   *
+   * @param source the channel to read the point file from.
+   * @return the outcome of the import.
+   * @throws IOException if the channel cannot be read.
+   */
+  public ImportResult importPoints(ReadableByteChannel source) throws IOException {
+    long start = System.nanoTime();
+    CsvReader reader = new CsvReader(source);
+    Tally tally = new Tally();
+    int[] memberNos = new int[batchSize];
+    int[] points = new int[batchSize];
+    long[] lines = new long[batchSize];
+    int count = 0;
+    reader.nextLine(); // header
+    while (reader.nextLine()) {
+      if (reader.isEmpty()) {
+        continue;
+      }
+      try {
+        reader.requireFields(POINT_FIELDS);
+        memberNos[count] = reader.getInt(0, "member number");
+        points[count] = reader.getInt(1, "points");
+        if (points[count] < 0) {
+          throw new IllegalArgumentException("Points cannot be negative.");
+        }
+      } catch (IllegalArgumentException e) {
+        tally.reject(reader.getLineNumber(), e.getMessage());
+        continue;
+      }
+      lines[count++] = reader.getLineNumber();
+      if (count == batchSize) {
+        registerPoints(memberNos, points, lines, count, tally);
+        count = 0;
+      }
+    }
+    if (count > 0) {
+      registerPoints(Arrays.copyOf(memberNos, count), Arrays.copyOf(points, count),
+          lines, count, tally);
+    }
+    return tally.toResult(reader.getBytesRead(), System.nanoTime() - start);
+  }
+
+  private void addMembers(Personals[] persons, LocalDate[] dates, long[] lines, int count,
+                          Tally tally) {
+    int[] memberNos = archive.addMembers(persons, dates);
+    for (int i = 0; i < count; i++) {
+      if (memberNos[i] < 0) {
+        tally.reject(lines[i], "E-mail address in use, or no member number available.");
+      } else {
+        tally.imported++;
+      }
+    }
+  }
+
+  private void registerPoints(int[] memberNos, int[] points, long[] lines, int count,
+                              Tally tally) {
+    int[] unknown = archive.registerPoints(memberNos, points).getUnknownMemberNos(); // ascending
+    for (int i = 0; i < count; i++) {
+      if (Arrays.binarySearch(unknown, memberNos[i]) >= 0) {
+        tally.reject(lines[i], "Unknown member number " + memberNos[i] + ".");
+      } else {
+        tally.imported++;
+      }
+    }
+  }
+
+  /**
+   * Counts the imported and rejected rows of one import.
+   */
+  private static class Tally {
+    private final List<ImportResult.Reject> rejects = new ArrayList<>();
+    private long imported;
+    private long rejected;
+
+    private void reject(long lineNumber, String reason) {
+      rejected++;
+      if (rejects.size() < ImportResult.MAX_REPORTED_REJECTS) {
+        rejects.add(new ImportResult.Reject(lineNumber, reason));
+      }
+    }
+
+    private ImportResult toResult(long bytesRead, long elapsedNanos) {
+      // unknown member numbers are only found when a batch is fed to the archive
+      rejects.sort(Comparator.comparingLong(ImportResult.Reject::getLineNumber));
+      return new ImportResult(imported, rejected, bytesRead, elapsedNanos, rejects);
+    }
+  }
+
+  /**
+   * Reads comma separated lines from a channel in chunks, and splits each line into fields
+   * without copying it.
+   */
+  private static class CsvReader {
+    private final ReadableByteChannel source;
+    private byte[] bytes = new byte[CHUNK_SIZE];
+    private ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    private int position; // start of the next line
+    private boolean endOfInput;
+    private long bytesRead;
+    private long lineNumber;
+    private int[] fieldStarts = new int[8];
+    private int[] fieldEnds = new int[8];
+    private int fieldCount;
+
+    private CsvReader(ReadableByteChannel source) {
+      this.source = source;
+      buffer.limit(0);
+    }
+
+    /**
+     * Moves on to the next line, returning false at the end of the input.
+     */
+    private boolean nextLine() throws IOException {
+      int end = indexOfNewline(position);
+      while (end < 0 && !endOfInput) {
+        int scanned = buffer.limit() - position;
+        readMore();
+        end = indexOfNewline(position + scanned);
+      }
+      if (end < 0) {
+        if (position == buffer.limit()) {
+          return false;
+        }
+        end = buffer.limit(); // a last line without a newline
+      }
+      lineNumber++;
+      int next = Math.min(end + 1, buffer.limit());
+      if (end > position && bytes[end - 1] == '\r') {
+        end--;
+      }
+      split(position, end);
+      position = next;
+      return true;
+    }
+
+    private int indexOfNewline(int from) {
+      for (int i = from; i < buffer.limit(); i++) {
+        if (bytes[i] == '\n') {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    /**
+     * Moves the unread part of the buffer to its start, growing the buffer if a line fills it,
+     * and reads the next chunk after it.
+     */
+    private void readMore() throws IOException {
+      int unread = buffer.limit() - position;
+      if (position == 0 && unread == bytes.length) {
+        bytes = Arrays.copyOf(bytes, bytes.length * 2); // a line longer than the buffer
+      } else {
+        System.arraycopy(bytes, position, bytes, 0, unread);
+      }
+      buffer = ByteBuffer.wrap(bytes);
+      buffer.position(unread);
+      position = 0;
+      int read = source.read(buffer);
+      while (read == 0) {
+        read = source.read(buffer);
+      }
+      if (read < 0) {
+        endOfInput = true;
+      } else {
+        bytesRead += read;
+      }
+      buffer.limit(buffer.position());
+    }
+
+    private void split(int start, int end) {
+      fieldCount = 0;
+      int fieldStart = start;
+      for (int i = start; i <= end; i++) {
+        if (i == end || bytes[i] == ',') {
+          if (fieldCount == fieldStarts.length) {
+            fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+          }
+          fieldStarts[fieldCount] = fieldStart;
+          fieldEnds[fieldCount++] = i;
+          fieldStart = i + 1;
+        }
+      }
+    }
+
+    private boolean isEmpty() {
+      return fieldCount == 1 && fieldStarts[0] == fieldEnds[0];
+    }
+
+    private long getLineNumber() {
+      return lineNumber;
+    }
+
+    private long getBytesRead() {
+      return bytesRead;
+    }
+
+    private void requireFields(int count) {
+      if (fieldCount != count) {
+        throw new IllegalArgumentException(
+            "Expected " + count + " fields, found " + fieldCount + ".");
+      }
+    }
+
+    private String getString(int field) {
+      return new String(bytes, fieldStarts[field], fieldEnds[field] - fieldStarts[field],
+          StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a field holding an int, with an optional minus sign and surrounding spaces.
+     */
+    private int getInt(int field, String name) {
+      int start = fieldStarts[field];
+      int end = fieldEnds[field];
+      while (start < end && bytes[start] == ' ') {
+        start++;
+      }
+      while (end > start && bytes[end - 1] == ' ') {
+        end--;
+      }
+      boolean negative = start < end && bytes[start] == '-';
+      if (negative) {
+        start++;
+      }
+      if (start == end || end - start > 10) {
+        throw new IllegalArgumentException("Invalid " + name + ".");
+      }
+      long value = 0;
+      for (int i = start; i < end; i++) {
+        int digit = bytes[i] - '0';
+        if (digit < 0 || digit > 9) {
+          throw new IllegalArgumentException("Invalid " + name + ".");
+        }
+        value = value * 10 + digit;
+      }
+      value = negative ? -value : value;
+      if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Invalid " + name + ".");
+      }
+      return (int) value;
+    }
+
+    /**
+     * Parses a field holding a date as yyyy-MM-dd.
+     */
+    private LocalDate getDate(int field) {
+      int start = fieldStarts[field];
+      if (fieldEnds[field] - start != 10 || bytes[start + 4] != '-' || bytes[start + 7] != '-') {
+        throw new IllegalArgumentException("Invalid enrollment date, expected yyyy-MM-dd.");
+      }
+      return LocalDate.of(digits(start, 4), digits(start + 5, 2), digits(start + 8, 2));
+    }
+
+    private int digits(int start, int count) {
+      int value = 0;
+      for (int i = start; i < start + count; i++) {
+        int digit = bytes[i] - '0';
+        if (digit < 0 || digit > 9) {
+          throw new IllegalArgumentException("Invalid enrollment date, expected yyyy-MM-dd.");
+        }
+        value = value * 10 + digit;
+      }
+      return value;
+    }
+  }
+}
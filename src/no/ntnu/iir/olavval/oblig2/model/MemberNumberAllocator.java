@@ -0,0 +1,199 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Hands out unique membership numbers from a fixed number space.
+ * Taken numbers are tracked in a bitmap, one bit per number, so finding a free number skips
+ * 64 taken numbers per step instead of guessing at random until a free one turns up.
+ * Allocation and release are lock free, and safe for concurrent callers.
+ *
+ * <p>By default numbers are handed out in sequence. In scrambled mode the sequence is passed
+ * through a fixed permutation of the number space, so that numbers look random but are still
+ * allocated in constant time and never collide.</p>
+ *
+ * @author mort
+ */
+public class MemberNumberAllocator {
+  public static final int DEFAULT_NUMBER_SPACE = 1000000;
+
+  private final int numberSpace;
+  private final AtomicLongArray taken; // bit i set means slot i is taken
+  private final AtomicInteger takenCount;
+  private final AtomicInteger cursor; // word to start searching from
+  private final boolean scrambled;
+  private final long multiplier;
+  private final long inverse;
+  private final long offset;
+
+  /**
+   * Creates an allocator handing out sequential numbers from 0 up to, but not including, 1000000.
+   */
+  public MemberNumberAllocator() {
+    this(DEFAULT_NUMBER_SPACE, false);
+  }
+
+  /**
+   * Creates an allocator handing out numbers from 0 up to, but not including, numberSpace.
+   *
+   * @param numberSpace the number of member numbers available.
+   * @param scrambled   true to hand out the numbers in a random-looking order.
+   * @throws IllegalArgumentException if numberSpace is not positive.
+   */
+  public MemberNumberAllocator(int numberSpace, boolean scrambled) {
+    if (numberSpace <= 0) {
+      throw new IllegalArgumentException("Number space must be positive: " + numberSpace);
+    }
+    this.numberSpace = numberSpace;
+    this.taken = new AtomicLongArray((int) ((numberSpace + 63L) >>> 6));
+    this.takenCount = new AtomicInteger();
+    this.cursor = new AtomicInteger();
+    this.scrambled = scrambled;
+
+    // bits past the end of the number space are marked as taken, so they are never handed out.
+    int tailBits = numberSpace & 63;
+    if (tailBits != 0) {
+      taken.set(taken.length() - 1, -1L << tailBits);
+    }
+
+    // number = (slot * multiplier + offset) mod numberSpace is a permutation of the number space
+    // as long as multiplier and numberSpace have no common factor.
+    long candidate = Math.max(1L, (long) (numberSpace * 0.6180339887)) | 1L;
+    while (gcd(candidate, numberSpace) != 1) {
+      candidate += 2;
+    }
+    this.multiplier = candidate % numberSpace;
+    this.inverse = modInverse(multiplier, numberSpace);
+    this.offset = numberSpace / 3;
+  }
+
+  /**
+   * Returns the number of member numbers this allocator can hand out.
+   *
+   * @return the size of the number space.
+   */
+  public int getNumberSpace() {
+    return numberSpace;
+  }
+
+  /**
+   * Returns the number of member numbers currently taken.
+   *
+   * @return the number of member numbers currently taken.
+   */
+  public int getTakenCount() {
+    return takenCount.get();
+  }
+
+  /**
+   * Takes a free member number.
+   *
+   * @return a free member number, or -1 if every number is taken.
+   */
+  public int allocate() {
+    int words = taken.length();
+    while (takenCount.get() < numberSpace) {
+      int start = cursor.get();
+      for (int i = 0; i < words; i++) {
+        int word = (start + i) % words;
+        long bits = taken.get(word);
+        while (bits != -1L) {
+          long lowestFree = ~bits & (bits + 1);
+          if (taken.compareAndSet(word, bits, bits | lowestFree)) {
+            takenCount.incrementAndGet();
+            cursor.set(word);
+            return toNumber((word << 6) + Long.numberOfTrailingZeros(lowestFree));
+          }
+          bits = taken.get(word); // lost a race for this word, try again with fresh bits
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Marks a specific member number as taken, e.g. for a member that was created elsewhere.
+   *
+   * @param memberNo the member number to mark as taken.
+   * @return true if the number was free, false if it was already taken or outside the space.
+   */
+  public boolean markTaken(int memberNo) {
+    if (memberNo < 0 || memberNo >= numberSpace) {
+      return false;
+    }
+    int slot = toSlot(memberNo);
+    long mask = 1L << slot;
+    int word = slot >>> 6;
+    long bits;
+    do {
+      bits = taken.get(word);
+      if ((bits & mask) != 0) {
+        return false;
+      }
+    } while (!taken.compareAndSet(word, bits, bits | mask));
+    takenCount.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Returns a member number to the pool of free numbers.
+   *
+   * @param memberNo the member number to release.
+   * @return true if the number was taken and is now free.
+   */
+  public boolean release(int memberNo) {
+    if (memberNo < 0 || memberNo >= numberSpace) {
+      return false;
+    }
+    int slot = toSlot(memberNo);
+    long mask = 1L << slot;
+    int word = slot >>> 6;
+    long bits;
+    do {
+      bits = taken.get(word);
+      if ((bits & mask) == 0) {
+        return false;
+      }
+    } while (!taken.compareAndSet(word, bits, bits & ~mask));
+    takenCount.decrementAndGet();
+    return true;
+  }
+
+  private int toNumber(int slot) {
+    return scrambled ? (int) ((slot * multiplier + offset) % numberSpace) : slot;
+  }
+
+  private int toSlot(int memberNo) {
+    return scrambled
+        ? (int) ((((memberNo - offset) % numberSpace + numberSpace) * inverse) % numberSpace)
+        : memberNo;
+  }
+
+  private static long gcd(long a, long b) {
+    return b == 0 ? a : gcd(b, a % b);
+  }
+
+  /**
+   * Returns x such that (value * x) mod modulus is 1, using the extended Euclidean algorithm.
+   */
+  private static long modInverse(long value, long modulus) {
+    if (modulus == 1) {
+      return 0;
+    }
+    long oldR = value;
+    long r = modulus;
+    long oldS = 1;
+    long s = 0;
+    while (r != 0) {
+      long quotient = oldR / r;
+      long nextR = oldR - quotient * r;
+      oldR = r;
+      r = nextR;
+      long nextS = oldS - quotient * s;
+      oldS = s;
+      s = nextS;
+    }
+    return ((oldS % modulus) + modulus) % modulus;
+  }
+}
@@ -0,0 +1,164 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Snapshot files of every member in an archive, kept next to the segments of its
+ * WriteAheadLog. A snapshot records the log segment that was started when it was taken,
+ * so an archive is restored by reading the latest snapshot and replaying the log from that
+ * segment on.
+ *
+ * <p>A snapshot is written to a temporary file, forced to disk and then renamed, so a crash
+ * while it is written leaves the previous snapshot in place. The file ends with a CRC32 of
+ * its contents.</p>
+ *
+ * @author mort
+ */
+final class MemberSnapshot {
+  private static final int MAGIC = 0x424D534E; // "BMSN"
+  private static final int VERSION = 1;
+  private static final String PREFIX = "snapshot-";
+  private static final String SUFFIX = ".snap";
+  private static final MembershipLevel[] LEVELS = MembershipLevel.values();
+
+  private MemberSnapshot() {
+  }
+
+  /**
+   * Writes a snapshot of the members in the columns to the directory.
+   *
+   * @param directory the directory holding the log segments.
+   * @param segment   the first log segment not covered by the snapshot.
+   * @param columns   the members to write.
+   * @return the snapshot file.
+   * @throws IOException if the snapshot could not be written.
+   */
+  static Path write(Path directory, long segment, MemberColumns columns) throws IOException {
+    Path file = snapshotFile(directory, segment);
+    Path temporary = directory.resolve(file.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(
+          Channels.newOutputStream(channel), 64 * 1024), new CRC32());
+      DataOutputStream out = new DataOutputStream(checked);
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(segment);
+      out.writeInt(columns.size());
+      for (int row = 0; row < columns.size(); row++) {
+        Personals personals = columns.getPersonals(row);
+        out.writeInt(columns.getMemberNo(row));
+        out.writeInt(columns.getPoints(row));
+        out.writeByte(columns.getLevel(row).ordinal());
+        out.writeLong(columns.getEnrolledEpochDay(row));
+        out.writeUTF(personals.getFirstname());
+        out.writeUTF(personals.getSurname());
+        out.writeUTF(personals.getEMailAddress());
+        out.writeUTF(personals.getPassword());
+      }
+      out.writeInt((int) checked.getChecksum().getValue());
+      out.flush();
+      channel.force(true);
+    }
+    return Files.move(temporary, file,
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Reads the latest snapshot in the directory into the archive, and returns the first log
+   * segment it does not cover. Returns 0 if the directory holds no snapshot.
+   *
+   * @param directory the directory holding the log segments.
+   * @param archive   the archive to add the members to.
+   * @return the first log segment to replay after the snapshot.
+   * @throws IOException if the snapshot could not be read, or is damaged.
+   */
+  static long readLatest(Path directory, MemberArchive archive) throws IOException {
+    List<Long> segments = listSnapshots(directory);
+    if (segments.isEmpty()) {
+      return 0;
+    }
+    Path file = snapshotFile(directory, segments.get(segments.size() - 1));
+    try (InputStream stream = Files.newInputStream(file)) {
+      CheckedInputStream checked = new CheckedInputStream(
+          new BufferedInputStream(stream, 64 * 1024), new CRC32());
+      DataInputStream in = new DataInputStream(checked);
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException(file + " is not a member snapshot of a supported version.");
+      }
+      long segment = in.readLong();
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        int memberNo = in.readInt();
+        int points = in.readInt();
+        MembershipLevel level = LEVELS[in.readUnsignedByte()];
+        LocalDate enrolledDate = LocalDate.ofEpochDay(in.readLong());
+        Personals personals = new Personals(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF());
+        archive.replayMember(new BonusMember(memberNo, personals, enrolledDate, points, level) {});
+      }
+      int expected = (int) checked.getChecksum().getValue();
+      if (in.readInt() != expected) {
+        throw new IOException(file + " is damaged.");
+      }
+      return segment;
+    }
+  }
+
+  /**
+   * Deletes the snapshots older than the one covering up to the specified segment.
+   *
+   * @param directory the directory holding the log segments.
+   * @param segment   the segment of the snapshot to keep.
+   * @return the number of snapshots deleted.
+   * @throws IOException if a snapshot could not be deleted.
+   */
+  static int deleteBefore(Path directory, long segment) throws IOException {
+    int deleted = 0;
+    for (long older : listSnapshots(directory)) {
+      if (older < segment && Files.deleteIfExists(snapshotFile(directory, older))) {
+        deleted++;
+      }
+    }
+    return deleted;
+  }
+
+  private static Path snapshotFile(Path directory, long segment) {
+    return directory.resolve(String.format("%s%020d%s", PREFIX, segment, SUFFIX));
+  }
+
+  private static List<Long> listSnapshots(Path directory) throws IOException {
+    List<Long> segments = new ArrayList<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        try {
+          segments.add(Long.parseLong(name.substring(PREFIX.length(),
+              name.length() - SUFFIX.length())));
+        } catch (NumberFormatException e) {
+          // not a snapshot written by this class, so left alone
+        }
+      }
+    }
+    Collections.sort(segments);
+    return segments;
+  }
+}
@@ -0,0 +1,75 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The storage behind a MemberArchive. A member store holds members keyed on their member number,
+ * and lets the archive swap out how the members are kept in memory without changing the
+ * archive API.
+ *
+ * @author mort
+ */
+public interface MemberStore extends Iterable<BonusMember> {
+
+  /**
+   * Returns the member with the specified member number.
+   *
+   * @param memberNo the member number to look up.
+   * @return the member with that number, or null if no such member is stored.
+   */
+  BonusMember get(int memberNo);
+
+  /**
+   * Checks if a member with the specified member number is stored.
+   *
+   * @param memberNo the member number to look for.
+   * @return true if a member with that number is stored.
+   */
+  boolean contains(int memberNo);
+
+  /**
+   * Adds a member to the store, unless a member with the same member number is already stored.
+   *
+   * @param member the member to add.
+   * @return true if the member was added, false if the member number was already taken.
+   */
+  boolean putIfAbsent(BonusMember member);
+
+  /**
+   * Replaces a stored member with another member object holding the same member number.
+   * Nothing is replaced unless oldMember is the object currently stored under that number.
+   *
+   * @param oldMember         the member object currently stored.
+   * @param replacementMember the member object to store in its place.
+   * @return true if the member was replaced.
+   */
+  boolean replace(BonusMember oldMember, BonusMember replacementMember);
+
+  /**
+   * Removes the member with the specified member number.
+   *
+   * @param memberNo the member number of the member to remove.
+   * @return the removed member, or null if no such member was stored.
+   */
+  BonusMember remove(int memberNo);
+
+  /**
+   * Returns the number of members in the store.
+   *
+   * @return the number of members in the store.
+   */
+  int size();
+
+  /**
+   * Returns a Stream of the members in the store.
+   *
+   * @return Stream of the members in the store.
+   */
+  default Stream<BonusMember> stream() {
+    return StreamSupport.stream(
+        Spliterators.spliterator(iterator(), size(), Spliterator.NONNULL), false);
+  }
+}
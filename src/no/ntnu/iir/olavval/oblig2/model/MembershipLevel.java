@@ -0,0 +1,51 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+/**
+ * The membership levels of the Bonus program, from lowest to highest.
+ * Each level holds the name shown for it and the multiplier applied to points registered on
+ * members at that level.
+ *
+ * @author mort
+ */
+public enum MembershipLevel {
+  BASIC("Basic", 1.0),
+  SILVER("Silver", SilverMember.FACTOR_SILVER),
+  GOLD("Gold", GoldMember.FACTOR_GOLD);
+
+  private final String name;
+  private final double factor;
+
+  MembershipLevel(String name, double factor) {
+    this.name = name;
+    this.factor = factor;
+  }
+
+  /**
+   * Returns the name of this membership level, e.g. "Silver".
+   *
+   * @return the name of this membership level.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the bonus multiplier for points registered at this membership level.
+   *
+   * @return the bonus multiplier for this membership level.
+   */
+  public double getFactor() {
+    return factor;
+  }
+
+  /**
+   * Returns the number of points a member at this level earns for the specified points,
+   * rounded down to whole points.
+   *
+   * @param points the number of points before the bonus multiplier.
+   * @return the number of points after the bonus multiplier.
+   */
+  public int applyFactor(int points) {
+    return (int) (factor * points);
+  }
+}
@@ -0,0 +1,159 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Maps the first names and surnames of the members of a MemberArchive to their member numbers,
+ * in name order, so members are found by the start of a name, or by a name with a few typing
+ * errors, without scanning the archive.
+ *
+ * <p>Names are kept trimmed and in lower case in a SortedMemberIndex. A prefix search reads a
+ * range of it. A fuzzy search walks the sorted names as if they were a trie: each name reuses
+ * the rows of the edit distance table it shares with the name before it, and once a prefix is
+ * too far from the searched name, every name starting with that prefix is skipped in one step.
+ * The work of a fuzzy search therefore grows with the number of distinct names near the
+ * searched one, not with the number of members. The index is safe for concurrent callers.</p>
+ *
+ * @author mort
+ */
+class NameIndex {
+  private final SortedMemberIndex<String> names = new SortedMemberIndex<>();
+
+  /**
+   * Returns the form a name is kept in by the index.
+   *
+   * @param name the name.
+   * @return the name, trimmed and in lower case.
+   */
+  static String normalize(String name) {
+    return name.trim().toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Adds the first name and surname of a member.
+   *
+   * @param member the member to add.
+   */
+  void add(BonusMember member) {
+    String firstname = normalize(member.getFirstName());
+    String surname = normalize(member.getSurname());
+    names.add(firstname, member.getMemberNo());
+    if (!surname.equals(firstname)) {
+      names.add(surname, member.getMemberNo());
+    }
+  }
+
+  /**
+   * Removes the first name and surname of a member.
+   *
+   * @param member the member to remove.
+   */
+  void remove(BonusMember member) {
+    String firstname = normalize(member.getFirstName());
+    String surname = normalize(member.getSurname());
+    names.remove(firstname, member.getMemberNo());
+    if (!surname.equals(firstname)) {
+      names.remove(surname, member.getMemberNo());
+    }
+  }
+
+  /**
+   * Passes the member numbers of each name starting with the prefix to the visitor, in name
+   * order, and by member number within a name, until the visitor stops the search.
+   *
+   * @param prefix  the start of the names, in lower case.
+   * @param visitor the visitor to pass the member numbers to.
+   */
+  void forEachWithPrefix(String prefix, SortedMemberIndex.Visitor<String> visitor) {
+    names.forEachBetween(prefix, prefix + Character.MAX_VALUE, visitor);
+  }
+
+  /**
+   * Passes the member numbers of each of the specified names to the visitor, in the order of
+   * the names, and by member number within a name, until the visitor stops the search.
+   *
+   * @param matched the names, as kept by the index.
+   * @param visitor the visitor to pass the member numbers to.
+   */
+  void forEachIn(List<String> matched, SortedMemberIndex.Visitor<String> visitor) {
+    for (String name : matched) {
+      if (!names.forEach(name, visitor)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Returns the names in the index that are at most maxDistance edits from the specified name,
+   * where an edit inserts, deletes or replaces one character.
+   *
+   * @param name        the name to search for, in lower case.
+   * @param maxDistance the largest number of edits.
+   * @return the names within maxDistance edits, in name order.
+   */
+  List<String> namesWithin(String name, int maxDistance) {
+    int length = name.length();
+    List<String> matched = new ArrayList<>();
+    // row i holds the distances from the first i characters of a name to each prefix of name
+    int[][] rows = new int[16][];
+    rows[0] = new int[length + 1];
+    for (int j = 0; j <= length; j++) {
+      rows[0][j] = j;
+    }
+    String previous = "";
+    int validRows = 0; // rows 1 to validRows hold the table of the start of previous
+
+    String key = names.ceilingKey("");
+    while (key != null) {
+      int row = Math.min(commonPrefixLength(previous, key), validRows);
+      String tooFar = null;
+      while (row < key.length()) {
+        if (row + 1 == rows.length) {
+          rows = Arrays.copyOf(rows, rows.length * 2);
+        }
+        if (rows[row + 1] == null) {
+          rows[row + 1] = new int[length + 1];
+        }
+        int[] above = rows[row];
+        int[] current = rows[row + 1];
+        char c = key.charAt(row);
+        current[0] = row + 1;
+        int nearest = current[0];
+        for (int j = 1; j <= length; j++) {
+          int replaced = above[j - 1] + (name.charAt(j - 1) == c ? 0 : 1);
+          current[j] = Math.min(replaced, Math.min(above[j], current[j - 1]) + 1);
+          nearest = Math.min(nearest, current[j]);
+        }
+        row++;
+        if (nearest > maxDistance) { // no name starting with these characters can match
+          tooFar = key.substring(0, row);
+          break;
+        }
+      }
+      previous = key;
+      validRows = row;
+
+      if (tooFar != null) {
+        key = names.higherKey(tooFar + Character.MAX_VALUE);
+      } else {
+        if (rows[key.length()][length] <= maxDistance) {
+          matched.add(key);
+        }
+        key = names.higherKey(key);
+      }
+    }
+    return matched;
+  }
+
+  private static int commonPrefixLength(String a, String b) {
+    int end = Math.min(a.length(), b.length());
+    int i = 0;
+    while (i < end && a.charAt(i) == b.charAt(i)) {
+      i++;
+    }
+    return i;
+  }
+}
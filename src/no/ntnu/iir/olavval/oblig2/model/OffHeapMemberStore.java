@@ -0,0 +1,755 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+
+/**
+ * A member store that keeps its members outside the Java heap, in direct ByteBuffers.
+ * Each member is a fixed-width record holding member number, points, membership level,
+ * enrollment date and the position of its personal details, which are kept as UTF-8 strings in
+ * a separate region. The member number index is an open-addressing table in direct buffers too,
+ * so the heap used by the store does not grow with the number of members.
+ *
+ * <p>The store does not keep the member objects given to putIfAbsent; it copies them into a
+ * record. get and the iterator hand out short-lived views of a record, which read and write
+ * points and level straight in the buffer, atomically like a heap member. A view stops working
+ * once its member is removed from the store, while remove returns a copy on the heap.
+ * Adding and removing members is not thread safe.</p>
+ *
+ * <p>The indexes of a MemberArchive are kept on the heap, so an archive over this store only
+ * keeps the heap it uses from growing with its members if it is created without them, see
+ * MemberArchive.Index.</p>
+ *
+ * <p>The space of removed records is reused for new members. The strings of removed members and
+ * of changed passwords are not reused, see getGarbageBytes.</p>
+ *
+ * <p>Each record carries a checksum of its fixed fields, and each block of personal details a
+ * CRC32, so that a subclass keeping the slabs in a file can find damaged records after a crash,
+ * see MappedMemberStore.</p>
+ *
+ * @author mort
+ */
+public class OffHeapMemberStore implements MemberStore {
+  private static final VarHandle INT_HANDLE =
+      MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+  private static final MembershipLevel[] LEVELS = MembershipLevel.values();
+
+  // record layout, in bytes
+  private static final int RECORD_SIZE = 32;
+  private static final int MEMBER_NO = 0;
+  private static final int POINTS = 4; // next free record, when the record is free
+  private static final int LEVEL = 8; // FREE_RECORD when the record is free
+  private static final int ENROLLED = 12;
+  private static final int QUALIFICATION_END = 16;
+  private static final int CHECKSUM = 20; // of member number, enrollment and qualification end
+  private static final int PERSONALS_OFFSET = 24;
+  private static final int FREE_RECORD = -1;
+
+  private static final int RECORD_SLAB_SHIFT = 15; // records per slab, 1 MiB slabs
+  private static final int RECORD_SLAB_MASK = (1 << RECORD_SLAB_SHIFT) - 1;
+  static final int RECORDS_PER_SLAB = 1 << RECORD_SLAB_SHIFT;
+  static final int RECORD_SLAB_BYTES = RECORD_SIZE << RECORD_SLAB_SHIFT;
+  private static final int STRING_SLAB_SHIFT = 20; // 1 MiB slabs
+  static final int STRING_SLAB_SIZE = 1 << STRING_SLAB_SHIFT;
+  private static final int PERSONALS_HEADER = 8; // byte count and CRC32 of the details
+  private static final int MAX_STRING_BYTES = 0xFFFF;
+
+  private static final int DEFAULT_CAPACITY = 16;
+  private static final float MAX_LOAD = 0.6f;
+  private static final int MAX_TABLE_SIZE = 1 << 28;
+
+  private ByteBuffer[] recordSlabs = new ByteBuffer[4];
+  private int recordCount; // records handed out so far, free or not
+  private int freeRecord = -1; // head of the list of free records
+
+  private ByteBuffer[] stringSlabs = new ByteBuffer[4];
+  private int stringSlabCount;
+  private long garbageBytes;
+
+  private ByteBuffer tableKeys;
+  private ByteBuffer tableValues; // record index + 1, 0 marks a free slot
+  private int tableSize;
+  private int size;
+  private int resizeThreshold;
+
+  /**
+   * Creates an empty member store.
+   */
+  public OffHeapMemberStore() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates an empty member store with an index sized to hold the expected number of members
+   * without resizing.
+   *
+   * @param expectedMembers the number of members the store is expected to hold.
+   * @throws IllegalArgumentException if expectedMembers is negative.
+   */
+  public OffHeapMemberStore(int expectedMembers) {
+    if (expectedMembers < 0) {
+      throw new IllegalArgumentException("Expected members cannot be negative: " + expectedMembers);
+    }
+    allocateTable(tableSizeFor(expectedMembers));
+  }
+
+  @Override
+  public BonusMember get(int memberNo) {
+    int slot = findSlot(memberNo);
+    return slot < 0 ? null : new MemberView(this, recordAt(slot));
+  }
+
+  @Override
+  public boolean contains(int memberNo) {
+    return findSlot(memberNo) >= 0;
+  }
+
+  /**
+   * Copies a member into the store, unless a member with the same member number is already
+   * stored. The member object itself is not kept.
+   *
+   * @param member the member to add.
+   * @return true if the member was added, false if the member number was already taken.
+   * @throws IllegalArgumentException if a personal detail is longer than 65535 bytes as UTF-8.
+   */
+  @Override
+  public boolean putIfAbsent(BonusMember member) {
+    if (member == null) {
+      return false;
+    }
+    if (contains(member.getMemberNo())) {
+      return false; // member number already taken
+    }
+    indexRecord(member.getMemberNo(), writeRecord(member));
+    return true;
+  }
+
+  /**
+   * Overwrites a stored member with the state of another member object holding the same member
+   * number. Nothing is replaced unless oldMember is a view of the member currently stored.
+   *
+   * @param oldMember         a view of the member currently stored.
+   * @param replacementMember the member to copy into its place.
+   * @return true if the member was replaced.
+   */
+  @Override
+  public boolean replace(BonusMember oldMember, BonusMember replacementMember) {
+    if (!(oldMember instanceof MemberView) || replacementMember == null
+        || oldMember.getMemberNo() != replacementMember.getMemberNo()) {
+      return false;
+    }
+    MemberView view = (MemberView) oldMember;
+    int slot = findSlot(view.getMemberNo());
+    if (view.store != this || slot < 0 || recordAt(slot) != view.record) {
+      return false;
+    }
+    ByteBuffer slab = recordSlab(view.record);
+    int base = recordBase(view.record);
+    slab.putInt(base + POINTS, replacementMember.getPoints());
+    slab.putInt(base + LEVEL, replacementMember.getLevel().ordinal());
+    garbageBytes += personalsBytes(slab, base);
+    writePersonals(slab, base, replacementMember.getPersonals());
+    return true;
+  }
+
+  /**
+   * Removes the member with the specified member number.
+   *
+   * @param memberNo the member number of the member to remove.
+   * @return a copy of the removed member on the heap, or null if no such member was stored.
+   */
+  @Override
+  public BonusMember remove(int memberNo) {
+    int slot = findSlot(memberNo);
+    if (slot < 0) {
+      return null;
+    }
+    int record = recordAt(slot);
+    BonusMember removed = copyOf(record);
+    shiftBack(slot);
+    size--;
+    freeRecord(record);
+    return removed;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns an iterator over views of the stored members. The iterator does not support removal.
+   *
+   * @return an iterator over the stored members.
+   */
+  @Override
+  public Iterator<BonusMember> iterator() {
+    return new Iterator<BonusMember>() {
+      private int next = advance(0);
+
+      private int advance(int from) {
+        int record = from;
+        while (record < recordCount && isFree(record)) {
+          record++;
+        }
+        return record;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return next < recordCount;
+      }
+
+      @Override
+      public BonusMember next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        BonusMember member = new MemberView(OffHeapMemberStore.this, next);
+        next = advance(next + 1);
+        return member;
+      }
+    };
+  }
+
+  /**
+   * Returns the number of bytes of direct memory held by the store.
+   *
+   * @return the number of bytes of direct memory held by the store.
+   */
+  public long getOffHeapBytes() {
+    long recordBytes = 0;
+    for (ByteBuffer slab : recordSlabs) {
+      recordBytes += slab == null ? 0 : slab.capacity();
+    }
+    return recordBytes + (long) stringSlabCount * STRING_SLAB_SIZE + tableSize * 8L;
+  }
+
+  /**
+   * Returns the number of bytes in the string region that belong to removed members or
+   * replaced personal details, and are not used anymore.
+   *
+   * @return the number of unused bytes in the string region.
+   */
+  public long getGarbageBytes() {
+    return garbageBytes;
+  }
+
+  /**
+   * Returns a new slab for the records with the given slab index, RECORD_SLAB_BYTES long and in
+   * native byte order. Subclasses may keep the slabs somewhere else, e.g. in a mapped file.
+   *
+   * @param slabIndex the index of the slab.
+   * @return a zeroed or previously written slab for the records.
+   */
+  ByteBuffer allocateRecordSlab(int slabIndex) {
+    return ByteBuffer.allocateDirect(RECORD_SLAB_BYTES).order(ByteOrder.nativeOrder());
+  }
+
+  /**
+   * Returns a new slab for personal details with the given slab index, STRING_SLAB_SIZE long.
+   *
+   * @param slabIndex the index of the slab.
+   * @return a zeroed or previously written slab for personal details.
+   */
+  ByteBuffer allocateStringSlab(int slabIndex) {
+    return ByteBuffer.allocateDirect(STRING_SLAB_SIZE);
+  }
+
+  /**
+   * Rebuilds the index and the list of free records from records already in the slabs, e.g.
+   * after a subclass has mapped them from a file. With verify set, every record is checked
+   * against its checksums, and records that fail are freed instead of indexed.
+   *
+   * @param recordSlabCount the number of record slabs to load.
+   * @param knownRecords    the number of records handed out before, free or not.
+   * @param stringSlabCount the number of string slabs to load.
+   * @param stringPosition  the append position in the last string slab.
+   * @param verify          true to check every record, e.g. after a crash.
+   * @return the number of records freed because they failed the check.
+   */
+  int rebuild(int recordSlabCount, int knownRecords, int stringSlabCount, int stringPosition,
+              boolean verify) {
+    allocateTable(tableSizeFor(knownRecords));
+    size = 0;
+    recordSlabs = new ByteBuffer[Math.max(4, Integer.highestOneBit(recordSlabCount) * 2)];
+    for (int i = 0; i < recordSlabCount; i++) {
+      recordSlabs[i] = allocateRecordSlab(i);
+    }
+    stringSlabs = new ByteBuffer[Math.max(4, Integer.highestOneBit(stringSlabCount) * 2)];
+    for (int i = 0; i < stringSlabCount; i++) {
+      stringSlabs[i] = allocateStringSlab(i);
+    }
+    this.stringSlabCount = stringSlabCount;
+    if (stringSlabCount > 0) {
+      stringSlabs[stringSlabCount - 1].position(stringPosition);
+    }
+
+    int dropped = 0;
+    int lastLive = -1;
+    long liveBytes = 0;
+    for (int record = 0; record < knownRecords; record++) {
+      ByteBuffer slab = recordSlab(record);
+      int base = recordBase(record);
+      if (slab.getInt(base + LEVEL) == FREE_RECORD || (verify && isBlank(slab, base))) {
+        continue;
+      }
+      if ((verify && !isIntact(slab, base)) || contains(slab.getInt(base + MEMBER_NO))) {
+        slab.putInt(base + LEVEL, FREE_RECORD);
+        dropped++;
+      } else {
+        indexRecord(slab.getInt(base + MEMBER_NO), record);
+        liveBytes += personalsBytes(slab, base);
+        lastLive = record;
+      }
+    }
+
+    // a record count from before a crash cannot be trusted, so count up to the last member
+    recordCount = verify ? lastLive + 1 : knownRecords;
+    freeRecord = -1;
+    for (int record = recordCount - 1; record >= 0; record--) {
+      ByteBuffer slab = recordSlab(record);
+      int base = recordBase(record);
+      if (isFree(record) || (verify && isBlank(slab, base))) {
+        slab.putInt(base + LEVEL, FREE_RECORD);
+        slab.putInt(base + POINTS, freeRecord);
+        freeRecord = record;
+      }
+    }
+    long usedBytes = stringSlabCount == 0
+        ? 0 : (long) (stringSlabCount - 1) * STRING_SLAB_SIZE + stringPosition;
+    garbageBytes = Math.max(0, usedBytes - liveBytes);
+    return dropped;
+  }
+
+  /**
+   * Returns the number of records handed out so far, free or not.
+   *
+   * @return the number of records handed out so far.
+   */
+  int getRecordCount() {
+    return recordCount;
+  }
+
+  /**
+   * Returns the number of string slabs in use.
+   *
+   * @return the number of string slabs in use.
+   */
+  int getStringSlabCount() {
+    return stringSlabCount;
+  }
+
+  /**
+   * Returns the append position in the last string slab.
+   *
+   * @return the append position in the last string slab, or 0 if there is none.
+   */
+  int getStringPosition() {
+    return stringSlabCount == 0 ? 0 : stringSlabs[stringSlabCount - 1].position();
+  }
+
+  // ---- records ----
+
+  private ByteBuffer recordSlab(int record) {
+    return recordSlabs[record >>> RECORD_SLAB_SHIFT];
+  }
+
+  private static int recordBase(int record) {
+    return (record & RECORD_SLAB_MASK) * RECORD_SIZE;
+  }
+
+  private boolean isFree(int record) {
+    return recordSlab(record).getInt(recordBase(record) + LEVEL) == FREE_RECORD;
+  }
+
+  /**
+   * Copies a member into a free record, and returns the record index.
+   */
+  private int writeRecord(BonusMember member) {
+    int record;
+    if (freeRecord >= 0) {
+      record = freeRecord;
+      freeRecord = recordSlab(record).getInt(recordBase(record) + POINTS);
+    } else {
+      record = recordCount++;
+      int slabIndex = record >>> RECORD_SLAB_SHIFT;
+      if (slabIndex == recordSlabs.length) {
+        recordSlabs = Arrays.copyOf(recordSlabs, slabIndex * 2);
+      }
+      if (recordSlabs[slabIndex] == null) {
+        recordSlabs[slabIndex] = allocateRecordSlab(slabIndex);
+      }
+    }
+    ByteBuffer slab = recordSlab(record);
+    int base = recordBase(record);
+    int enrolled = (int) member.getEnrolledEpochDay();
+    int qualificationEnd = (int) member.getQualificationEndEpochDay();
+    writePersonals(slab, base, member.getPersonals());
+    slab.putInt(base + MEMBER_NO, member.getMemberNo());
+    slab.putInt(base + POINTS, member.getPoints());
+    slab.putInt(base + ENROLLED, enrolled);
+    slab.putInt(base + QUALIFICATION_END, qualificationEnd);
+    slab.putInt(base + CHECKSUM, recordChecksum(member.getMemberNo(), enrolled, qualificationEnd));
+    slab.putInt(base + LEVEL, member.getLevel().ordinal());
+    return record;
+  }
+
+  /**
+   * Checks a record, and the personal details it points at, against their checksums.
+   */
+  private boolean isIntact(ByteBuffer slab, int base) {
+    int level = slab.getInt(base + LEVEL);
+    if (level < 0 || level >= LEVELS.length || slab.getInt(base + POINTS) < 0
+        || slab.getInt(base + CHECKSUM) != recordChecksum(slab.getInt(base + MEMBER_NO),
+        slab.getInt(base + ENROLLED), slab.getInt(base + QUALIFICATION_END))) {
+      return false;
+    }
+    long offset = slab.getLong(base + PERSONALS_OFFSET);
+    int position = (int) (offset & (STRING_SLAB_SIZE - 1));
+    if (offset < 0 || (offset >>> STRING_SLAB_SHIFT) >= stringSlabCount
+        || position > STRING_SLAB_SIZE - PERSONALS_HEADER) {
+      return false;
+    }
+    ByteBuffer strings = stringSlabs[(int) (offset >>> STRING_SLAB_SHIFT)].duplicate();
+    strings.position(position);
+    int length = strings.getInt();
+    int crc = strings.getInt();
+    if (length < 8 || length > strings.remaining()) {
+      return false;
+    }
+    strings.limit(strings.position() + length);
+    CRC32 check = new CRC32();
+    check.update(strings);
+    return (int) check.getValue() == crc;
+  }
+
+  /**
+   * Checks if a record was never written to, as in a slab just added to a file.
+   */
+  private static boolean isBlank(ByteBuffer slab, int base) {
+    return slab.getLong(base) == 0 && slab.getLong(base + 8) == 0
+        && slab.getLong(base + 16) == 0 && slab.getLong(base + 24) == 0;
+  }
+
+  /**
+   * Mixes the fixed fields of a record into a checksum. An all-zero record does not pass.
+   */
+  private static int recordChecksum(int memberNo, int enrolled, int qualificationEnd) {
+    int h = memberNo * 0x9E3779B9 ^ enrolled * 0x85EBCA6B ^ qualificationEnd * 0xC2B2AE35;
+    return (h ^ (h >>> 16)) ^ 0x5BD1E995;
+  }
+
+  private void freeRecord(int record) {
+    ByteBuffer slab = recordSlab(record);
+    int base = recordBase(record);
+    garbageBytes += personalsBytes(slab, base);
+    slab.putInt(base + LEVEL, FREE_RECORD);
+    slab.putInt(base + POINTS, freeRecord);
+    freeRecord = record;
+  }
+
+  /**
+   * Returns a heap member holding the current state of a record.
+   */
+  private BonusMember copyOf(int record) {
+    ByteBuffer slab = recordSlab(record);
+    int base = recordBase(record);
+    return new BonusMember(slab.getInt(base + MEMBER_NO), readPersonals(record),
+        LocalDate.ofEpochDay(slab.getInt(base + ENROLLED)), slab.getInt(base + POINTS),
+        LEVELS[slab.getInt(base + LEVEL)]) {};
+  }
+
+  /**
+   * Checks that a view still refers to a record holding its member.
+   */
+  private int checkedBase(int record, int memberNo) {
+    ByteBuffer slab = recordSlab(record);
+    int base = recordBase(record);
+    if (slab.getInt(base + MEMBER_NO) != memberNo || slab.getInt(base + LEVEL) == FREE_RECORD) {
+      throw new IllegalStateException("Member " + memberNo + " is no longer in the store.");
+    }
+    return base;
+  }
+
+  // ---- personals ----
+
+  /**
+   * Appends the personal details to the string region, and points the record at them.
+   * The block starts with its byte count and CRC32, followed by each detail written as an
+   * unsigned 16 bit byte count and UTF-8 bytes.
+   */
+  private void writePersonals(ByteBuffer recordSlab, int base, Personals personals) {
+    byte[][] fields = {
+        personals.getFirstname().getBytes(StandardCharsets.UTF_8),
+        personals.getSurname().getBytes(StandardCharsets.UTF_8),
+        personals.getEMailAddress().getBytes(StandardCharsets.UTF_8),
+        personals.getPassword().getBytes(StandardCharsets.UTF_8)};
+    int length = 0;
+    for (byte[] field : fields) {
+      if (field.length > MAX_STRING_BYTES) {
+        throw new IllegalArgumentException("Personal details cannot be longer than "
+            + MAX_STRING_BYTES + " bytes.");
+      }
+      length += 2 + field.length;
+    }
+    ByteBuffer block = ByteBuffer.allocate(length);
+    for (byte[] field : fields) {
+      block.putShort((short) field.length);
+      block.put(field);
+    }
+    CRC32 crc = new CRC32();
+    crc.update(block.array());
+
+    ByteBuffer slab = stringSlabCount == 0 ? null : stringSlabs[stringSlabCount - 1];
+    if (slab == null || slab.remaining() < PERSONALS_HEADER + length) {
+      if (slab != null) {
+        garbageBytes += slab.remaining(); // the rest of the old slab stays unused
+      }
+      if (stringSlabCount == stringSlabs.length) {
+        stringSlabs = Arrays.copyOf(stringSlabs, stringSlabCount * 2);
+      }
+      slab = allocateStringSlab(stringSlabCount);
+      stringSlabs[stringSlabCount++] = slab;
+    }
+    long offset = ((long) (stringSlabCount - 1) << STRING_SLAB_SHIFT) | slab.position();
+    slab.putInt(length);
+    slab.putInt((int) crc.getValue());
+    slab.put(block.array());
+    recordSlab.putLong(base + PERSONALS_OFFSET, offset);
+  }
+
+  /**
+   * Returns the number of bytes taken by the personal details a record points at.
+   */
+  private int personalsBytes(ByteBuffer recordSlab, int base) {
+    long offset = recordSlab.getLong(base + PERSONALS_OFFSET);
+    ByteBuffer slab = stringSlabs[(int) (offset >>> STRING_SLAB_SHIFT)];
+    return PERSONALS_HEADER + slab.getInt((int) (offset & (STRING_SLAB_SIZE - 1)));
+  }
+
+  private Personals readPersonals(int record) {
+    ByteBuffer recordSlab = recordSlab(record);
+    long offset = recordSlab.getLong(recordBase(record) + PERSONALS_OFFSET);
+    // read through a duplicate, so the append position of the slab is left alone
+    ByteBuffer slab = stringSlabs[(int) (offset >>> STRING_SLAB_SHIFT)].duplicate();
+    slab.position((int) (offset & (STRING_SLAB_SIZE - 1)) + PERSONALS_HEADER);
+    String[] fields = new String[4];
+    for (int i = 0; i < fields.length; i++) {
+      byte[] bytes = new byte[slab.getShort() & 0xFFFF];
+      slab.get(bytes);
+      fields[i] = new String(bytes, StandardCharsets.UTF_8);
+    }
+    return new StoredPersonals(this, record, fields[0], fields[1], fields[2], fields[3]);
+  }
+
+  // ---- member number index ----
+
+  private int recordAt(int slot) {
+    return tableValues.getInt(slot << 2) - 1;
+  }
+
+  /**
+   * Adds a member number to the index, pointing at the given record. The number must not be
+   * in the index already.
+   */
+  private void indexRecord(int memberNo, int record) {
+    int mask = tableSize - 1;
+    int slot = OpenAddressingMemberStore.hash(memberNo) & mask;
+    while (tableValues.getInt(slot << 2) != 0) {
+      slot = (slot + 1) & mask;
+    }
+    tableKeys.putInt(slot << 2, memberNo);
+    tableValues.putInt(slot << 2, record + 1);
+    if (++size > resizeThreshold) {
+      rehash(tableSize << 1);
+    }
+  }
+
+  /**
+   * Returns the slot holding the specified member number, or -1 if it is not in the table.
+   */
+  private int findSlot(int memberNo) {
+    int mask = tableSize - 1;
+    int slot = OpenAddressingMemberStore.hash(memberNo) & mask;
+    while (tableValues.getInt(slot << 2) != 0) {
+      if (tableKeys.getInt(slot << 2) == memberNo) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Empties the slot at the given position, and moves any following entries in the same probe
+   * run back into the gap so that lookups never stop early at a hole.
+   */
+  private void shiftBack(int emptied) {
+    int mask = tableSize - 1;
+    int gap = emptied;
+    int slot = (gap + 1) & mask;
+    while (tableValues.getInt(slot << 2) != 0) {
+      int home = OpenAddressingMemberStore.hash(tableKeys.getInt(slot << 2)) & mask;
+      // the entry may move into the gap only if its home slot is not between gap and slot
+      if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+        tableKeys.putInt(gap << 2, tableKeys.getInt(slot << 2));
+        tableValues.putInt(gap << 2, tableValues.getInt(slot << 2));
+        gap = slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    tableValues.putInt(gap << 2, 0);
+  }
+
+  private void rehash(int newTableSize) {
+    if (newTableSize > MAX_TABLE_SIZE) {
+      resizeThreshold = Integer.MAX_VALUE; // table is as large as it gets, let it fill up
+      return;
+    }
+    ByteBuffer oldKeys = tableKeys;
+    ByteBuffer oldValues = tableValues;
+    int oldTableSize = tableSize;
+    allocateTable(newTableSize);
+    int mask = newTableSize - 1;
+    for (int i = 0; i < oldTableSize; i++) {
+      int value = oldValues.getInt(i << 2);
+      if (value != 0) {
+        int key = oldKeys.getInt(i << 2);
+        int slot = OpenAddressingMemberStore.hash(key) & mask;
+        while (tableValues.getInt(slot << 2) != 0) {
+          slot = (slot + 1) & mask;
+        }
+        tableKeys.putInt(slot << 2, key);
+        tableValues.putInt(slot << 2, value);
+      }
+    }
+  }
+
+  private void allocateTable(int newTableSize) {
+    tableKeys = ByteBuffer.allocateDirect(newTableSize << 2).order(ByteOrder.nativeOrder());
+    tableValues = ByteBuffer.allocateDirect(newTableSize << 2).order(ByteOrder.nativeOrder());
+    tableSize = newTableSize;
+    resizeThreshold = (int) (newTableSize * MAX_LOAD);
+  }
+
+  /**
+   * Returns the smallest power of two table size that holds the expected members below MAX_LOAD.
+   */
+  private static int tableSizeFor(int expectedMembers) {
+    long needed = (long) Math.ceil(expectedMembers / (double) MAX_LOAD) + 1;
+    int newTableSize = DEFAULT_CAPACITY;
+    while (newTableSize < needed && newTableSize < MAX_TABLE_SIZE) {
+      newTableSize <<= 1;
+    }
+    return newTableSize;
+  }
+
+  /**
+   * A view of a member record. Points and level are read from and written to the record,
+   * while the personal details are decoded the first time they are asked for.
+   */
+  private static final class MemberView extends BonusMember {
+    private final OffHeapMemberStore store;
+    private final int record;
+    private Personals personals;
+
+    MemberView(OffHeapMemberStore store, int record) {
+      super(store.recordSlab(record).getInt(recordBase(record) + MEMBER_NO),
+          store.recordSlab(record).getInt(recordBase(record) + ENROLLED),
+          store.recordSlab(record).getInt(recordBase(record) + QUALIFICATION_END));
+      this.store = store;
+      this.record = record;
+    }
+
+    @Override
+    public int getPoints() {
+      int base = store.checkedBase(record, getMemberNo());
+      return (int) INT_HANDLE.getVolatile(store.recordSlab(record), base + POINTS);
+    }
+
+    @Override
+    protected void addPoints(int points) {
+      int base = store.checkedBase(record, getMemberNo());
+      INT_HANDLE.getAndAdd(store.recordSlab(record), base + POINTS, points);
+    }
+
+    @Override
+    public MembershipLevel getLevel() {
+      int base = store.checkedBase(record, getMemberNo());
+      return LEVELS[(int) INT_HANDLE.getVolatile(store.recordSlab(record), base + LEVEL)];
+    }
+
+    @Override
+    boolean upgradeTo(MembershipLevel newLevel) {
+      int base = store.checkedBase(record, getMemberNo());
+      ByteBuffer slab = store.recordSlab(record);
+      int current;
+      do {
+        current = (int) INT_HANDLE.getVolatile(slab, base + LEVEL);
+        if (newLevel == null || newLevel.ordinal() <= current) {
+          return false;
+        }
+      } while (!INT_HANDLE.compareAndSet(slab, base + LEVEL, current, newLevel.ordinal()));
+      return true;
+    }
+
+    @Override
+    public Personals getPersonals() {
+      if (personals == null) {
+        store.checkedBase(record, getMemberNo());
+        personals = store.readPersonals(record);
+      }
+      return personals;
+    }
+
+    @Override
+    public LocalDate getEnrolledDate() {
+      return LocalDate.ofEpochDay(getEnrolledEpochDay());
+    }
+
+    @Override
+    boolean isSameMemberAs(BonusMember other) {
+      return other instanceof MemberView && ((MemberView) other).store == store
+          && ((MemberView) other).record == record && other.getMemberNo() == getMemberNo();
+    }
+  }
+
+  /**
+   * Personal details decoded from the string region. A changed password is written back to
+   * the store, so that it is kept after this object is gone.
+   */
+  private static final class StoredPersonals extends Personals {
+    private final OffHeapMemberStore store;
+    private final int record;
+    private final int memberNo;
+
+    StoredPersonals(OffHeapMemberStore store, int record, String firstname, String surname,
+                    String emailAddress, String password) {
+      super(firstname, surname, emailAddress, password);
+      this.store = store;
+      this.record = record;
+      this.memberNo = store.recordSlab(record).getInt(recordBase(record) + MEMBER_NO);
+    }
+
+    @Override
+    public boolean changePassword(String oldPassword, String newPassword) {
+      boolean changed = super.changePassword(oldPassword, newPassword);
+      if (changed) {
+        int base = store.checkedBase(record, memberNo);
+        ByteBuffer slab = store.recordSlab(record);
+        store.garbageBytes += store.personalsBytes(slab, base);
+        store.writePersonals(slab, base, this);
+      }
+      return changed;
+    }
+  }
+}
@@ -0,0 +1,224 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A member store that keeps members in an open-addressing hash table keyed on the primitive
+ * member number. Keys live in an int array next to a parallel array of members, so lookups never
+ * box the member number and each member costs two array slots instead of a HashMap node and an
+ * Integer.
+ *
+ * <p>Collisions are resolved with linear probing, and removal shifts the following entries back
+ * so that no tombstones are left behind. The store is not thread safe.</p>
+ *
+ * @author mort
+ */
+public class OpenAddressingMemberStore implements MemberStore {
+  private static final int DEFAULT_CAPACITY = 16;
+  private static final float MAX_LOAD = 0.6f;
+
+  private int[] keys;
+  private BonusMember[] values; // null marks a free slot, since 0 is a valid member number
+  private int size;
+  private int resizeThreshold;
+
+  /**
+   * Creates an empty member store.
+   */
+  public OpenAddressingMemberStore() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates an empty member store sized to hold the expected number of members without resizing.
+   *
+   * @param expectedMembers the number of members the store is expected to hold.
+   * @throws IllegalArgumentException if expectedMembers is negative.
+   */
+  public OpenAddressingMemberStore(int expectedMembers) {
+    if (expectedMembers < 0) {
+      throw new IllegalArgumentException("Expected members cannot be negative: " + expectedMembers);
+    }
+    allocate(tableSizeFor(expectedMembers));
+  }
+
+  @Override
+  public BonusMember get(int memberNo) {
+    int slot = findSlot(memberNo);
+    return slot < 0 ? null : values[slot];
+  }
+
+  @Override
+  public boolean contains(int memberNo) {
+    return findSlot(memberNo) >= 0;
+  }
+
+  @Override
+  public boolean putIfAbsent(BonusMember member) {
+    if (member == null) {
+      return false;
+    }
+    int memberNo = member.getMemberNo();
+    int mask = keys.length - 1;
+    int slot = hash(memberNo) & mask;
+    while (values[slot] != null) {
+      if (keys[slot] == memberNo) {
+        return false; // member number already taken
+      }
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = memberNo;
+    values[slot] = member;
+    if (++size > resizeThreshold) {
+      rehash(keys.length << 1);
+    }
+    return true;
+  }
+
+  @Override
+  public boolean replace(BonusMember oldMember, BonusMember replacementMember) {
+    if (oldMember == null || replacementMember == null
+        || oldMember.getMemberNo() != replacementMember.getMemberNo()) {
+      return false;
+    }
+    int slot = findSlot(oldMember.getMemberNo());
+    if (slot < 0 || values[slot] != oldMember) {
+      return false;
+    }
+    values[slot] = replacementMember;
+    return true;
+  }
+
+  @Override
+  public BonusMember remove(int memberNo) {
+    int slot = findSlot(memberNo);
+    if (slot < 0) {
+      return null;
+    }
+    BonusMember removed = values[slot];
+    shiftBack(slot);
+    size--;
+    return removed;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns an iterator over the stored members. The iterator does not support removal.
+   *
+   * @return an iterator over the stored members.
+   */
+  @Override
+  public Iterator<BonusMember> iterator() {
+    return new Iterator<BonusMember>() {
+      private int next = advance(0);
+
+      private int advance(int from) {
+        int slot = from;
+        while (slot < values.length && values[slot] == null) {
+          slot++;
+        }
+        return slot;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return next < values.length;
+      }
+
+      @Override
+      public BonusMember next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        BonusMember member = values[next];
+        next = advance(next + 1);
+        return member;
+      }
+    };
+  }
+
+  /**
+   * Returns the slot holding the specified member number, or -1 if it is not in the table.
+   */
+  private int findSlot(int memberNo) {
+    int mask = keys.length - 1;
+    int slot = hash(memberNo) & mask;
+    while (values[slot] != null) {
+      if (keys[slot] == memberNo) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Empties the slot at the given position, and moves any following entries in the same probe
+   * run back into the gap so that lookups never stop early at a hole.
+   */
+  private void shiftBack(int emptied) {
+    int mask = keys.length - 1;
+    int gap = emptied;
+    int slot = (gap + 1) & mask;
+    while (values[slot] != null) {
+      int home = hash(keys[slot]) & mask;
+      // the entry may move into the gap only if its home slot is not between gap and slot
+      if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+        keys[gap] = keys[slot];
+        values[gap] = values[slot];
+        gap = slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    values[gap] = null;
+  }
+
+  private void rehash(int newTableSize) {
+    int[] oldKeys = keys;
+    BonusMember[] oldValues = values;
+    allocate(newTableSize);
+    int mask = newTableSize - 1;
+    for (int i = 0; i < oldValues.length; i++) {
+      if (oldValues[i] != null) {
+        int slot = hash(oldKeys[i]) & mask;
+        while (values[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  private void allocate(int tableSize) {
+    keys = new int[tableSize];
+    values = new BonusMember[tableSize];
+    resizeThreshold = (int) (tableSize * MAX_LOAD);
+  }
+
+  /**
+   * Returns the smallest power of two table size that holds the expected members below MAX_LOAD.
+   */
+  private static int tableSizeFor(int expectedMembers) {
+    long needed = (long) Math.ceil(expectedMembers / (double) MAX_LOAD) + 1;
+    int tableSize = DEFAULT_CAPACITY;
+    while (tableSize < needed && tableSize < (1 << 30)) {
+      tableSize <<= 1;
+    }
+    return tableSize;
+  }
+
+  /**
+   * Spreads the member number bits, since sequential member numbers would otherwise fill
+   * neighbouring slots and build long probe runs.
+   */
+  static int hash(int memberNo) {
+    int h = memberNo * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
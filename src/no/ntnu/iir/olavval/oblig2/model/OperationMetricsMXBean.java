@@ -0,0 +1,59 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+/**
+ * The metrics of one kind of MemberArchive operation, as shown through JMX, e.g. in JConsole
+ * or VisualVM. Registered by ArchiveMetrics.registerMBeans, one bean per operation.
+ * Every attribute is read from a fresh snapshot of the metrics.
+ *
+ * @author mort
+ */
+public interface OperationMetricsMXBean {
+  /**
+   * Returns the number of operations, failed ones included.
+   *
+   * @return the number of operations.
+   */
+  long getCount();
+
+  /**
+   * Returns the number of operations that failed.
+   *
+   * @return the number of failed operations.
+   */
+  long getErrors();
+
+  /**
+   * Returns the mean latency, in nanoseconds.
+   *
+   * @return the mean latency.
+   */
+  double getMeanNanos();
+
+  /**
+   * Returns the median latency, in nanoseconds.
+   *
+   * @return the median latency.
+   */
+  long getP50Nanos();
+
+  /**
+   * Returns the 99th percentile latency, in nanoseconds.
+   *
+   * @return the 99th percentile latency.
+   */
+  long getP99Nanos();
+
+  /**
+   * Returns the 99.9th percentile latency, in nanoseconds.
+   *
+   * @return the 99.9th percentile latency.
+   */
+  long getP999Nanos();
+
+  /**
+   * Returns the highest latency, in nanoseconds.
+   *
+   * @return the highest latency.
+   */
+  long getMaxNanos();
+}
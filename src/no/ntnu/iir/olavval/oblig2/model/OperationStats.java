@@ -0,0 +1,127 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.util.Locale;
+
+/**
+ * The metrics of one kind of MemberArchive operation at the moment they were read, from
+ * ArchiveMetrics.snapshot. The numbers do not change after the snapshot is taken.
+ *
+ * <p>Latencies are estimated from a sample of the operations. Percentiles come from a histogram,
+ * and are the highest latency of the bucket the percentile falls in, so they may be up to about
+ * 3% higher than the latency measured.</p>
+ *
+ * @author mort
+ */
+public class OperationStats {
+  private final ArchiveMetrics.Operation operation;
+  private final long count;
+  private final long errors;
+  private final long timedCount; // operations the histogram stands for, about count
+  private final long totalNanos;
+  private final long maxNanos;
+  private final long[] bucketCounts;
+
+  /**
+   * Creates a snapshot of operation metrics.
+   *
+   * @param operation    the operation measured.
+   * @param count        the number of operations.
+   * @param errors       the number of operations that failed.
+   * @param totalNanos   the sum of the latencies in the histogram, in nanoseconds.
+   * @param maxNanos     the highest latency, in nanoseconds.
+   * @param bucketCounts the counts of the latency histogram, which this snapshot keeps.
+   */
+  OperationStats(ArchiveMetrics.Operation operation, long count, long errors, long totalNanos,
+                 long maxNanos, long[] bucketCounts) {
+    long timedCount = 0;
+    for (long bucketCount : bucketCounts) {
+      timedCount += bucketCount;
+    }
+    this.operation = operation;
+    this.count = count;
+    this.errors = errors;
+    this.timedCount = timedCount;
+    this.totalNanos = totalNanos;
+    this.maxNanos = maxNanos;
+    this.bucketCounts = bucketCounts;
+  }
+
+  /**
+   * Returns the operation measured.
+   *
+   * @return the operation measured.
+   */
+  public ArchiveMetrics.Operation getOperation() {
+    return operation;
+  }
+
+  /**
+   * Returns the number of operations, failed ones included.
+   *
+   * @return the number of operations.
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Returns the number of operations that failed, e.g. credits to unknown members or logins
+   * with a wrong password.
+   *
+   * @return the number of failed operations.
+   */
+  public long getErrors() {
+    return errors;
+  }
+
+  /**
+   * Returns the mean latency, in nanoseconds.
+   *
+   * @return the mean latency, or 0 if no operations were timed.
+   */
+  public double getMeanNanos() {
+    return timedCount == 0 ? 0 : (double) totalNanos / timedCount;
+  }
+
+  /**
+   * Returns the highest latency, in nanoseconds.
+   *
+   * @return the highest latency, or 0 if no operations were timed.
+   */
+  public long getMaxNanos() {
+    return maxNanos;
+  }
+
+  /**
+   * Returns the latency that the specified percentage of operations were at or below.
+   *
+   * @param percentile the percentage, from 0 to 100, e.g. 99.9.
+   * @return the latency at that percentile in nanoseconds, or 0 if no operations were timed.
+   * @throws IllegalArgumentException if percentile is not between 0 and 100.
+   */
+  public long getPercentileNanos(double percentile) {
+    if (!(percentile >= 0 && percentile <= 100)) {
+      throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+    }
+    if (timedCount == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * timedCount));
+    long seen = 0;
+    for (int bucket = 0; bucket < bucketCounts.length; bucket++) {
+      seen += bucketCounts[bucket];
+      if (seen >= rank) {
+        return Math.min(LatencyHistogram.highestIn(bucket), maxNanos);
+      }
+    }
+    return maxNanos; // counts recorded while the snapshot was taken
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ROOT, "OperationStats{operation=%s, count=%d, errors=%d, "
+            + "meanNanos=%.1f, p50Nanos=%d, p99Nanos=%d, p999Nanos=%d, maxNanos=%d}",
+        operation, count, errors, getMeanNanos(), getPercentileNanos(50),
+        getPercentileNanos(99), getPercentileNanos(99.9), maxNanos);
+  }
+}
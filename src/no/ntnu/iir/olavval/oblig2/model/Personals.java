@@ -66,6 +66,15 @@ public class Personals {
     return emailaddress;
   }
 
+  /**
+   * Returns the password, for member stores that keep the personals in their own format.
+   *
+   * @return the password of the person.
+   */
+  String getPassword() {
+    return password;
+  }
+
   /**
    * Checks if the password given by the parameter matches the password
    * registered on the person. Returns <code>true</code> if password is
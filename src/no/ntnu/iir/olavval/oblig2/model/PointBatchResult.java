@@ -0,0 +1,86 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.util.Arrays;
+
+/**
+ * The outcome of registering a batch of points with MemberArchive.registerPoints(int[], int[]).
+ * Credits that could not be applied are reported here instead of being thrown as exceptions.
+ *
+ * @author mort
+ */
+public class PointBatchResult {
+  private final int creditedMembers;
+  private final long creditedPoints;
+  private final int rejectedCredits;
+  private final int[] unknownMemberNos;
+
+  /**
+   * Creates a batch result.
+   *
+   * @param creditedMembers  the number of distinct members that received points.
+   * @param creditedPoints   the total number of points credited, before bonus multipliers.
+   * @param rejectedCredits  the number of credits rejected for having a negative point value.
+   * @param unknownMemberNos the distinct member numbers in the batch with no matching member.
+   */
+  PointBatchResult(int creditedMembers, long creditedPoints, int rejectedCredits,
+                   int[] unknownMemberNos) {
+    this.creditedMembers = creditedMembers;
+    this.creditedPoints = creditedPoints;
+    this.rejectedCredits = rejectedCredits;
+    this.unknownMemberNos = unknownMemberNos;
+  }
+
+  /**
+   * Returns the number of distinct members that received points.
+   *
+   * @return the number of distinct members that received points.
+   */
+  public int getCreditedMembers() {
+    return creditedMembers;
+  }
+
+  /**
+   * Returns the total number of points credited to members, before bonus multipliers.
+   *
+   * @return the total number of points credited.
+   */
+  public long getCreditedPoints() {
+    return creditedPoints;
+  }
+
+  /**
+   * Returns the number of credits rejected for having a negative point value.
+   *
+   * @return the number of rejected credits.
+   */
+  public int getRejectedCredits() {
+    return rejectedCredits;
+  }
+
+  /**
+   * Returns the distinct member numbers in the batch that did not match any member,
+   * in ascending order.
+   *
+   * @return the unknown member numbers.
+   */
+  public int[] getUnknownMemberNos() {
+    return unknownMemberNos.clone();
+  }
+
+  /**
+   * Checks if every credit in the batch was applied.
+   *
+   * @return true if no credits were rejected and no member numbers were unknown.
+   */
+  public boolean isComplete() {
+    return rejectedCredits == 0 && unknownMemberNos.length == 0;
+  }
+
+  @Override
+  public String toString() {
+    return "PointBatchResult{creditedMembers=" + creditedMembers
+        + ", creditedPoints=" + creditedPoints
+        + ", rejectedCredits=" + rejectedCredits
+        + ", unknownMemberNos=" + Arrays.toString(unknownMemberNos) + "}";
+  }
+}
@@ -0,0 +1,472 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the members of a MemberArchive ordered by points, most points first and, among members
+ * with the same points, lowest member number first, so leaderboards, ranks and point ranges are
+ * read in logarithmic time instead of by sorting a copy of the archive.
+ *
+ * <p>Each member is a long key, its points and member number, and the keys are kept sorted in
+ * blocks of at most BLOCK_LENGTH. The block of a key is found by a binary search over the first
+ * key of each block, and the number of keys before a block by a Fenwick tree over the block
+ * sizes, so the rank of a key and the key at a position are found in logarithmic time. A credit
+ * usually moves a member a short way within its block, which is one arraycopy within a few
+ * cache lines rather than the scattered nodes of a balanced tree. The key each member is indexed
+ * with is found through a MemberEntryTable, as the key holds the member number.</p>
+ *
+ * <p>The index is guarded by its own lock, but a credit does not take it. The new key of a
+ * credited member is put in a small buffer, one of several picked by member number as in
+ * StripedMemberStore, and the buffer is applied to the index under its lock once it is full, or
+ * when the index is read, so credits to members in different buffers only meet once per
+ * PENDING_LENGTH credits. A member is added or removed only after the keys waiting in its
+ * buffer are applied, so they cannot move another member with the same number.</p>
+ *
+ * <p>Points are only ever added, so a member is only moved when its points are above the points
+ * it is indexed with. Credits to the same member that finish out of order therefore leave the
+ * member at its highest, and latest, points.</p>
+ *
+ * @author mort
+ */
+class PointsIndex {
+  static final int BLOCK_LENGTH = 512;
+  static final int PENDING_LENGTH = 64;
+  private static final long NO_KEY = MemberEntryTable.NO_ENTRY; // keys are never negative
+
+  private long[][] blocks = new long[4][];
+  private int[] blockSizes = new int[4];
+  private long[] firstKeys = new long[4];
+  private int[] sizeTree = new int[5]; // Fenwick tree over blockSizes, from index 1
+  private int blockCount;
+  private int size;
+
+  private final MemberEntryTable memberKeys = new MemberEntryTable();
+  private final PendingKeys[] pending;
+  private final int pendingMask;
+
+  /**
+   * Creates an empty index, with at least four credit buffers per available processor.
+   */
+  PointsIndex() {
+    int wanted = Runtime.getRuntime().availableProcessors() * 4;
+    int count = Integer.highestOneBit(wanted);
+    if (count < wanted) {
+      count <<= 1;
+    }
+    pending = new PendingKeys[count];
+    for (int i = 0; i < count; i++) {
+      pending[i] = new PendingKeys();
+    }
+    pendingMask = count - 1;
+  }
+
+  /**
+   * Returns the key of a member in the order of the index. Most points give the lowest key.
+   */
+  private static long keyOf(int points, int memberNo) {
+    return (long) (Integer.MAX_VALUE - Math.max(points, 0)) << 32 | memberNo;
+  }
+
+  /**
+   * Adds a member with its current points, or moves a member already in the index to them.
+   *
+   * @param member the member to add.
+   */
+  void put(BonusMember member) {
+    PendingKeys buffer = bufferFor(member.getMemberNo());
+    synchronized (buffer) {
+      applyPending(buffer); // so no credit to a member it replaces is left to move it
+      synchronized (this) {
+        long key = keyOf(member.getPoints(), member.getMemberNo()); // read under the lock
+        long oldKey = memberKeys.put(key);
+        if (oldKey != NO_KEY) {
+          removeKey(oldKey);
+        }
+        insertKey(key);
+      }
+    }
+  }
+
+  /**
+   * Moves a member in the index up to its current points, if it is in the index and they are
+   * above the points it is indexed with. The move waits in the buffer of the member until the
+   * buffer is full or the index is read.
+   *
+   * @param member the member that was credited.
+   */
+  void raise(BonusMember member) {
+    long key = keyOf(member.getPoints(), member.getMemberNo());
+    PendingKeys buffer = bufferFor(member.getMemberNo());
+    synchronized (buffer) {
+      buffer.keys[buffer.count++] = key;
+      if (buffer.count == 1) {
+        buffer.waiting = true;
+      } else if (buffer.count == PENDING_LENGTH) {
+        applyPending(buffer);
+      }
+    }
+  }
+
+  /**
+   * Removes a member from the index.
+   *
+   * @param memberNo the member number of the member.
+   */
+  void remove(int memberNo) {
+    PendingKeys buffer = bufferFor(memberNo);
+    synchronized (buffer) {
+      applyPending(buffer); // so no credit to this member is left to move a later one
+      synchronized (this) {
+        long key = memberKeys.remove(memberNo);
+        if (key != NO_KEY) {
+          removeKey(key);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the rank of a member, 1 for the member with the most points.
+   *
+   * @param memberNo the member number of the member.
+   * @return the rank of the member, or -1 if it is not in the index.
+   */
+  int rankOf(int memberNo) {
+    applyAllPending();
+    synchronized (this) {
+      long key = memberKeys.get(memberNo);
+      return key == NO_KEY ? -1 : countBelow(key) + 1;
+    }
+  }
+
+  /**
+   * Counts the members with points from minPoints to maxPoints, both included.
+   *
+   * @param minPoints the lowest points.
+   * @param maxPoints the highest points.
+   * @return the number of members with points in the range.
+   */
+  int countBetween(int minPoints, int maxPoints) {
+    if (minPoints > maxPoints) {
+      return 0;
+    }
+    applyAllPending();
+    synchronized (this) {
+      return countAtLeast(minPoints) - countBelow(keyOf(maxPoints, 0));
+    }
+  }
+
+  /**
+   * Returns the member numbers of the members with points from minPoints to maxPoints, both
+   * included, most points first, skipping the first offset of them.
+   *
+   * @param minPoints the lowest points.
+   * @param maxPoints the highest points.
+   * @param offset    the number of members to skip.
+   * @param limit     the largest number of member numbers to return.
+   * @return the member numbers, in the order of the index.
+   */
+  int[] memberNosBetween(int minPoints, int maxPoints, int offset, int limit) {
+    if (minPoints > maxPoints) {
+      return new int[0];
+    }
+    applyAllPending();
+    synchronized (this) {
+      return readMemberNos(minPoints, maxPoints, offset, limit);
+    }
+  }
+
+  /**
+   * Reads the member numbers for memberNosBetween, under the lock of the index.
+   */
+  private int[] readMemberNos(int minPoints, int maxPoints, int offset, int limit) {
+    long first = countBelow(keyOf(maxPoints, 0)) + (long) offset;
+    long end = Math.min(countAtLeast(minPoints), first + limit);
+    int[] memberNos = new int[(int) Math.max(end - first, 0)];
+    if (memberNos.length == 0) {
+      return memberNos;
+    }
+    int block = blockAt((int) first);
+    int index = (int) first - countBefore(block);
+    for (int i = 0; i < memberNos.length; i++) {
+      if (index == blockSizes[block]) {
+        block++;
+        index = 0;
+      }
+      memberNos[i] = (int) blocks[block][index++];
+    }
+    return memberNos;
+  }
+
+  /**
+   * Returns the number of members in the index.
+   *
+   * @return the number of members.
+   */
+  synchronized int size() {
+    return size;
+  }
+
+  private PendingKeys bufferFor(int memberNo) {
+    int h = memberNo * 0x85EBCA6B;
+    return pending[(h ^ (h >>> 15)) & pendingMask];
+  }
+
+  /**
+   * Applies the keys waiting in every buffer, so a read sees every credit that was made before
+   * it.
+   */
+  private void applyAllPending() {
+    for (PendingKeys buffer : pending) {
+      if (buffer.waiting) {
+        synchronized (buffer) {
+          applyPending(buffer);
+        }
+      }
+    }
+  }
+
+  /**
+   * Applies the keys waiting in a buffer, whose lock the caller holds, and empties it.
+   */
+  private void applyPending(PendingKeys buffer) {
+    if (buffer.count == 0) {
+      return;
+    }
+    synchronized (this) {
+      for (int i = 0; i < buffer.count; i++) {
+        raiseKey(buffer.keys[i]);
+      }
+    }
+    buffer.count = 0;
+    buffer.waiting = false;
+  }
+
+  /**
+   * Moves a member up to a key, if it is in the index and the key is below the key it is
+   * indexed with.
+   */
+  private void raiseKey(long key) {
+    long oldKey = memberKeys.get((int) key);
+    if (oldKey == NO_KEY) {
+      return; // removed, or not yet added, in which case put reads the new points
+    }
+    if (key < oldKey) {
+      memberKeys.put(key);
+      moveKey(oldKey, key);
+    }
+  }
+
+  /**
+   * Counts the members with at least the specified points.
+   */
+  private int countAtLeast(int points) {
+    return points <= 0 ? size : countBelow(keyOf(points - 1, 0));
+  }
+
+  /**
+   * Counts the keys below the specified key.
+   */
+  private int countBelow(long key) {
+    if (blockCount == 0) {
+      return 0;
+    }
+    int block = blockOf(key);
+    return countBefore(block) + lowerBound(block, key);
+  }
+
+  /**
+   * Returns the block a key belongs in: the last block whose first key is at or below it, or the
+   * first block.
+   */
+  private int blockOf(long key) {
+    int low = 1;
+    int high = blockCount - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (firstKeys[middle] <= key) {
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    return low - 1;
+  }
+
+  /**
+   * Returns the position in a block of the first key at or above the specified key.
+   */
+  private int lowerBound(int block, long key) {
+    int position = Arrays.binarySearch(blocks[block], 0, blockSizes[block], key);
+    return position < 0 ? -position - 1 : position;
+  }
+
+  private void insertKey(long key) {
+    if (blockCount == 0) {
+      insertBlock(0, new long[BLOCK_LENGTH], 0);
+    }
+    int block = blockOf(key);
+    if (blockSizes[block] == BLOCK_LENGTH) {
+      splitBlock(block);
+      block = blockOf(key);
+    }
+    long[] keys = blocks[block];
+    int position = lowerBound(block, key);
+    System.arraycopy(keys, position, keys, position + 1, blockSizes[block] - position);
+    keys[position] = key;
+    blockSizes[block]++;
+    firstKeys[block] = keys[0];
+    addToSize(block, 1);
+    size++;
+  }
+
+  private void removeKey(long key) {
+    int block = blockOf(key);
+    long[] keys = blocks[block];
+    int position = lowerBound(block, key);
+    System.arraycopy(keys, position + 1, keys, position, blockSizes[block] - position - 1);
+    blockSizes[block]--;
+    addToSize(block, -1);
+    size--;
+    if (blockSizes[block] == 0) {
+      removeBlock(block);
+      return;
+    }
+    firstKeys[block] = keys[0];
+    if (block + 1 < blockCount
+        && blockSizes[block] + blockSizes[block + 1] <= BLOCK_LENGTH / 2) {
+      mergeBlocks(block);
+    } else if (block > 0 && blockSizes[block - 1] + blockSizes[block] <= BLOCK_LENGTH / 2) {
+      mergeBlocks(block - 1);
+    }
+  }
+
+  /**
+   * Replaces a key with a lower one, shifting the keys between them within the block if both
+   * belong in the same one. Credits are mostly small, so the new place is searched for by
+   * galloping back from the old one.
+   */
+  private void moveKey(long oldKey, long key) {
+    int block = blockOf(oldKey);
+    if (block > 0 && key < firstKeys[block]) {
+      removeKey(oldKey);
+      insertKey(key);
+      return;
+    }
+    long[] keys = blocks[block];
+    int from = lowerBound(block, oldKey);
+    int distance = 1;
+    while (distance <= from && keys[from - distance] > key) {
+      distance <<= 1;
+    }
+    int to = -Arrays.binarySearch(keys, Math.max(from - distance, 0), from, key) - 1;
+    System.arraycopy(keys, to, keys, to + 1, from - to);
+    keys[to] = key;
+    firstKeys[block] = keys[0];
+  }
+
+  /**
+   * Moves the upper half of a full block into a new block after it.
+   */
+  private void splitBlock(int block) {
+    long[] upper = new long[BLOCK_LENGTH];
+    int half = BLOCK_LENGTH / 2;
+    System.arraycopy(blocks[block], half, upper, 0, BLOCK_LENGTH - half);
+    blockSizes[block] = half;
+    insertBlock(block + 1, upper, BLOCK_LENGTH - half);
+  }
+
+  /**
+   * Moves the keys of the block after the specified one into it, and drops that block.
+   */
+  private void mergeBlocks(int block) {
+    System.arraycopy(blocks[block + 1], 0, blocks[block], blockSizes[block],
+        blockSizes[block + 1]);
+    blockSizes[block] += blockSizes[block + 1];
+    removeBlock(block + 1);
+  }
+
+  private void insertBlock(int block, long[] keys, int keyCount) {
+    if (blockCount == blocks.length) {
+      blocks = Arrays.copyOf(blocks, blockCount * 2);
+      blockSizes = Arrays.copyOf(blockSizes, blockCount * 2);
+      firstKeys = Arrays.copyOf(firstKeys, blockCount * 2);
+      sizeTree = new int[blockCount * 2 + 1];
+    }
+    int moved = blockCount - block;
+    System.arraycopy(blocks, block, blocks, block + 1, moved);
+    System.arraycopy(blockSizes, block, blockSizes, block + 1, moved);
+    System.arraycopy(firstKeys, block, firstKeys, block + 1, moved);
+    blocks[block] = keys;
+    blockSizes[block] = keyCount;
+    firstKeys[block] = keys[0];
+    blockCount++;
+    rebuildSizeTree();
+  }
+
+  private void removeBlock(int block) {
+    int moved = blockCount - block - 1;
+    System.arraycopy(blocks, block + 1, blocks, block, moved);
+    System.arraycopy(blockSizes, block + 1, blockSizes, block, moved);
+    System.arraycopy(firstKeys, block + 1, firstKeys, block, moved);
+    blockCount--;
+    blocks[blockCount] = null;
+    rebuildSizeTree();
+  }
+
+  /**
+   * Fills the Fenwick tree from the block sizes, after blocks were added or removed.
+   */
+  private void rebuildSizeTree() {
+    Arrays.fill(sizeTree, 0);
+    for (int i = 1; i <= blockCount; i++) {
+      sizeTree[i] += blockSizes[i - 1];
+      int parent = i + (i & -i);
+      if (parent <= blockCount) {
+        sizeTree[parent] += sizeTree[i];
+      }
+    }
+  }
+
+  private void addToSize(int block, int delta) {
+    for (int i = block + 1; i <= blockCount; i += i & -i) {
+      sizeTree[i] += delta;
+    }
+  }
+
+  /**
+   * Counts the keys in the blocks before the specified block.
+   */
+  private int countBefore(int block) {
+    int count = 0;
+    for (int i = block; i > 0; i -= i & -i) {
+      count += sizeTree[i];
+    }
+    return count;
+  }
+
+  /**
+   * Returns the block holding the key at a position, counting from 0, which must be below size.
+   */
+  private int blockAt(int position) {
+    int block = 0;
+    int remaining = position;
+    for (int step = Integer.highestOneBit(blockCount); step > 0; step >>>= 1) {
+      if (block + step <= blockCount && sizeTree[block + step] <= remaining) {
+        block += step;
+        remaining -= sizeTree[block];
+      }
+    }
+    return block;
+  }
+
+  /**
+   * The keys of credited members waiting to be applied to the index, guarded by the buffer
+   * itself. waiting is read without the lock, to skip empty buffers.
+   */
+  private static class PendingKeys {
+    private final long[] keys = new long[PENDING_LENGTH];
+    private int count;
+    private volatile boolean waiting;
+  }
+}
@@ -0,0 +1,54 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+/**
+ * A reusable holder of the outcome of MemberArchive.tryFindPoints: a result code and, if the
+ * member was found, its points. One holder can be passed to any number of lookups, so a
+ * thread checking many logins allocates nothing per login. A holder must not be shared between
+ * threads.
+ *
+ * @author mort
+ */
+public class PointsResult {
+  private ResultCode status = ResultCode.NO_MEMBER;
+  private int points;
+
+  /**
+   * Returns the outcome of the latest lookup.
+   *
+   * @return the result code of the latest lookup.
+   */
+  public ResultCode getStatus() {
+    return status;
+  }
+
+  /**
+   * Returns the points of the member found by the latest lookup.
+   *
+   * @return the points of the member.
+   * @throws IllegalStateException if the latest lookup did not find the member.
+   */
+  public int getPoints() {
+    if (status != ResultCode.FOUND) {
+      throw new IllegalStateException("No points, the lookup failed with " + status);
+    }
+    return points;
+  }
+
+  /**
+   * Stores the outcome of a lookup.
+   *
+   * @param status the result code.
+   * @param points the points of the member, or 0 if it was not found.
+   * @return this holder.
+   */
+  PointsResult set(ResultCode status, int points) {
+    this.status = status;
+    this.points = points;
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return "PointsResult{status=" + status + ", points=" + points + "}";
+  }
+}
@@ -0,0 +1,18 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+/**
+ * The outcome of a member operation that reports failures as codes rather than exceptions,
+ * e.g. MemberArchive.tryFindPoints and MemberArchive.tryRegisterPoints.
+ *
+ * @author mort
+ */
+public enum ResultCode {
+  /** The member was found, and the operation was done. */
+  FOUND,
+  /** No member has the member number. */
+  NO_MEMBER,
+  /** The password does not match the member's password. */
+  BAD_PASSWORD,
+  /** The points to credit were negative. */
+  NEGATIVE_POINTS
+}
@@ -4,6 +4,7 @@ import java.time.LocalDate;
 
 /**
  * Represents a Silver level Bonus member.
+ * Points registered on the member are factored by the Silver level bonus multiplier.
  * @author mort
  */
 public class SilverMember extends no.ntnu.iir.olavval.oblig2.model.BonusMember {
@@ -19,27 +20,9 @@ public class SilverMember extends no.ntnu.iir.olavval.oblig2.model.BonusMember {
    * @param points       current points held by member.
    */
   public SilverMember(int memberNo, Personals personals, LocalDate enrolledDate, int points) {
-    super(memberNo, personals, enrolledDate);
+    // Transfers existing points from old member to the new member,
+    // without factoring by FACTOR_SILVER.
+    super(memberNo, personals, enrolledDate, points, MembershipLevel.SILVER);
 
-    // Transfers existing points from old member to the new member.
-    // Direct call to super.registerPoints avoids factoring by FACTOR_SILVER
-    super.point = points;
-
-  }
-
-
-  @Override
-  public String getMembershipLevel() {
-    return "Silver";
-  }
-
-  /**
-   * Adds points to this Silver level Bonus member, factoring in the Silver level bonus multiplier.
-   *
-   * @param points Number of points to be added.
-   */
-  @Override
-  public void registerPoints(int points) {
-    super.point += ((int) (FACTOR_SILVER * points));
   }
 }
@@ -0,0 +1,413 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Maps sorted keys, e.g. names or enrollment days, to the member numbers of the members with
+ * each key, for the secondary indexes of a MemberArchive.
+ *
+ * <p>The keys are kept in a ConcurrentSkipListMap, and the member numbers of each key in a
+ * sorted int array, so adding or removing a member is a binary search and a shift. A key costs
+ * its skip-list node, its entry and its array, about 100 bytes besides the key itself for a key
+ * with up to four members, and each further member of a key costs four bytes. A key with more
+ * than BLOCK_LENGTH members is kept in blocks of at most BLOCK_LENGTH, as in PointsIndex, so a
+ * change shifts one block, however many members share the key. The member numbers of each key
+ * are guarded by its entry, and the index is safe for concurrent callers.</p>
+ *
+ * @param <K> the type of the keys.
+ * @author mort
+ */
+class SortedMemberIndex<K extends Comparable<K>> {
+  /**
+   * Receives the member numbers found in the index.
+   *
+   * @param <K> the type of the keys.
+   */
+  interface Visitor<K> {
+    /**
+     * Receives a member number found under a key.
+     *
+     * @param key      the key.
+     * @param memberNo the member number of a member with that key.
+     * @return true to go on, false to stop.
+     */
+    boolean visit(K key, int memberNo);
+  }
+
+  static final int BLOCK_LENGTH = 512;
+
+  private final ConcurrentSkipListMap<K, Postings> entries = new ConcurrentSkipListMap<>();
+
+  /**
+   * Adds a member number under a key, if it is not there already.
+   *
+   * @param key      the key.
+   * @param memberNo the member number.
+   */
+  void add(K key, int memberNo) {
+    while (true) {
+      Postings postings = entries.computeIfAbsent(key, k -> new Postings());
+      synchronized (postings) {
+        if (!postings.dropped) {
+          postings.add(memberNo);
+          return;
+        }
+      } // the last member of the key was removed, and a new entry is needed
+    }
+  }
+
+  /**
+   * Removes a member number from under a key, if it is there.
+   *
+   * @param key      the key.
+   * @param memberNo the member number.
+   */
+  void remove(K key, int memberNo) {
+    Postings postings = entries.get(key);
+    if (postings == null) {
+      return;
+    }
+    synchronized (postings) {
+      if (postings.remove(memberNo) && postings.size == 0) {
+        postings.dropped = true;
+        entries.remove(key, postings);
+      }
+    }
+  }
+
+  /**
+   * Passes the member numbers under each key from from, inclusive, to to, exclusive, to the
+   * visitor, in key order, and by member number within a key, until the visitor stops.
+   *
+   * @param from    the lowest key.
+   * @param to      the key to stop before, or null to go on to the end.
+   * @param visitor the visitor to pass the member numbers to.
+   * @return false if the visitor stopped, true otherwise.
+   */
+  boolean forEachBetween(K from, K to, Visitor<K> visitor) {
+    for (Map.Entry<K, Postings> entry : range(from, to).entrySet()) {
+      if (!visit(entry.getKey(), entry.getValue(), visitor)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Passes the member numbers under a key to the visitor, by member number, until the visitor
+   * stops.
+   *
+   * @param key     the key.
+   * @param visitor the visitor to pass the member numbers to.
+   * @return false if the visitor stopped, true otherwise.
+   */
+  boolean forEach(K key, Visitor<K> visitor) {
+    Postings postings = entries.get(key);
+    return postings == null || visit(key, postings, visitor);
+  }
+
+  /**
+   * Passes the member numbers of a key to the visitor a block at a time. Each block is copied
+   * under the lock of the key and visited after it is released, so the visitor may add or remove
+   * members, and does not hold up other callers. The next block is found by the last member
+   * number visited, so member numbers moved by such changes are neither skipped nor repeated.
+   */
+  private boolean visit(K key, Postings postings, Visitor<K> visitor) {
+    int from = Integer.MIN_VALUE;
+    while (true) {
+      int[] memberNos;
+      synchronized (postings) {
+        memberNos = postings.copyFrom(from);
+      }
+      for (int memberNo : memberNos) {
+        if (!visitor.visit(key, memberNo)) {
+          return false;
+        }
+      }
+      if (memberNos.length == 0 || memberNos[memberNos.length - 1] == Integer.MAX_VALUE) {
+        return true;
+      }
+      from = memberNos[memberNos.length - 1] + 1;
+    }
+  }
+
+  /**
+   * Counts the member numbers under the keys from from, inclusive, to to, exclusive.
+   * Takes time in proportion to the number of keys in the range, not the number of members.
+   *
+   * @param from the lowest key.
+   * @param to   the key to stop before, or null to go on to the end.
+   * @return the number of member numbers under the keys.
+   */
+  long count(K from, K to) {
+    long count = 0;
+    for (Postings postings : range(from, to).values()) {
+      synchronized (postings) {
+        count += postings.size;
+      }
+    }
+    return count;
+  }
+
+  private ConcurrentNavigableMap<K, Postings> range(K from, K to) {
+    if (to == null) {
+      return entries.tailMap(from);
+    }
+    return from.compareTo(to) < 0 ? entries.subMap(from, to) : entries.subMap(from, from);
+  }
+
+  /**
+   * Returns the lowest key at or above the specified key.
+   *
+   * @param key the key.
+   * @return the lowest key at or above key, or null if there is none.
+   */
+  K ceilingKey(K key) {
+    return entries.ceilingKey(key);
+  }
+
+  /**
+   * Returns the lowest key above the specified key.
+   *
+   * @param key the key.
+   * @return the lowest key above key, or null if there is none.
+   */
+  K higherKey(K key) {
+    return entries.higherKey(key);
+  }
+
+  /**
+   * The member numbers of one key, sorted. They are kept in one array until there are more than
+   * BLOCK_LENGTH of them, and then in Blocks, so the many keys with a few members cost one small
+   * array each. Guarded by the entry itself. An entry whose last member is removed is dropped
+   * from the map, and is never added to again.
+   */
+  private static class Postings {
+    private int[] memberNos = new int[4]; // null while the key is kept in blocks
+    private Blocks blocks; // null while the key fits in one array
+    private int size;
+    private boolean dropped;
+
+    void add(int memberNo) {
+      if (blocks != null) {
+        if (blocks.add(memberNo)) {
+          size++;
+        }
+        return;
+      }
+      int position = Arrays.binarySearch(memberNos, 0, size, memberNo);
+      if (position >= 0) {
+        return;
+      }
+      if (size == memberNos.length) {
+        if (size == BLOCK_LENGTH) {
+          blocks = new Blocks(memberNos);
+          memberNos = null;
+          add(memberNo);
+          return;
+        }
+        memberNos = Arrays.copyOf(memberNos, Math.min(size * 2, BLOCK_LENGTH));
+      }
+      position = -position - 1;
+      System.arraycopy(memberNos, position, memberNos, position + 1, size - position);
+      memberNos[position] = memberNo;
+      size++;
+    }
+
+    boolean remove(int memberNo) {
+      if (blocks != null) {
+        if (!blocks.remove(memberNo)) {
+          return false;
+        }
+        size--;
+        if (blocks.blockCount == 1) { // back to one array
+          memberNos = blocks.blocks[0];
+          blocks = null;
+        }
+        return true;
+      }
+      int position = Arrays.binarySearch(memberNos, 0, size, memberNo);
+      if (position < 0) {
+        return false;
+      }
+      System.arraycopy(memberNos, position + 1, memberNos, position, size - position - 1);
+      size--;
+      return true;
+    }
+
+    /**
+     * Returns a copy of the member numbers at or above from, or of as many of them as are in
+     * one block. Empty once the key has none left.
+     */
+    int[] copyFrom(int from) {
+      if (blocks != null) {
+        return blocks.copyFrom(from);
+      }
+      int position = Arrays.binarySearch(memberNos, 0, size, from);
+      position = position < 0 ? -position - 1 : position;
+      return Arrays.copyOfRange(memberNos, position, size);
+    }
+  }
+
+  /**
+   * The member numbers of a key with more than BLOCK_LENGTH members, sorted, in blocks of at
+   * most BLOCK_LENGTH that are never empty, as in PointsIndex. Adding or removing a member is a
+   * binary search and a shift within one block, however many members share the key.
+   */
+  private static class Blocks {
+    private int[][] blocks = new int[4][];
+    private int[] blockSizes = new int[4];
+    private int[] firstNos = new int[4];
+    private int blockCount = 1;
+
+    /**
+     * Starts the blocks from a full array of member numbers, which becomes the first block.
+     */
+    Blocks(int[] memberNos) {
+      blocks[0] = memberNos;
+      blockSizes[0] = memberNos.length;
+      firstNos[0] = memberNos[0];
+    }
+
+    /**
+     * Adds a member number, if it is not there already.
+     *
+     * @return true if the member number was added.
+     */
+    boolean add(int memberNo) {
+      int block = blockOf(memberNo);
+      int position = Arrays.binarySearch(blocks[block], 0, blockSizes[block], memberNo);
+      if (position >= 0) {
+        return false;
+      }
+      if (blockSizes[block] == blocks[block].length) {
+        if (blocks[block].length < BLOCK_LENGTH) {
+          blocks[block] = Arrays.copyOf(blocks[block],
+              Math.min(blocks[block].length * 2, BLOCK_LENGTH));
+        } else {
+          splitBlock(block);
+          return add(memberNo);
+        }
+      }
+      position = -position - 1;
+      int[] memberNos = blocks[block];
+      System.arraycopy(memberNos, position, memberNos, position + 1,
+          blockSizes[block] - position);
+      memberNos[position] = memberNo;
+      blockSizes[block]++;
+      firstNos[block] = memberNos[0];
+      return true;
+    }
+
+    /**
+     * Removes a member number, if it is there. Blocks that fit in half a block together are
+     * merged, so a key that shrinks back to BLOCK_LENGTH / 2 ends up in one block.
+     *
+     * @return true if the member number was removed.
+     */
+    boolean remove(int memberNo) {
+      int block = blockOf(memberNo);
+      int[] memberNos = blocks[block];
+      int position = Arrays.binarySearch(memberNos, 0, blockSizes[block], memberNo);
+      if (position < 0) {
+        return false;
+      }
+      System.arraycopy(memberNos, position + 1, memberNos, position,
+          blockSizes[block] - position - 1);
+      blockSizes[block]--;
+      firstNos[block] = memberNos[0];
+      if (blockSizes[block] == 0 && blockCount > 1) {
+        removeBlock(block);
+      } else if (block + 1 < blockCount
+          && blockSizes[block] + blockSizes[block + 1] <= BLOCK_LENGTH / 2) {
+        mergeBlocks(block);
+      } else if (block > 0 && blockSizes[block - 1] + blockSizes[block] <= BLOCK_LENGTH / 2) {
+        mergeBlocks(block - 1);
+      }
+      return true;
+    }
+
+    /**
+     * Returns a copy of the member numbers at or above from in the block that from belongs in,
+     * or in the block after it if there are none there.
+     */
+    int[] copyFrom(int from) {
+      int block = blockOf(from);
+      int position = Arrays.binarySearch(blocks[block], 0, blockSizes[block], from);
+      position = position < 0 ? -position - 1 : position;
+      if (position == blockSizes[block] && block + 1 < blockCount) {
+        block++;
+        position = 0;
+      }
+      return Arrays.copyOfRange(blocks[block], position, blockSizes[block]);
+    }
+
+    /**
+     * Returns the block a member number belongs in: the last block whose first member number
+     * is at or below it, or the first block.
+     */
+    private int blockOf(int memberNo) {
+      int low = 1;
+      int high = blockCount - 1;
+      while (low <= high) {
+        int middle = (low + high) >>> 1;
+        if (firstNos[middle] <= memberNo) {
+          low = middle + 1;
+        } else {
+          high = middle - 1;
+        }
+      }
+      return low - 1;
+    }
+
+    /**
+     * Moves the upper half of a full block into a new block after it.
+     */
+    private void splitBlock(int block) {
+      int half = BLOCK_LENGTH / 2;
+      int[] upper = new int[BLOCK_LENGTH];
+      System.arraycopy(blocks[block], half, upper, 0, BLOCK_LENGTH - half);
+      blockSizes[block] = half;
+      if (blockCount == blocks.length) {
+        blocks = Arrays.copyOf(blocks, blockCount * 2);
+        blockSizes = Arrays.copyOf(blockSizes, blockCount * 2);
+        firstNos = Arrays.copyOf(firstNos, blockCount * 2);
+      }
+      int moved = blockCount - block - 1;
+      System.arraycopy(blocks, block + 1, blocks, block + 2, moved);
+      System.arraycopy(blockSizes, block + 1, blockSizes, block + 2, moved);
+      System.arraycopy(firstNos, block + 1, firstNos, block + 2, moved);
+      blocks[block + 1] = upper;
+      blockSizes[block + 1] = BLOCK_LENGTH - half;
+      firstNos[block + 1] = upper[0];
+      blockCount++;
+    }
+
+    /**
+     * Moves the member numbers of the block after the specified one into it, and drops that
+     * block.
+     */
+    private void mergeBlocks(int block) {
+      int merged = blockSizes[block] + blockSizes[block + 1];
+      if (blocks[block].length < merged) {
+        blocks[block] = Arrays.copyOf(blocks[block], BLOCK_LENGTH);
+      }
+      System.arraycopy(blocks[block + 1], 0, blocks[block], blockSizes[block],
+          blockSizes[block + 1]);
+      blockSizes[block] = merged;
+      removeBlock(block + 1);
+    }
+
+    private void removeBlock(int block) {
+      int moved = blockCount - block - 1;
+      System.arraycopy(blocks, block + 1, blocks, block, moved);
+      System.arraycopy(blockSizes, block + 1, blockSizes, block, moved);
+      System.arraycopy(firstNos, block + 1, firstNos, block, moved);
+      blockCount--;
+      blocks[blockCount] = null;
+    }
+  }
+}
@@ -0,0 +1,144 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A thread safe member store. Members are spread over a number of stripes by member number,
+ * and each stripe is an OpenAddressingMemberStore guarded by its own lock. Threads working on
+ * members in different stripes never wait for each other.
+ *
+ * <p>Iteration is weakly consistent: each stripe is copied under its lock when the iterator
+ * reaches it, so the iterator never fails, but may or may not see changes made after it was
+ * created.</p>
+ *
+ * @author mort
+ */
+public class StripedMemberStore implements MemberStore {
+  private final OpenAddressingMemberStore[] stripes;
+  private final int stripeMask;
+
+  /**
+   * Creates an empty member store with four stripes per available processor.
+   */
+  public StripedMemberStore() {
+    this(Runtime.getRuntime().availableProcessors() * 4);
+  }
+
+  /**
+   * Creates an empty member store with at least the specified number of stripes.
+   * The number of stripes is rounded up to a power of two.
+   *
+   * @param stripeCount the least number of stripes.
+   * @throws IllegalArgumentException if stripeCount is not positive.
+   */
+  public StripedMemberStore(int stripeCount) {
+    if (stripeCount <= 0 || stripeCount > (1 << 16)) {
+      throw new IllegalArgumentException("Invalid stripe count: " + stripeCount);
+    }
+    int size = Integer.highestOneBit(stripeCount);
+    if (size < stripeCount) {
+      size <<= 1;
+    }
+    this.stripes = new OpenAddressingMemberStore[size];
+    for (int i = 0; i < size; i++) {
+      stripes[i] = new OpenAddressingMemberStore();
+    }
+    this.stripeMask = size - 1;
+  }
+
+  @Override
+  public BonusMember get(int memberNo) {
+    OpenAddressingMemberStore stripe = stripeFor(memberNo);
+    synchronized (stripe) {
+      return stripe.get(memberNo);
+    }
+  }
+
+  @Override
+  public boolean contains(int memberNo) {
+    OpenAddressingMemberStore stripe = stripeFor(memberNo);
+    synchronized (stripe) {
+      return stripe.contains(memberNo);
+    }
+  }
+
+  @Override
+  public boolean putIfAbsent(BonusMember member) {
+    if (member == null) {
+      return false;
+    }
+    OpenAddressingMemberStore stripe = stripeFor(member.getMemberNo());
+    synchronized (stripe) {
+      return stripe.putIfAbsent(member);
+    }
+  }
+
+  @Override
+  public boolean replace(BonusMember oldMember, BonusMember replacementMember) {
+    if (oldMember == null) {
+      return false;
+    }
+    OpenAddressingMemberStore stripe = stripeFor(oldMember.getMemberNo());
+    synchronized (stripe) {
+      return stripe.replace(oldMember, replacementMember);
+    }
+  }
+
+  @Override
+  public BonusMember remove(int memberNo) {
+    OpenAddressingMemberStore stripe = stripeFor(memberNo);
+    synchronized (stripe) {
+      return stripe.remove(memberNo);
+    }
+  }
+
+  @Override
+  public int size() {
+    int size = 0;
+    for (OpenAddressingMemberStore stripe : stripes) {
+      synchronized (stripe) {
+        size += stripe.size();
+      }
+    }
+    return size;
+  }
+
+  @Override
+  public Iterator<BonusMember> iterator() {
+    return new Iterator<BonusMember>() {
+      private int nextStripe = 0;
+      private BonusMember[] current = new BonusMember[0];
+      private int position = 0;
+
+      @Override
+      public boolean hasNext() {
+        while (position >= current.length && nextStripe < stripes.length) {
+          OpenAddressingMemberStore stripe = stripes[nextStripe++];
+          synchronized (stripe) {
+            current = new BonusMember[stripe.size()];
+            int i = 0;
+            for (BonusMember member : stripe) {
+              current[i++] = member;
+            }
+          }
+          position = 0;
+        }
+        return position < current.length;
+      }
+
+      @Override
+      public BonusMember next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return current[position++];
+      }
+    };
+  }
+
+  private OpenAddressingMemberStore stripeFor(int memberNo) {
+    int h = memberNo * 0x85EBCA6B; // different mix than the stripes use for their slots
+    return stripes[(h ^ (h >>> 15)) & stripeMask];
+  }
+}
@@ -0,0 +1,132 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.util.Arrays;
+
+/**
+ * Partitions the members of a MemberArchive by membership level, so the members of one level
+ * are counted in constant time, and listed without looking at the members of the other levels.
+ *
+ * <p>Each level keeps the member numbers of its members in a dense int array, in no particular
+ * order. A member is removed by moving the last member number of its level into its place, so
+ * the place of each member is kept in a MemberEntryTable. Every method is synchronized, and a
+ * member moves from one level to another in one step, so it is never seen in two levels, or in
+ * none.</p>
+ *
+ * @author mort
+ */
+class TierIndex {
+  private static final MembershipLevel[] LEVELS = MembershipLevel.values();
+  private static final int LEVEL_BITS = 2; // room for the levels, between number and place
+
+  private final int[][] memberNos = new int[LEVELS.length][];
+  private final int[] sizes = new int[LEVELS.length];
+  private final MemberEntryTable places = new MemberEntryTable();
+
+  /**
+   * Creates an empty index.
+   */
+  TierIndex() {
+    for (int i = 0; i < LEVELS.length; i++) {
+      memberNos[i] = new int[16];
+    }
+  }
+
+  /**
+   * Adds a member at its current level, or moves a member already in the index to it.
+   *
+   * @param member the member to add.
+   */
+  synchronized void put(BonusMember member) {
+    long entry = places.get(member.getMemberNo());
+    if (entry != MemberEntryTable.NO_ENTRY) {
+      detach(entry);
+    }
+    attach(member.getMemberNo(), member.getLevel().ordinal()); // read under the lock
+  }
+
+  /**
+   * Moves a member in the index to its current level, if it is in the index. Called after the
+   * member is upgraded.
+   *
+   * @param member the member that was upgraded.
+   */
+  synchronized void update(BonusMember member) {
+    long entry = places.get(member.getMemberNo());
+    int level = member.getLevel().ordinal();
+    if (entry != MemberEntryTable.NO_ENTRY && levelOf(entry) != level) {
+      detach(entry);
+      attach(member.getMemberNo(), level);
+    }
+  }
+
+  /**
+   * Removes a member from the index.
+   *
+   * @param memberNo the member number of the member.
+   */
+  synchronized void remove(int memberNo) {
+    long entry = places.remove(memberNo);
+    if (entry != MemberEntryTable.NO_ENTRY) {
+      detach(entry);
+    }
+  }
+
+  /**
+   * Returns the number of members at a level.
+   *
+   * @param level the membership level.
+   * @return the number of members at that level.
+   */
+  synchronized int count(MembershipLevel level) {
+    return sizes[level.ordinal()];
+  }
+
+  /**
+   * Returns the member numbers of the members at a level, as they are at the time of the call.
+   *
+   * @param level the membership level.
+   * @return a copy of the member numbers, in no particular order.
+   */
+  synchronized int[] memberNos(MembershipLevel level) {
+    return Arrays.copyOf(memberNos[level.ordinal()], sizes[level.ordinal()]);
+  }
+
+  private static long entryOf(int memberNo, int level, int place) {
+    return (long) place << (32 + LEVEL_BITS) | (long) level << 32 | memberNo;
+  }
+
+  private static int levelOf(long entry) {
+    return (int) (entry >>> 32) & ((1 << LEVEL_BITS) - 1);
+  }
+
+  private static int placeOf(long entry) {
+    return (int) (entry >>> (32 + LEVEL_BITS));
+  }
+
+  /**
+   * Appends a member number to a level.
+   */
+  private void attach(int memberNo, int level) {
+    if (sizes[level] == memberNos[level].length) {
+      memberNos[level] = Arrays.copyOf(memberNos[level], sizes[level] * 2);
+    }
+    int place = sizes[level]++;
+    memberNos[level][place] = memberNo;
+    places.put(entryOf(memberNo, level, place));
+  }
+
+  /**
+   * Takes a member number out of its level, moving the last member number of the level into
+   * its place. The entry of the member itself is left for the caller to replace or remove.
+   */
+  private void detach(long entry) {
+    int level = levelOf(entry);
+    int place = placeOf(entry);
+    int last = --sizes[level];
+    if (place != last) {
+      int movedNo = memberNos[level][last];
+      memberNos[level][place] = movedNo;
+      places.put(entryOf(movedNo, level, place));
+    }
+  }
+}
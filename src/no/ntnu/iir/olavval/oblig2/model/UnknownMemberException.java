@@ -0,0 +1,49 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+/**
+ * Thrown by MemberArchive.registerPoints(int, int) when no member has the member number.
+ *
+ * <p>Credits for unknown members are routine, e.g. for closed accounts, so the exception is made
+ * cheaply: it has no stack trace, and its message is only built if it is asked for. It is a
+ * NullPointerException, which registerPoints threw for unknown members before.</p>
+ *
+ * @author mort
+ */
+public class UnknownMemberException extends NullPointerException {
+  private static final long serialVersionUID = 1L;
+
+  private final int memberNo;
+
+  /**
+   * Creates an exception for the specified member number.
+   *
+   * @param memberNo the member number with no member.
+   */
+  public UnknownMemberException(int memberNo) {
+    this.memberNo = memberNo;
+  }
+
+  /**
+   * Returns the member number with no member.
+   *
+   * @return the unknown member number.
+   */
+  public int getMemberNo() {
+    return memberNo;
+  }
+
+  @Override
+  public String getMessage() {
+    return "No member registered with ID " + memberNo;
+  }
+
+  /**
+   * Leaves the stack trace empty, which is what makes the exception cheap to create.
+   *
+   * @return this exception.
+   */
+  @Override
+  public synchronized Throwable fillInStackTrace() {
+    return this;
+  }
+}
@@ -0,0 +1,72 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+/**
+ * A summary of an upgrade run over the member archive, counting how many members were checked
+ * and how many were promoted to each membership level.
+ *
+ * @author mort
+ */
+public class UpgradeSummary {
+  private int membersChecked;
+  private int silverUpgrades;
+  private int goldUpgrades;
+
+  /**
+   * Returns the number of members checked for upgrade eligibility.
+   *
+   * @return the number of members checked.
+   */
+  public int getMembersChecked() {
+    return membersChecked;
+  }
+
+  /**
+   * Returns the number of members promoted to Silver level.
+   *
+   * @return the number of members promoted to Silver level.
+   */
+  public int getSilverUpgrades() {
+    return silverUpgrades;
+  }
+
+  /**
+   * Returns the number of members promoted to Gold level, including members promoted straight
+   * from Basic level.
+   *
+   * @return the number of members promoted to Gold level.
+   */
+  public int getGoldUpgrades() {
+    return goldUpgrades;
+  }
+
+  /**
+   * Returns the total number of members promoted.
+   *
+   * @return the total number of members promoted.
+   */
+  public int getTotalUpgrades() {
+    return silverUpgrades + goldUpgrades;
+  }
+
+  void countChecked(int members) {
+    membersChecked += members;
+  }
+
+  /**
+   * Counts one promotion to the specified membership level. Null counts as no promotion.
+   */
+  void countUpgrade(MembershipLevel newLevel) {
+    if (newLevel == MembershipLevel.SILVER) {
+      silverUpgrades++;
+    } else if (newLevel == MembershipLevel.GOLD) {
+      goldUpgrades++;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "UpgradeSummary{membersChecked=" + membersChecked
+        + ", silverUpgrades=" + silverUpgrades
+        + ", goldUpgrades=" + goldUpgrades + "}";
+  }
+}
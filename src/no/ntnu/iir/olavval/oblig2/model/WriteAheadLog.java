@@ -0,0 +1,577 @@
+package no.ntnu.iir.olavval.oblig2.model;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of the changes made to a MemberArchive, so that the archive can be
+ * rebuilt after a restart by replaying the log.
+ *
+ * <p>Appending a record only copies it into a buffer in memory, and returns a ticket.
+ * A writer thread writes the buffered records to the file and forces them to disk as one batch,
+ * so many callers share each force. A caller that needs its change to be durable waits with
+ * awaitDurable(ticket). The batch window is how long the writer waits for more records after
+ * the first record of a batch arrives; a longer window gives fewer and larger forces.</p>
+ *
+ * <p>The log is kept in a directory as a sequence of numbered segment files. roll starts a new
+ * segment, so that the segments before it can be deleted once a snapshot of the archive
+ * covers them, see MemberArchive.checkpoint.</p>
+ *
+ * <p>Each record is written as its byte count and CRC32 followed by the record itself.
+ * When the log is opened, a record that was only partly written before a crash is found by its
+ * CRC32 and cut off, along with anything after it.</p>
+ *
+ * <p>Replaying a record more than once, or onto an archive that already holds the change,
+ * leaves the archive as it was: credits are logged as the member's points after the credit,
+ * and levels only move up.</p>
+ *
+ * @author mort
+ */
+public class WriteAheadLog implements Closeable {
+  private static final byte MEMBER = 1;
+  private static final byte CREDIT = 2;
+  private static final byte UPGRADE = 3;
+  private static final byte REMOVE = 4;
+
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".wal";
+  private static final int RECORD_HEADER = 8; // byte count and CRC32
+  private static final int MAX_RECORD_SIZE = 1 << 20;
+  private static final MembershipLevel[] LEVELS = MembershipLevel.values();
+
+  private final Path directory;
+  private final long batchWindowNanos;
+  private final long lastSegmentAtOpen;
+  private final long validLength; // bytes of whole records in the last segment when opened
+  private final Object lock = new Object();
+  private final CRC32 crc = new CRC32(); // guarded by lock
+  private final Thread writer;
+
+  private FileChannel channel; // only used by the writer once it has started
+  private ByteBuffer pending = ByteBuffer.allocate(64 * 1024); // guarded by lock
+  private ByteBuffer writing = ByteBuffer.allocate(64 * 1024); // only used by the writer
+  private long appendedTickets; // guarded by lock
+  private long durableTickets; // guarded by lock
+  private long batches; // guarded by lock
+  private long segment; // the segment being written to, guarded by lock
+  private int rollPosition = -1; // where in pending the next segment starts, guarded by lock
+  private boolean closed; // guarded by lock
+  private IOException failure; // guarded by lock
+
+  /**
+   * Opens the log kept in the specified directory, or starts an empty log if the directory
+   * holds none. The directory is created if it does not exist.
+   * Records after the last whole record are cut off.
+   *
+   * @param directory        the directory holding the log segments.
+   * @param batchWindowNanos how long, in nanoseconds, to collect records before each force.
+   * @throws IOException if the log cannot be opened.
+   * @throws IllegalArgumentException if batchWindowNanos is negative.
+   */
+  public WriteAheadLog(Path directory, long batchWindowNanos) throws IOException {
+    if (batchWindowNanos < 0) {
+      throw new IllegalArgumentException("Batch window cannot be negative: " + batchWindowNanos);
+    }
+    this.directory = Files.createDirectories(directory);
+    this.batchWindowNanos = batchWindowNanos;
+    List<Long> segments = listSegments();
+    this.segment = segments.isEmpty() ? 1 : segments.get(segments.size() - 1);
+    this.lastSegmentAtOpen = segment;
+    this.channel = FileChannel.open(segmentFile(segment), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.validLength = readRecords(channel, channel.size(), null);
+    channel.truncate(validLength);
+    channel.position(validLength);
+    this.writer = new Thread(this::writeBatches, "WriteAheadLog writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Returns the directory holding the log segments.
+   *
+   * @return the directory holding the log segments.
+   */
+  public Path getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Returns the number of the segment records are appended to.
+   *
+   * @return the number of the current segment.
+   */
+  public long getSegment() {
+    synchronized (lock) {
+      return segment;
+    }
+  }
+
+  /**
+   * Returns the number of batches forced to disk since the log was opened.
+   *
+   * @return the number of batches forced to disk.
+   */
+  public long getBatchCount() {
+    synchronized (lock) {
+      return batches;
+    }
+  }
+
+  /**
+   * Waits until the record with the specified ticket, and every record before it, is on disk.
+   *
+   * @param ticket the ticket returned when the record was appended.
+   * @throws UncheckedIOException if the log could not be written.
+   */
+  public void awaitDurable(long ticket) {
+    synchronized (lock) {
+      boolean interrupted = false;
+      while (durableTickets < ticket && failure == null) {
+        try {
+          lock.wait();
+        } catch (InterruptedException e) {
+          interrupted = true; // the caller's change is already made, so keep waiting for it
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      if (durableTickets < ticket) {
+        throw new UncheckedIOException("Could not write to the log.", failure);
+      }
+    }
+  }
+
+  /**
+   * Waits until every record appended so far is on disk.
+   *
+   * @throws UncheckedIOException if the log could not be written.
+   */
+  public void sync() {
+    long ticket;
+    synchronized (lock) {
+      ticket = appendedTickets;
+    }
+    awaitDurable(ticket);
+  }
+
+  /**
+   * Starts a new segment. Every record appended before the call is in an earlier segment,
+   * and every record appended after it is in the new segment or a later one.
+   * Returns once the records before the new segment are on disk.
+   *
+   * @return the number of the new segment.
+   * @throws UncheckedIOException if the log could not be written.
+   * @throws IllegalStateException if the log is closed.
+   */
+  public long roll() {
+    synchronized (lock) {
+      boolean interrupted = false;
+      while (rollPosition >= 0 && failure == null) { // another roll is waiting for the writer
+        interrupted |= waitForWriter();
+      }
+      if (closed) {
+        throw new IllegalStateException("The log is closed.");
+      }
+      long newSegment = segment + 1;
+      if (failure == null) {
+        rollPosition = pending.position();
+        lock.notifyAll();
+      }
+      while (segment < newSegment && failure == null) {
+        interrupted |= waitForWriter();
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      if (segment < newSegment) {
+        throw new UncheckedIOException("Could not start a new log segment.", failure);
+      }
+      return newSegment;
+    }
+  }
+
+  /**
+   * Waits on the lock for the writer, returning true if the wait was interrupted.
+   * Called with the lock.
+   */
+  private boolean waitForWriter() {
+    try {
+      lock.wait();
+      return false;
+    } catch (InterruptedException e) {
+      return true;
+    }
+  }
+
+  /**
+   * Deletes the segments before the specified segment, e.g. once a snapshot covers them.
+   * The segment being written to is never deleted.
+   *
+   * @param firstKept the number of the first segment to keep.
+   * @return the number of segments deleted.
+   * @throws IOException if a segment could not be deleted.
+   */
+  public int deleteSegmentsBefore(long firstKept) throws IOException {
+    long current = getSegment();
+    int deleted = 0;
+    for (long number : listSegments()) {
+      if (number < firstKept && number < current && Files.deleteIfExists(segmentFile(number))) {
+        deleted++;
+      }
+    }
+    return deleted;
+  }
+
+  /**
+   * Writes the records appended so far, and closes the log.
+   *
+   * @throws IOException if the log could not be written.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (lock) {
+      closed = true;
+      lock.notifyAll();
+    }
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    channel.close();
+    synchronized (lock) {
+      if (failure != null) {
+        throw failure;
+      }
+    }
+  }
+
+  // ---- appending ----
+
+  /**
+   * Appends a record holding the whole state of a member.
+   */
+  long appendMember(BonusMember member) {
+    Personals personals = member.getPersonals();
+    byte[][] strings = {
+        personals.getFirstname().getBytes(StandardCharsets.UTF_8),
+        personals.getSurname().getBytes(StandardCharsets.UTF_8),
+        personals.getEMailAddress().getBytes(StandardCharsets.UTF_8),
+        personals.getPassword().getBytes(StandardCharsets.UTF_8)};
+    int size = 1 + 4 + 4 + 1 + 8;
+    for (byte[] string : strings) {
+      size += 4 + string.length;
+    }
+    synchronized (lock) {
+      ByteBuffer buffer = beginRecord(size);
+      buffer.put(MEMBER);
+      buffer.putInt(member.getMemberNo());
+      buffer.putInt(member.getPoints());
+      buffer.put((byte) member.getLevel().ordinal());
+      buffer.putLong(member.getEnrolledEpochDay());
+      for (byte[] string : strings) {
+        buffer.putInt(string.length);
+        buffer.put(string);
+      }
+      return endRecord(size);
+    }
+  }
+
+  /**
+   * Appends a record of a credit to a member, holding the member's points after the credit.
+   */
+  long appendCredit(int memberNo, int pointsAfter) {
+    synchronized (lock) {
+      ByteBuffer buffer = beginRecord(9);
+      buffer.put(CREDIT);
+      buffer.putInt(memberNo);
+      buffer.putInt(pointsAfter);
+      return endRecord(9);
+    }
+  }
+
+  /**
+   * Appends a record of a member moved up to a new membership level.
+   */
+  long appendUpgrade(int memberNo, MembershipLevel level) {
+    synchronized (lock) {
+      ByteBuffer buffer = beginRecord(6);
+      buffer.put(UPGRADE);
+      buffer.putInt(memberNo);
+      buffer.put((byte) level.ordinal());
+      return endRecord(6);
+    }
+  }
+
+  /**
+   * Appends a record of a removed member.
+   */
+  long appendRemove(int memberNo) {
+    synchronized (lock) {
+      ByteBuffer buffer = beginRecord(5);
+      buffer.put(REMOVE);
+      buffer.putInt(memberNo);
+      return endRecord(5);
+    }
+  }
+
+  /**
+   * Makes room for a record in the pending buffer, and skips its header. Called with the lock.
+   */
+  private ByteBuffer beginRecord(int size) {
+    if (closed) {
+      throw new IllegalStateException("The log is closed.");
+    }
+    if (pending.remaining() < RECORD_HEADER + size) {
+      int capacity = pending.capacity();
+      while (capacity - pending.position() < RECORD_HEADER + size) {
+        capacity *= 2;
+      }
+      ByteBuffer grown = ByteBuffer.allocate(capacity);
+      pending.flip();
+      grown.put(pending);
+      pending = grown;
+    }
+    pending.position(pending.position() + RECORD_HEADER);
+    return pending;
+  }
+
+  /**
+   * Fills in the header of the record just written, and wakes the writer. Called with the lock.
+   */
+  private long endRecord(int size) {
+    int start = pending.position() - size;
+    crc.reset();
+    crc.update(pending.array(), start, size);
+    pending.putInt(start - RECORD_HEADER, size);
+    pending.putInt(start - 4, (int) crc.getValue());
+    lock.notifyAll();
+    return ++appendedTickets;
+  }
+
+  /**
+   * Runs on the writer thread. Swaps out the pending buffer, writes and forces it,
+   * and lets the callers waiting for it go, until the log is closed.
+   */
+  private void writeBatches() {
+    while (true) {
+      synchronized (lock) {
+        while (pending.position() == 0 && rollPosition < 0 && !closed) {
+          try {
+            lock.wait();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        if (pending.position() == 0 && rollPosition < 0) {
+          return; // closed, and everything is written
+        }
+      }
+      if (batchWindowNanos > 0) {
+        LockSupport.parkNanos(batchWindowNanos); // let more callers join this batch
+      }
+      long batchTickets;
+      int rollAt;
+      synchronized (lock) {
+        ByteBuffer full = pending;
+        pending = writing;
+        writing = full;
+        batchTickets = appendedTickets;
+        rollAt = rollPosition;
+      }
+      try {
+        writing.flip();
+        if (rollAt >= 0) {
+          rollSegment(rollAt);
+        }
+        writeFully(writing);
+        channel.force(false);
+        writing.clear();
+      } catch (IOException e) {
+        synchronized (lock) {
+          failure = e;
+          lock.notifyAll();
+        }
+        return;
+      }
+      synchronized (lock) {
+        durableTickets = batchTickets;
+        batches++;
+        lock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Runs on the writer thread. Writes the part of the batch before the roll position to the
+   * current segment, forces and closes it, and moves on to the next segment.
+   */
+  private void rollSegment(int rollAt) throws IOException {
+    int end = writing.limit();
+    writing.limit(rollAt);
+    writeFully(writing);
+    channel.force(false);
+    channel.close();
+    long newSegment;
+    synchronized (lock) {
+      newSegment = segment + 1;
+    }
+    channel = FileChannel.open(segmentFile(newSegment), StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    writing.limit(end);
+    synchronized (lock) {
+      segment = newSegment;
+      rollPosition = -1;
+      lock.notifyAll();
+    }
+  }
+
+  private void writeFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  // ---- replay ----
+
+  /**
+   * Applies the records that were in the log when it was opened to the archive, in the order
+   * they were appended, starting with the specified segment.
+   *
+   * @param archive      the archive to apply the records to.
+   * @param firstSegment the number of the first segment to replay.
+   * @return the number of records applied.
+   * @throws IOException if the log cannot be read.
+   */
+  long replayInto(MemberArchive archive, long firstSegment) throws IOException {
+    long[] count = new long[1];
+    for (long number : listSegments()) {
+      if (number < firstSegment || number > lastSegmentAtOpen) {
+        continue;
+      }
+      // a channel of its own, so the position of the writer's channel is left alone
+      try (FileChannel in = FileChannel.open(segmentFile(number), StandardOpenOption.READ)) {
+        long length = number == lastSegmentAtOpen ? validLength : in.size();
+        readRecords(in, length, record -> {
+          applyRecord(record, archive);
+          count[0]++;
+        });
+      }
+    }
+    return count[0];
+  }
+
+  private static void applyRecord(ByteBuffer record, MemberArchive archive) {
+    byte type = record.get();
+    int memberNo = record.getInt();
+    if (type == MEMBER) {
+      int points = record.getInt();
+      MembershipLevel level = LEVELS[record.get()];
+      LocalDate enrolledDate = LocalDate.ofEpochDay(record.getLong());
+      String[] strings = new String[4];
+      for (int i = 0; i < strings.length; i++) {
+        byte[] bytes = new byte[record.getInt()];
+        record.get(bytes);
+        strings[i] = new String(bytes, StandardCharsets.UTF_8);
+      }
+      archive.replayMember(new BonusMember(memberNo,
+          new Personals(strings[0], strings[1], strings[2], strings[3]),
+          enrolledDate, points, level) {});
+    } else if (type == CREDIT) {
+      archive.replayCredit(memberNo, record.getInt());
+    } else if (type == UPGRADE) {
+      archive.replayUpgrade(memberNo, LEVELS[record.get()]);
+    } else if (type == REMOVE) {
+      archive.replayRemove(memberNo);
+    }
+  }
+
+  /**
+   * Reads the whole records in the first length bytes of the channel, passing each to the
+   * consumer if there is one, and returns the length up to the end of the last whole record.
+   */
+  private static long readRecords(FileChannel source, long length, Consumer<ByteBuffer> consumer)
+      throws IOException {
+    long position = 0;
+    source.position(0);
+    DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Channels.newInputStream(source), 64 * 1024));
+    CRC32 check = new CRC32();
+    byte[] body = new byte[256];
+    while (length - position >= RECORD_HEADER) {
+      int size;
+      int expected;
+      try {
+        size = in.readInt();
+        expected = in.readInt();
+        if (size <= 0 || size > MAX_RECORD_SIZE || size > length - position - RECORD_HEADER) {
+          break; // a record cut short, or garbage after the last record
+        }
+        if (body.length < size) {
+          body = new byte[Math.max(size, body.length * 2)];
+        }
+        in.readFully(body, 0, size);
+      } catch (EOFException e) {
+        break;
+      }
+      check.reset();
+      check.update(body, 0, size);
+      if ((int) check.getValue() != expected) {
+        break;
+      }
+      if (consumer != null) {
+        consumer.accept(ByteBuffer.wrap(body, 0, size));
+      }
+      position += RECORD_HEADER + size;
+    }
+    return position;
+  }
+
+  // ---- segment files ----
+
+  private Path segmentFile(long number) {
+    return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+  }
+
+  /**
+   * Returns the numbers of the segment files in the directory, in ascending order.
+   */
+  private List<Long> listSegments() throws IOException {
+    List<Long> numbers = new ArrayList<>();
+    try (DirectoryStream<Path> files =
+             Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        try {
+          numbers.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+              name.length() - SEGMENT_SUFFIX.length())));
+        } catch (NumberFormatException e) {
+          // not a segment written by this class, so left alone
+        }
+      }
+    }
+    Collections.sort(numbers);
+    return numbers;
+  }
+}
@@ -0,0 +1,320 @@
+package no.ntnu.iir.olavval.oblig2.bench;
+
+import no.ntnu.iir.olavval.oblig2.model.ArchiveMetrics;
+import no.ntnu.iir.olavval.oblig2.model.BonusMember;
+import no.ntnu.iir.olavval.oblig2.model.MemberArchive;
+import no.ntnu.iir.olavval.oblig2.model.MemberNumberAllocator;
+import no.ntnu.iir.olavval.oblig2.model.MembershipLevel;
+import no.ntnu.iir.olavval.oblig2.model.OpenAddressingMemberStore;
+import no.ntnu.iir.olavval.oblig2.model.Personals;
+import no.ntnu.iir.olavval.oblig2.model.PointsResult;
+
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Benchmarks of the MemberArchive operations over archives of generated members:
+ * addMember, removeMember, registerPoints, findPoints, findMember, checkAndUpgradeMembers and
+ * stream().
+ * registerPointsUnknown measures the cost of a failed credit, to a member number with no
+ * member. The Mixed benchmarks run traffic where half the logins or credits fail, a quarter for
+ * an unknown member number and a quarter for a wrong password or negative points, through the
+ * throwing methods and through the ones returning result codes. findByEmail and findPointsByEmail
+ * look members up by e-mail address, and findByEmailScan by scanning stream() for the address.
+ * findByName reads a page of 50 members with a name starting with "han", from the start and
+ * 5000 members in, findByNameFuzzy a page of members within two edits of "hansne", and
+ * findByNameScan the page 5000 members in by scanning stream(). countEnrolledBetween counts the
+ * members enrolled in a quarter, and checkAndUpgradeRecentMembers is the upgrade run that only
+ * checks the members in their first year. findTopMembers reads the 50 members with the most
+ * points, findTopMembersSort does so by sorting stream(), getRank ranks a member and
+ * countByPoints counts the members with from 10000 to 20000 points. After an upgrade run,
+ * countAtLevel counts the Gold members, and streamAtLevel sums their points, which
+ * streamAtLevelScan does by filtering stream().
+ *
+ * <p>Run it with the model and test classes on the class path, and a heap large enough for the
+ * largest archive, about 400 bytes per member:</p>
+ * <pre>
+ * java -Xmx6g no.ntnu.iir.olavval.oblig2.bench.ArchiveBenchmark \
+ *     --sizes 1000,100000,10000000 --out results.jsonl --baseline previous.jsonl
+ * </pre>
+ *
+ * <p>Options: --sizes (default 1000,100000,10000000), --warmup iterations (default 3),
+ * --iterations (default 5), --time-ms per iteration (default 1000), --only a benchmark name,
+ * --out a file for the JSON results (default standard output), --baseline a results file
+ * from an earlier run to compare with and --sample-interval, how many operations there are for
+ * each one timed by the archive metrics (default 16). Sizes that do not fit in the heap are
+ * skipped.</p>
+ *
+ * @author mort
+ */
+public class ArchiveBenchmark {
+  private static final long BYTES_PER_MEMBER = 400;
+  private static final int SAMPLES = 1 << 16; // members picked at random for lookups
+  private static final LocalDate TEST_DATE = LocalDate.of(2020, 6, 1);
+
+  /**
+   * Runs the benchmarks.
+   *
+   * @param args the options, see the class comment.
+   * @throws Exception if a benchmark fails, or a file cannot be read or written.
+   */
+  public static void main(String[] args) throws Exception {
+    int[] sizes = {1000, 100000, 10000000};
+    int warmup = 3;
+    int iterations = 5;
+    long timeMillis = 1000;
+    String only = null;
+    Path outFile = null;
+    Path baselineFile = null;
+    int sampleInterval = ArchiveMetrics.DEFAULT_SAMPLE_INTERVAL;
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      String value = args[i + 1];
+      switch (args[i]) {
+        case "--sizes":
+          sizes = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+          break;
+        case "--warmup":
+          warmup = Integer.parseInt(value);
+          break;
+        case "--iterations":
+          iterations = Integer.parseInt(value);
+          break;
+        case "--time-ms":
+          timeMillis = Long.parseLong(value);
+          break;
+        case "--only":
+          only = value;
+          break;
+        case "--out":
+          outFile = Paths.get(value);
+          break;
+        case "--baseline":
+          baselineFile = Paths.get(value);
+          break;
+        case "--sample-interval":
+          sampleInterval = Integer.parseInt(value);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + args[i]);
+      }
+    }
+
+    PrintStream out = outFile == null
+        ? System.out : new PrintStream(Files.newOutputStream(outFile));
+    BenchmarkRunner runner = new BenchmarkRunner(warmup, iterations, timeMillis, out);
+    if (baselineFile != null) {
+      runner.loadBaseline(baselineFile);
+    }
+    for (int size : sizes) {
+      if (size * BYTES_PER_MEMBER > Runtime.getRuntime().maxMemory()) {
+        System.err.println("Skipping " + size + " members, which need a larger heap (-Xmx).");
+        continue;
+      }
+      new ArchiveBenchmark(size, sampleInterval).run(runner, only);
+    }
+    if (out != System.out) {
+      out.close();
+    }
+    System.err.println("(sink " + runner.getSink() + ")");
+  }
+
+  private final int size;
+  private final MemberArchive archive;
+  private final int[] sampleNos = new int[SAMPLES];
+  private final String[] samplePasswords = new String[SAMPLES];
+  private final String[] sampleEmails = new String[SAMPLES];
+  private final Personals[] newPersonals = new Personals[SAMPLES];
+  private final int[] mixedNos = new int[SAMPLES];
+  private final String[] mixedPasswords = new String[SAMPLES];
+  private final int[] mixedPoints = new int[SAMPLES];
+
+  private ArchiveBenchmark(int size, int sampleInterval) {
+    this.size = size;
+    this.archive = new MemberArchive(new OpenAddressingMemberStore(size),
+        new MemberNumberAllocator(Math.max(2 * size, MemberNumberAllocator.DEFAULT_NUMBER_SPACE),
+            true));
+    archive.getMetrics().setSampleInterval(sampleInterval);
+    MemberGenerator generator = new MemberGenerator(42);
+    long start = System.nanoTime();
+    int[] memberNos = generator.fill(archive, size);
+    System.err.printf("Generated %d members in %d ms%n", size,
+        (System.nanoTime() - start) / 1_000_000);
+    for (int i = 0; i < SAMPLES; i++) {
+      int index = generator.nextInt(size);
+      sampleNos[i] = memberNos[index];
+      samplePasswords[i] = MemberGenerator.passwordOf(index);
+      sampleEmails[i] = archive.findMember(sampleNos[i]).getPersonals().getEMailAddress();
+      newPersonals[i] = generator.nextPersonals();
+      // valid, valid, unknown member number, wrong password or negative points
+      mixedNos[i] = i % 4 == 2 ? -1 - i : sampleNos[i];
+      mixedPasswords[i] = i % 4 == 3 ? "wrong" : samplePasswords[i];
+      mixedPoints[i] = i % 4 == 3 ? -10 : 10;
+    }
+  }
+
+  private void run(BenchmarkRunner runner, String only) throws Exception {
+    int mask = SAMPLES - 1;
+    if (only == null || only.equals("findMember")) {
+      runner.measure("findMember", size, 1024,
+          i -> archive.findMember(sampleNos[i & mask]).getMemberNo(), null);
+    }
+    if (only == null || only.equals("findPoints")) {
+      runner.measure("findPoints", size, 1024,
+          i -> archive.findPoints(sampleNos[i & mask], samplePasswords[i & mask]), null);
+    }
+    if (only == null || only.equals("findByEmail")) {
+      runner.measure("findByEmail", size, 1024,
+          i -> archive.findByEmail(sampleEmails[i & mask]).getMemberNo(), null);
+    }
+    if (only == null || only.equals("findByEmailScan")) { // what findByEmail replaces
+      runner.measure("findByEmailScan", size, 1, i -> archive.stream()
+          .filter(member -> member.getPersonals().getEMailAddress()
+              .equalsIgnoreCase(sampleEmails[i & mask]))
+          .findAny().get().getMemberNo(), null);
+    }
+    if (only == null || only.equals("findPointsByEmail")) {
+      runner.measure("findPointsByEmail", size, 1024, i -> archive.findPointsByEmail(
+          sampleEmails[i & mask], samplePasswords[i & mask]), null);
+    }
+    if (only == null || only.equals("findByName")) {
+      runner.measure("findByName", size, 16, i -> archive.findByName("han", 0, 50).size(), null);
+    }
+    if (only == null || only.equals("findByNameDeep")) {
+      runner.measure("findByNameDeep", size, 1,
+          i -> archive.findByName("han", 5000, 50).size(), null);
+    }
+    if (only == null || only.equals("findByNameFuzzy")) {
+      runner.measure("findByNameFuzzy", size, 16,
+          i -> archive.findByNameFuzzy("hansne", 2, 0, 50).size(), null);
+    }
+    if (only == null || only.equals("findByNameScan")) { // what findByNameDeep replaces
+      runner.measure("findByNameScan", size, 1, i -> (int) archive.stream()
+          .filter(member -> member.getFirstName().toLowerCase().startsWith("han")
+              || member.getSurname().toLowerCase().startsWith("han"))
+          .skip(5000).limit(50).count(), null);
+    }
+    if (only == null || only.equals("registerPoints")) {
+      runner.measure("registerPoints", size, 1024, i -> {
+        archive.registerPoints(sampleNos[i & mask], 10);
+        return i;
+      }, null);
+    }
+    if (only == null || only.equals("registerPointsUnknown")) {
+      runner.measure("registerPointsUnknown", size, 1024, i -> {
+        try {
+          archive.registerPoints(-1 - (i & mask), 10); // member numbers are never negative
+          return 0;
+        } catch (NullPointerException e) {
+          return 1;
+        }
+      }, null);
+    }
+    if (only == null || only.equals("findPointsMixed")) {
+      runner.measure("findPointsMixed", size, 1024, i -> {
+        try {
+          return archive.findPoints(mixedNos[i & mask], mixedPasswords[i & mask]);
+        } catch (IllegalArgumentException e) {
+          return -1;
+        }
+      }, null);
+    }
+    if (only == null || only.equals("tryFindPointsMixed")) {
+      PointsResult result = new PointsResult();
+      runner.measure("tryFindPointsMixed", size, 1024, i -> archive.tryFindPoints(
+          mixedNos[i & mask], mixedPasswords[i & mask], result).getStatus().ordinal(), null);
+    }
+    if (only == null || only.equals("registerPointsMixed")) {
+      runner.measure("registerPointsMixed", size, 1024, i -> {
+        try {
+          archive.registerPoints(mixedNos[i & mask], mixedPoints[i & mask]);
+          return 0;
+        } catch (NullPointerException | NumberFormatException e) {
+          return 1;
+        }
+      }, null);
+    }
+    if (only == null || only.equals("tryRegisterPointsMixed")) {
+      runner.measure("tryRegisterPointsMixed", size, 1024, i -> archive.tryRegisterPoints(
+          mixedNos[i & mask], mixedPoints[i & mask]).ordinal(), null);
+    }
+    if (only == null || only.equals("addMember")) {
+      int batchSize = 1024;
+      int[] added = new int[batchSize];
+      LocalDate enrolled = LocalDate.of(2019, 1, 1);
+      runner.measure("addMember", size, batchSize,
+          i -> added[i % batchSize] = archive.addMember(newPersonals[i & mask], enrolled),
+          () -> { // keep the archive at its size
+            for (int memberNo : added) {
+              BonusMember member = archive.findMember(memberNo);
+              if (member != null) {
+                archive.removeMember(member);
+              }
+            }
+          });
+    }
+    if (only == null || only.equals("removeMember")) {
+      int batchSize = 1024;
+      BonusMember[] removed = new BonusMember[batchSize];
+      LocalDate enrolled = LocalDate.of(2019, 1, 1);
+      Runnable addBatch = () -> { // the members the next batch removes
+        for (int i = 0; i < batchSize; i++) {
+          removed[i] = archive.findMember(archive.addMember(newPersonals[i & mask], enrolled));
+        }
+      };
+      addBatch.run();
+      runner.measure("removeMember", size, batchSize, i -> {
+        archive.removeMember(removed[i % batchSize]);
+        return removed[i % batchSize].getMemberNo();
+      }, addBatch);
+    }
+    if (only == null || only.equals("stream")) {
+      runner.measure("stream", size, 1,
+          i -> archive.stream().mapToLong(BonusMember::getPoints).sum(), null);
+    }
+    if (only == null || only.equals("countEnrolledBetween")) {
+      runner.measure("countEnrolledBetween", size, 16, i -> (int) archive.countEnrolledBetween(
+          LocalDate.of(2007, 1, 1), LocalDate.of(2007, 3, 31)), null);
+    }
+    if (only == null || only.equals("checkAndUpgradeRecentMembers")) {
+      runner.measure("checkAndUpgradeRecentMembers", size, 1,
+          i -> archive.checkAndUpgradeRecentMembers(TEST_DATE).getSilverUpgrades(), null);
+    }
+    if (only == null || only.equals("findTopMembers")) {
+      runner.measure("findTopMembers", size, 16, i -> archive.findTopMembers(50).size(), null);
+    }
+    if (only == null || only.equals("findTopMembersSort")) { // what findTopMembers replaces
+      runner.measure("findTopMembersSort", size, 1, i -> archive.stream()
+          .sorted((a, b) -> Integer.compare(b.getPoints(), a.getPoints()))
+          .limit(50).mapToInt(BonusMember::getMemberNo).sum(), null);
+    }
+    if (only == null || only.equals("getRank")) {
+      runner.measure("getRank", size, 1024, i -> archive.getRank(sampleNos[i & mask]), null);
+    }
+    if (only == null || only.equals("countByPoints")) {
+      runner.measure("countByPoints", size, 1024,
+          i -> archive.countByPoints(10000, 20000), null);
+    }
+    if (only == null || only.equals("checkAndUpgradeMembers")) {
+      runner.measure("checkAndUpgradeMembers", size, 1,
+          i -> archive.checkAndUpgradeMembers(TEST_DATE).getSilverUpgrades(), null);
+    }
+    archive.checkAndUpgradeMembers(TEST_DATE); // moves some members up to Silver and Gold
+    if (only == null || only.equals("countAtLevel")) {
+      runner.measure("countAtLevel", size, 1024,
+          i -> archive.countAtLevel(MembershipLevel.GOLD), null);
+    }
+    if (only == null || only.equals("streamAtLevel")) {
+      runner.measure("streamAtLevel", size, 1, i -> archive.streamAtLevel(MembershipLevel.GOLD)
+          .mapToLong(BonusMember::getPoints).sum(), null);
+    }
+    if (only == null || only.equals("streamAtLevelScan")) { // what streamAtLevel replaces
+      runner.measure("streamAtLevelScan", size, 1, i -> archive.stream()
+          .filter(member -> member.getLevel() == MembershipLevel.GOLD)
+          .mapToLong(BonusMember::getPoints).sum(), null);
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package no.ntnu.iir.olavval.oblig2.bench;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A small benchmark harness in the style of JMH, for projects without a JMH build.
+ *
+ * <p>Each benchmark runs its operation for a number of warmup iterations, which are thrown away
+ * so the JIT compiler can settle, and then for a number of measured iterations. An iteration
+ * repeats the operation in batches until the iteration time has passed, and its score is the
+ * average time per operation. The result is the mean score of the measured iterations, with a
+ * 99% confidence interval.</p>
+ *
+ * <p>Results are printed as one JSON object per line, so runs on different releases can be
+ * kept and compared. When a baseline file from an earlier run is given, the change against it
+ * is printed next to each result.</p>
+ *
+ * @author mort
+ */
+public class BenchmarkRunner {
+  private static final Pattern RESULT = Pattern.compile(
+      "\\{\"benchmark\":\"([^\"]*)\",\"size\":(\\d+),.*\"score\":([0-9.Ee+-]+),.*");
+
+  /**
+   * An operation to measure. The return value is consumed, so the JIT compiler cannot remove
+   * the work that produced it.
+   */
+  public interface Operation {
+    /**
+     * Runs the operation once.
+     *
+     * @param invocation the number of the invocation, counting from 0.
+     * @return a value derived from the work done.
+     * @throws Exception if the operation fails, which stops the benchmark.
+     */
+    long run(int invocation) throws Exception;
+  }
+
+  private final int warmupIterations;
+  private final int measuredIterations;
+  private final long iterationNanos;
+  private final PrintStream out;
+  private final Map<String, Double> baseline = new HashMap<>();
+  private long sink;
+
+  /**
+   * Creates a runner.
+   *
+   * @param warmupIterations   the number of iterations to throw away.
+   * @param measuredIterations the number of iterations to measure.
+   * @param iterationMillis    how long each iteration runs, in milliseconds.
+   * @param out                where to print the results.
+   * @throws IllegalArgumentException if measuredIterations or iterationMillis is not positive,
+   *                                  warmupIterations is negative, or out is null.
+   */
+  public BenchmarkRunner(int warmupIterations, int measuredIterations, long iterationMillis,
+                         PrintStream out) {
+    if (warmupIterations < 0 || measuredIterations <= 0 || iterationMillis <= 0 || out == null) {
+      throw new IllegalArgumentException("Invalid benchmark settings.");
+    }
+    this.warmupIterations = warmupIterations;
+    this.measuredIterations = measuredIterations;
+    this.iterationNanos = iterationMillis * 1_000_000;
+    this.out = out;
+  }
+
+  /**
+   * Reads the results of an earlier run, to compare the following results against.
+   *
+   * @param file a file of results printed by an earlier run.
+   * @throws IOException if the file cannot be read.
+   */
+  public void loadBaseline(Path file) throws IOException {
+    for (String line : Files.readAllLines(file)) {
+      Matcher matcher = RESULT.matcher(line);
+      if (matcher.matches()) {
+        baseline.put(matcher.group(1) + "@" + matcher.group(2),
+            Double.parseDouble(matcher.group(3)));
+      }
+    }
+  }
+
+  /**
+   * Measures an operation, and prints the result.
+   *
+   * @param benchmark  the name of the benchmark.
+   * @param size       the size of the data the operation works on, e.g. the archive size.
+   * @param batchSize  the number of operations between checks of the clock.
+   * @param operation  the operation to measure.
+   * @param afterBatch run after each batch, outside the measured time, e.g. to undo the
+   *                   changes of the batch; may be null.
+   * @return the mean time per operation, in nanoseconds.
+   * @throws Exception if the operation fails.
+   */
+  public double measure(String benchmark, int size, int batchSize, Operation operation,
+                        Runnable afterBatch) throws Exception {
+    for (int i = 0; i < warmupIterations; i++) {
+      runIteration(batchSize, operation, afterBatch);
+    }
+    double[] scores = new double[measuredIterations];
+    long operations = 0;
+    for (int i = 0; i < measuredIterations; i++) {
+      long[] timing = runIteration(batchSize, operation, afterBatch);
+      scores[i] = (double) timing[0] / timing[1];
+      operations += timing[1];
+    }
+    double mean = 0;
+    for (double score : scores) {
+      mean += score;
+    }
+    mean /= scores.length;
+    double variance = 0;
+    for (double score : scores) {
+      variance += (score - mean) * (score - mean);
+    }
+    double error = scores.length < 2
+        ? Double.NaN : 2.576 * Math.sqrt(variance / (scores.length - 1) / scores.length);
+
+    String line = String.format(Locale.ROOT, "{\"benchmark\":\"%s\",\"size\":%d,"
+            + "\"unit\":\"ns/op\",\"score\":%.3f,\"error\":%.3f,\"iterations\":%d,\"ops\":%d}",
+        benchmark, size, mean, error, scores.length, operations);
+    Double before = baseline.get(benchmark + "@" + size);
+    if (before != null) {
+      System.err.printf(Locale.ROOT, "%-24s %10d %14.1f ns/op  %+6.1f%% against baseline%n",
+          benchmark, size, mean, (mean - before) / before * 100);
+    } else {
+      System.err.printf(Locale.ROOT, "%-24s %10d %14.1f ns/op%n", benchmark, size, mean);
+    }
+    out.println(line);
+    out.flush();
+    return mean;
+  }
+
+  /**
+   * Returns the sum of the values returned by the measured operations, so that nothing the
+   * operations computed is dead code.
+   *
+   * @return the sum of the operation results.
+   */
+  public long getSink() {
+    return sink;
+  }
+
+  /**
+   * Runs batches until the iteration time has passed, and returns the measured nanoseconds
+   * and the number of operations.
+   */
+  private long[] runIteration(int batchSize, Operation operation, Runnable afterBatch)
+      throws Exception {
+    long measured = 0;
+    long operations = 0;
+    int invocation = 0;
+    long local = 0;
+    while (measured < iterationNanos) {
+      long start = System.nanoTime();
+      for (int i = 0; i < batchSize; i++) {
+        local += operation.run(invocation++);
+      }
+      measured += System.nanoTime() - start;
+      operations += batchSize;
+      if (afterBatch != null) {
+        afterBatch.run();
+      }
+    }
+    sink += local;
+    return new long[] {measured, operations};
+  }
+}
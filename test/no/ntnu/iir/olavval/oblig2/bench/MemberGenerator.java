@@ -0,0 +1,112 @@
+package no.ntnu.iir.olavval.oblig2.bench;
+
+import no.ntnu.iir.olavval.oblig2.model.MemberArchive;
+import no.ntnu.iir.olavval.oblig2.model.Personals;
+
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+/**
+ * Generates synthetic members for benchmarks. The same seed always gives the same members,
+ * so runs on different releases measure the same archive.
+ *
+ * @author mort
+ */
+public class MemberGenerator {
+  private static final String[] FIRST_NAMES = {
+      "Ole", "Tove", "Lise", "Per", "Kari", "Jan", "Anne", "Nils", "Ingrid", "Lars",
+      "Marit", "Knut", "Hilde", "Erik", "Sigrid", "Bjorn", "Ragnhild", "Odd", "Liv", "Arne"};
+  private static final String[] SURNAMES = {
+      "Olsen", "Hansen", "Lisand", "Johansen", "Larsen", "Andersen", "Pedersen", "Nilsen",
+      "Kristiansen", "Jensen", "Karlsen", "Berg", "Haugen", "Hagen", "Eriksen", "Bakken"};
+  private static final LocalDate FIRST_ENROLLMENT = LocalDate.of(2000, 1, 1);
+  private static final int ENROLLMENT_DAYS = 20 * 365;
+
+  private final SplittableRandom random;
+  private long generated;
+
+  /**
+   * Creates a generator with the specified seed.
+   *
+   * @param seed the seed of the generated members.
+   */
+  public MemberGenerator(long seed) {
+    this.random = new SplittableRandom(seed);
+  }
+
+  /**
+   * Returns the password of the member generated as number index, counting from 0.
+   *
+   * @param index the number of the generated member.
+   * @return the password of that member.
+   */
+  public static String passwordOf(long index) {
+    return "pw" + index;
+  }
+
+  /**
+   * Generates the personal details of the next member.
+   *
+   * @return the personal details of a new member.
+   */
+  public Personals nextPersonals() {
+    long index = generated++;
+    String firstname = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+    String surname = SURNAMES[random.nextInt(SURNAMES.length)];
+    return new Personals(firstname, surname,
+        firstname.toLowerCase() + "." + surname.toLowerCase() + index + "@example.com",
+        passwordOf(index));
+  }
+
+  /**
+   * Generates an enrollment date within the 20 years from 2000.
+   *
+   * @return an enrollment date.
+   */
+  public LocalDate nextEnrolledDate() {
+    return FIRST_ENROLLMENT.plusDays(random.nextInt(ENROLLMENT_DAYS));
+  }
+
+  /**
+   * Adds the specified number of generated members to the archive, and gives each a number of
+   * points between 0 and 100000, so that some qualify for upgrades.
+   *
+   * @param archive the archive to fill.
+   * @param count   the number of members to add.
+   * @return the member numbers of the added members, in the order they were generated.
+   */
+  public int[] fill(MemberArchive archive, int count) {
+    int[] memberNos = new int[count];
+    int batchSize = 4096;
+    Personals[] persons = new Personals[batchSize];
+    LocalDate[] dates = new LocalDate[batchSize];
+    int[] points = new int[batchSize];
+    for (int start = 0; start < count; start += batchSize) {
+      int size = Math.min(batchSize, count - start);
+      if (size < batchSize) {
+        persons = new Personals[size];
+        dates = new LocalDate[size];
+        points = new int[size];
+      }
+      for (int i = 0; i < size; i++) {
+        persons[i] = nextPersonals();
+        dates[i] = nextEnrolledDate();
+        points[i] = random.nextInt(100000);
+      }
+      int[] added = archive.addMembers(persons, dates);
+      System.arraycopy(added, 0, memberNos, start, size);
+      archive.registerPoints(added, points);
+    }
+    return memberNos;
+  }
+
+  /**
+   * Returns a random int from 0 up to, but not including, bound.
+   *
+   * @param bound the upper bound.
+   * @return a random int below bound.
+   */
+  public int nextInt(int bound) {
+    return random.nextInt(bound);
+  }
+}
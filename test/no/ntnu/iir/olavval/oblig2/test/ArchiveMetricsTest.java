@@ -0,0 +1,120 @@
+package no.ntnu.iir.olavval.oblig2.test;
+
+import no.ntnu.iir.olavval.oblig2.model.ArchiveMetrics;
+import no.ntnu.iir.olavval.oblig2.model.ArchiveMetrics.Operation;
+import no.ntnu.iir.olavval.oblig2.model.MemberArchive;
+import no.ntnu.iir.olavval.oblig2.model.OperationStats;
+import no.ntnu.iir.olavval.oblig2.model.Personals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.Map;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ArchiveMetricsTest {
+
+  private MemberArchive archive;
+  private int b1;
+
+  @BeforeEach
+  void setUp() {
+    this.archive = new MemberArchive();
+    this.b1 = archive.addMember(new Personals("Ole", "Olsen",
+        "ole.olsen@dot.com", "ole"), LocalDate.of(2006, 2, 15));
+  }
+
+  /**
+   * Checks that operations and their failures are counted.
+   */
+  @Test
+  void countTest() {
+    archive.addMember(null, LocalDate.of(2007, 1, 2));
+    archive.registerPoints(b1, 30000);
+    assertThrows(NullPointerException.class, () -> archive.registerPoints(b1 + 1, 10));
+    archive.registerPoints(new int[] {b1, b1 + 1, b1}, new int[] {10, 10, -1});
+    archive.findMember(b1);
+    archive.findMember(b1 + 1);
+    archive.findPoints(b1, "ole");
+    assertThrows(IllegalArgumentException.class, () -> archive.findPoints(b1, "wrong"));
+    archive.checkAndUpgradeMembers(LocalDate.of(2007, 2, 10));
+    Map<Operation, OperationStats> stats = archive.getMetrics().snapshot();
+
+    System.out.println("Test 1: Adds, including failed ones, are counted.");
+    assertEquals(2, stats.get(Operation.ADD).getCount());
+    assertEquals(1, stats.get(Operation.ADD).getErrors());
+
+    System.out.println("Test 2: Each credit of a batch counts as a credit.");
+    assertEquals(5, stats.get(Operation.CREDIT).getCount());
+    assertEquals(3, stats.get(Operation.CREDIT).getErrors());
+
+    System.out.println("Test 3: Lookups, logins and upgrade runs are counted.");
+    assertEquals(2, stats.get(Operation.LOOKUP).getCount());
+    assertEquals(1, stats.get(Operation.LOOKUP).getErrors());
+    assertEquals(2, stats.get(Operation.LOGIN).getCount());
+    assertEquals(1, stats.get(Operation.LOGIN).getErrors());
+    assertEquals(1, stats.get(Operation.UPGRADE).getCount());
+    assertEquals(0, stats.get(Operation.UPGRADE).getErrors());
+  }
+
+  /**
+   * Checks the latency percentiles, with every lookup timed, and the JMX beans.
+   */
+  @Test
+  void latencyTest() throws Exception {
+    ArchiveMetrics metrics = archive.getMetrics();
+    assertThrows(IllegalArgumentException.class, () -> metrics.setSampleInterval(0));
+    metrics.setSampleInterval(1);
+    for (int i = 0; i < 1000; i++) {
+      archive.findMember(b1);
+    }
+    OperationStats lookups = metrics.snapshot(Operation.LOOKUP);
+
+    System.out.println("Test 4: Percentiles are ordered and bounded by the highest latency.");
+    assertEquals(1000, lookups.getCount());
+    assertTrue(lookups.getPercentileNanos(50) <= lookups.getPercentileNanos(99));
+    assertTrue(lookups.getPercentileNanos(99) <= lookups.getPercentileNanos(99.9));
+    assertTrue(lookups.getPercentileNanos(100) <= lookups.getMaxNanos());
+    assertTrue(lookups.getMeanNanos() <= lookups.getMaxNanos());
+    assertThrows(IllegalArgumentException.class, () -> lookups.getPercentileNanos(101));
+
+    System.out.println("Test 5: The metrics are shown through JMX.");
+    metrics.registerMBeans("metrics-test");
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(
+          "no.ntnu.iir.olavval.oblig2:type=MemberArchive,name=\"metrics-test\",operation=lookup");
+      assertEquals(1000L, server.getAttribute(name, "Count"));
+      assertEquals(0L, server.getAttribute(name, "Errors"));
+    } finally {
+      metrics.unregisterMBeans();
+    }
+  }
+
+  /**
+   * Checks that the counts of threads that have ended are kept after their counters are
+   * dropped.
+   */
+  @Test
+  void endedThreadTest() throws InterruptedException {
+    ArchiveMetrics metrics = archive.getMetrics();
+    long before = metrics.snapshot(Operation.LOOKUP).getCount();
+    for (int t = 0; t < 8; t++) {
+      Thread thread = new Thread(() -> {
+        for (int i = 0; i < 100; i++) {
+          archive.findMember(b1);
+        }
+      });
+      thread.start();
+      thread.join();
+      metrics.snapshot(); // drops the counters of the ended threads
+    }
+
+    System.out.println("Test 6: The operations of threads that have ended are still counted.");
+    assertEquals(before + 800, metrics.snapshot(Operation.LOOKUP).getCount());
+  }
+}
@@ -11,6 +11,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.time.LocalDate;
+import java.time.Period;
 
 /**
  * Test class used to test the calculation of bonus points in the different classes
@@ -98,6 +99,30 @@ class BonusMemberTest {
   }
 
 
+  /**
+   * Tests that the epoch day based qualification check gives the same result as comparing
+   * Period.between(enrolledDate, testDate).getYears() to 1, for every enrollment date from 2003
+   * through 2009 and every test date from 400 days before to 800 days after it.
+   * The range covers the leap years 2004 and 2008, including enrollment on February 29th.
+   */
+  @Test
+  void testQualificationPeriodMatchesPeriodBetween() {
+    System.out.println("Test nr 9: Qualification period matches Period.between for all dates.");
+    LocalDate lastEnrollDate = LocalDate.of(2009, 12, 31);
+    for (LocalDate enrolled = LocalDate.of(2003, 1, 1); !enrolled.isAfter(lastEnrollDate);
+        enrolled = enrolled.plusDays(1)) {
+      BasicMember member = new BasicMember(1, ole, enrolled);
+      member.registerPoints(100);
+      for (long day = enrolled.toEpochDay() - 400; day <= enrolled.toEpochDay() + 800; day++) {
+        LocalDate testDay = LocalDate.ofEpochDay(day);
+        boolean expected = Period.between(enrolled, testDay).getYears() < 1;
+        assertEquals(expected, member.isInQualificationPeriod(day),
+            "Enrolled " + enrolled + ", tested " + testDay);
+        assertEquals(expected ? 100 : 0, member.findQualificationPoints(testDay));
+      }
+    }
+  }
+
   /**
    * Tests the passwords of both members.
    */
@@ -0,0 +1,119 @@
+package no.ntnu.iir.olavval.oblig2.test;
+
+import no.ntnu.iir.olavval.oblig2.model.BonusMember;
+import no.ntnu.iir.olavval.oblig2.model.MemberArchive;
+import no.ntnu.iir.olavval.oblig2.model.Personals;
+import no.ntnu.iir.olavval.oblig2.model.StripedMemberStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Multi-threaded stress tests for a MemberArchive backed by a StripedMemberStore.
+ */
+public class ConcurrentMemberArchiveTest {
+
+  private static final int THREADS = 8;
+
+  private LocalDate testDate;
+  private MemberArchive archive;
+
+  @BeforeEach
+  void setUp() {
+    this.testDate = LocalDate.of(2008, 2, 10);
+    this.archive = new MemberArchive(new StripedMemberStore());
+  }
+
+  /**
+   * Adds members from several threads at once, and asserts that every member got
+   * its own member number.
+   */
+  @Test
+  void concurrentAddMemberTest() throws InterruptedException {
+    int perThread = 5000;
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++) {
+      int thread = t;
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < perThread; i++) {
+          Personals person = new Personals("First" + i, "Last" + thread,
+              "member" + thread + "." + i + "@dot.com", "pass");
+          assertNotEquals(-1, archive.addMember(person, testDate));
+        }
+      }));
+    }
+    runAll(threads);
+
+    System.out.println("Test 1: Every added member is in the archive.");
+    assertEquals(THREADS * perThread, archive.getArchiveSize());
+    assertEquals(THREADS * perThread, archive.stream()
+        .mapToInt(BonusMember::getMemberNo).distinct().count());
+  }
+
+  /**
+   * Registers single points on a small set of members from several threads, while another
+   * thread keeps running upgrade checks that upgrade members as they cross the limits.
+   * A single point is never changed by the Silver or Gold multiplier, so every member must
+   * end up with its starting points plus exactly the number of credits it received.
+   */
+  @Test
+  void noLostUpdatesTest() throws InterruptedException {
+    int memberCount = 64;
+    int creditsPerThread = 100000;
+    int[] memberNos = new int[memberCount];
+    for (int i = 0; i < memberCount; i++) {
+      memberNos[i] = archive.addMember(new Personals("First" + i, "Last",
+          "member" + i + "@dot.com", "pass"), testDate);
+      // start just below the silver limit, so upgrades happen during the test.
+      archive.registerPoints(memberNos[i], MemberArchive.SILVER_LIMIT - 1000);
+    }
+
+    AtomicLong[] credits = new AtomicLong[memberCount];
+    for (int i = 0; i < memberCount; i++) {
+      credits[i] = new AtomicLong();
+    }
+    AtomicBoolean running = new AtomicBoolean(true);
+    Thread upgrader = new Thread(() -> {
+      while (running.get()) {
+        archive.checkAndUpgradeMembers(testDate);
+      }
+    });
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++) {
+      long seed = t;
+      threads.add(new Thread(() -> {
+        Random random = new Random(seed);
+        for (int i = 0; i < creditsPerThread; i++) {
+          int member = random.nextInt(memberCount);
+          archive.registerPoints(memberNos[member], 1);
+          credits[member].incrementAndGet();
+        }
+      }));
+    }
+    upgrader.start();
+    runAll(threads);
+    running.set(false);
+    upgrader.join();
+
+    System.out.println("Test 2: No registered points were lost.");
+    for (int i = 0; i < memberCount; i++) {
+      assertEquals(MemberArchive.SILVER_LIMIT - 1000 + credits[i].get(),
+          archive.findMember(memberNos[i]).getPoints(), "Points lost on member " + i);
+    }
+  }
+
+  private static void runAll(List<Thread> threads) throws InterruptedException {
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+}
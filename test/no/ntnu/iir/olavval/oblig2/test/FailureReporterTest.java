@@ -0,0 +1,83 @@
+package no.ntnu.iir.olavval.oblig2.test;
+
+import no.ntnu.iir.olavval.oblig2.model.FailureEvent;
+import no.ntnu.iir.olavval.oblig2.model.FailureReporter;
+import no.ntnu.iir.olavval.oblig2.model.FailureReporter.Reason;
+import no.ntnu.iir.olavval.oblig2.model.MemberArchive;
+import no.ntnu.iir.olavval.oblig2.model.Personals;
+import no.ntnu.iir.olavval.oblig2.model.UnknownMemberException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FailureReporterTest {
+
+  private MemberArchive archive;
+  private int b1;
+
+  @BeforeEach
+  void setUp() {
+    this.archive = new MemberArchive();
+    this.b1 = archive.addMember(new Personals("Ole", "Olsen",
+        "ole.olsen@dot.com", "ole"), LocalDate.of(2006, 2, 15));
+  }
+
+  /**
+   * Checks that failed credits and adds are counted and kept.
+   */
+  @Test
+  void reportTest() {
+    FailureReporter reporter = archive.getFailureReporter();
+
+    System.out.println("Test 1: A credit for an unknown member throws a cheap exception.");
+    UnknownMemberException e = assertThrows(UnknownMemberException.class,
+        () -> archive.registerPoints(b1 + 1, 10));
+    assertEquals(b1 + 1, e.getMemberNo());
+    assertEquals(0, e.getStackTrace().length);
+    assertTrue(e.getMessage().contains(String.valueOf(b1 + 1)));
+    assertThrows(NullPointerException.class, () -> archive.registerPoints(b1 + 2, 10));
+
+    System.out.println("Test 2: Failures are counted by reason.");
+    archive.registerPoints(new int[] {b1, b1 + 1}, new int[] {-5, 10});
+    archive.addMember(null, LocalDate.of(2007, 1, 2));
+    assertEquals(3, reporter.getCount(Reason.UNKNOWN_MEMBER));
+    assertEquals(1, reporter.getCount(Reason.NEGATIVE_POINTS));
+    assertEquals(1, reporter.getCount(Reason.INVALID_DETAILS));
+    assertEquals(0, reporter.getCount(Reason.NUMBERS_EXHAUSTED));
+
+    System.out.println("Test 3: The latest failures are kept, oldest first.");
+    List<FailureEvent> events = reporter.getRecentFailures();
+    assertEquals(5, events.size());
+    assertEquals(Reason.UNKNOWN_MEMBER, events.get(0).getReason());
+    assertEquals(b1 + 1, events.get(0).getMemberNo());
+    assertEquals(10, events.get(0).getValue());
+    assertEquals(Reason.INVALID_DETAILS, events.get(4).getReason());
+  }
+
+  /**
+   * Checks that only the latest failures are kept in a long burst.
+   */
+  @Test
+  void burstTest() {
+    FailureReporter reporter = archive.getFailureReporter();
+    int burst = FailureReporter.RECENT_EVENTS * 3;
+    for (int i = 0; i < burst; i++) {
+      try {
+        archive.registerPoints(b1 + 1 + i, i);
+      } catch (UnknownMemberException e) {
+        // expected for every credit
+      }
+    }
+
+    System.out.println("Test 4: Every failure of a burst is counted, and the latest kept.");
+    assertEquals(burst, reporter.getCount(Reason.UNKNOWN_MEMBER));
+    List<FailureEvent> events = reporter.getRecentFailures();
+    assertEquals(FailureReporter.RECENT_EVENTS, events.size());
+    assertEquals(b1 + burst, events.get(events.size() - 1).getMemberNo());
+    assertEquals(b1 + burst - FailureReporter.RECENT_EVENTS + 1, events.get(0).getMemberNo());
+  }
+}
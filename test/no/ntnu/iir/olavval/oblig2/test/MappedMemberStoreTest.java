@@ -0,0 +1,128 @@
+package no.ntnu.iir.olavval.oblig2.test;
+
+import no.ntnu.iir.olavval.oblig2.model.BonusMember;
+import no.ntnu.iir.olavval.oblig2.model.MappedMemberStore;
+import no.ntnu.iir.olavval.oblig2.model.MemberArchive;
+import no.ntnu.iir.olavval.oblig2.model.MembershipLevel;
+import no.ntnu.iir.olavval.oblig2.model.Personals;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedMemberStoreTest {
+
+  // offset of the enrollment date of the second record in members.dat:
+  // a 4096 byte header, then 32 byte records with the enrollment date at byte 12.
+  private static final long SECOND_RECORD_ENROLLED = 4096 + 32 + 12;
+
+  private Path directory;
+  private LocalDate testDate;
+  private Personals ole;
+  private Personals tove;
+  private LocalDate enrollDate;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    this.directory = Files.createTempDirectory("members");
+    this.testDate = LocalDate.of(2007, 2, 10);
+    this.ole = new Personals("Ole", "Olsen",
+        "ole.olsen@dot.com", "ole");
+    this.tove = new Personals("Tove", "Hansen",
+        "tove.hansen@dot.com", "tove");
+    this.enrollDate = LocalDate.of(2006, 2, 15);
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  /**
+   * Tests that members, points, levels and passwords are kept when the store is closed
+   * and opened again.
+   */
+  @Test
+  void reopenTest() throws IOException {
+    MappedMemberStore store = new MappedMemberStore(directory);
+    MemberArchive archive = new MemberArchive(store);
+    int b1 = archive.addMember(ole, enrollDate);
+    int b2 = archive.addMember(tove, enrollDate);
+    archive.registerPoints(b1, 30000);
+    archive.registerPoints(b2, 1000);
+    archive.checkAndUpgradeMembers(testDate);
+    archive.findMember(b2).getPersonals().changePassword("tove", "hansen");
+    store.close();
+
+    System.out.println("Test 1: Members are kept when the store is opened again.");
+    MappedMemberStore reopened = new MappedMemberStore(directory);
+    assertFalse(reopened.wasRecovered());
+    MemberArchive reopenedArchive = new MemberArchive(reopened);
+    assertEquals(2, reopenedArchive.getArchiveSize());
+    BonusMember first = reopenedArchive.findMember(b1);
+    assertEquals(30000, first.getPoints());
+    assertEquals(MembershipLevel.SILVER, first.getLevel());
+    assertEquals("Olsen", first.getSurname());
+    assertEquals(enrollDate, first.getEnrolledDate());
+    assertEquals(1000, reopenedArchive.findPoints(b2, "hansen"));
+
+    System.out.println("Test 2: New members get numbers not taken before the restart.");
+    assertEquals(-1, reopenedArchive.addMember(ole, enrollDate)); // e-mail address in use
+    int b3 = reopenedArchive.addMember(new Personals("Ole", "Olsen",
+        "ole.olsen.jr@dot.com", "ole"), enrollDate);
+    assertNotEquals(-1, b3);
+    assertNotEquals(b1, b3);
+    assertNotEquals(b2, b3);
+    reopened.close();
+  }
+
+  /**
+   * Tests that a store that was not closed is checked when it is opened again, and that a
+   * damaged record is dropped while the other members are kept.
+   */
+  @Test
+  void recoveryTest() throws IOException {
+    MappedMemberStore store = new MappedMemberStore(directory);
+    MemberArchive archive = new MemberArchive(store);
+    int b1 = archive.addMember(ole, enrollDate);
+    archive.addMember(tove, enrollDate);
+    archive.registerPoints(b1, 5000);
+    store.force(); // the process stops here, without closing the store
+
+    try (FileChannel channel = FileChannel.open(directory.resolve("members.dat"),
+        StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {1, 2, 3, 4}), SECOND_RECORD_ENROLLED);
+    }
+
+    System.out.println("Test 3: A store that was not closed is checked when opened.");
+    MappedMemberStore recovered = new MappedMemberStore(directory);
+    assertTrue(recovered.wasRecovered());
+    assertEquals(1, recovered.getDroppedRecords());
+    assertEquals(1, recovered.size());
+    assertEquals(5000, recovered.get(b1).getPoints());
+    assertEquals("Ole", recovered.get(b1).getFirstName());
+
+    System.out.println("Test 4: The recovered store takes new members.");
+    MemberArchive recoveredArchive = new MemberArchive(recovered);
+    int b3 = recoveredArchive.addMember(tove, enrollDate);
+    assertEquals("Tove", recoveredArchive.findMember(b3).getFirstName());
+    recovered.close();
+    MappedMemberStore reopened = new MappedMemberStore(directory);
+    assertFalse(reopened.wasRecovered());
+    assertEquals(2, reopened.size());
+    reopened.close();
+  }
+}
@@ -1,14 +1,30 @@
 package no.ntnu.iir.olavval.oblig2.test;
 
 import no.ntnu.iir.olavval.oblig2.model.BasicMember;
+import no.ntnu.iir.olavval.oblig2.model.BonusMember;
 import no.ntnu.iir.olavval.oblig2.model.GoldMember;
 import no.ntnu.iir.olavval.oblig2.model.MemberArchive;
+import no.ntnu.iir.olavval.oblig2.model.MemberColumns;
+import no.ntnu.iir.olavval.oblig2.model.MemberNumberAllocator;
+import no.ntnu.iir.olavval.oblig2.model.MembershipLevel;
+import no.ntnu.iir.olavval.oblig2.model.OpenAddressingMemberStore;
 import no.ntnu.iir.olavval.oblig2.model.Personals;
+import no.ntnu.iir.olavval.oblig2.model.PointBatchResult;
+import no.ntnu.iir.olavval.oblig2.model.PointsResult;
+import no.ntnu.iir.olavval.oblig2.model.ResultCode;
 import no.ntnu.iir.olavval.oblig2.model.SilverMember;
+import no.ntnu.iir.olavval.oblig2.model.UpgradeSummary;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -219,6 +235,472 @@ public class MemberArchiveTest {
 
   }
 
+  /**
+   * Tests registering a batch of points, where members appear several times,
+   * and the batch holds unknown member numbers and negative point values.
+   */
+  @Test
+  void registerPointsBatchTest() {
+    int oleMemberNo = archive.addMember(ole, oleEnrollDate);
+    int toveMemberNo = archive.addMember(tove, toveEnrollDate);
+    int unknownMemberNo = Math.max(oleMemberNo, toveMemberNo) + 1;
+
+    int[] memberNos = {toveMemberNo, oleMemberNo, unknownMemberNo, toveMemberNo, oleMemberNo};
+    int[] points = {1000, 2000, 500, 3000, -10};
+    PointBatchResult result = archive.registerPoints(memberNos, points);
+
+    System.out.println("Test 19: Batch credits are summed per member.");
+    assertEquals(2000, archive.findMember(oleMemberNo).getPoints());
+    assertEquals(4000, archive.findMember(toveMemberNo).getPoints());
+    assertEquals(2, result.getCreditedMembers());
+    assertEquals(6000, result.getCreditedPoints());
+
+    System.out.println("Test 20: Bad credits are reported instead of thrown.");
+    assertEquals(1, result.getRejectedCredits());
+    assertArrayEquals(new int[] {unknownMemberNo}, result.getUnknownMemberNos());
+    assertFalse(result.isComplete());
+
+    System.out.println("Test 21: Mismatched arrays are rejected.");
+    assertThrows(IllegalArgumentException.class,
+        () -> archive.registerPoints(new int[] {oleMemberNo}, new int[0]));
+  }
+
+  /**
+   * Tests the methods reporting failed logins and credits as result codes, and the throwing
+   * methods built on them.
+   */
+  @Test
+  void resultCodeTest() {
+    int oleMemberNo = archive.addMember(ole, oleEnrollDate);
+    int unknownMemberNo = oleMemberNo + 1;
+    PointsResult result = new PointsResult();
+
+    System.out.println("Test 34: Credits report their outcome as a result code.");
+    assertEquals(ResultCode.FOUND, archive.tryRegisterPoints(oleMemberNo, 1000));
+    assertEquals(ResultCode.NO_MEMBER, archive.tryRegisterPoints(unknownMemberNo, 1000));
+    assertEquals(ResultCode.NEGATIVE_POINTS, archive.tryRegisterPoints(oleMemberNo, -1));
+    assertEquals(1000, archive.findMember(oleMemberNo).getPoints());
+
+    System.out.println("Test 35: Logins report their outcome in a reusable holder.");
+    assertSame(result, archive.tryFindPoints(oleMemberNo, "ole", result));
+    assertEquals(ResultCode.FOUND, result.getStatus());
+    assertEquals(1000, result.getPoints());
+    assertEquals(ResultCode.BAD_PASSWORD,
+        archive.tryFindPoints(oleMemberNo, "wrong", result).getStatus());
+    assertThrows(IllegalStateException.class, result::getPoints);
+    assertEquals(ResultCode.NO_MEMBER,
+        archive.tryFindPoints(unknownMemberNo, "ole", result).getStatus());
+
+    System.out.println("Test 36: The throwing methods still throw.");
+    assertEquals(1000, archive.findPoints(oleMemberNo, "ole"));
+    assertThrows(IllegalArgumentException.class, () -> archive.findPoints(oleMemberNo, "x"));
+    assertThrows(IllegalArgumentException.class, () -> archive.findPoints(unknownMemberNo, "ole"));
+    assertThrows(NullPointerException.class, () -> archive.registerPoints(unknownMemberNo, 1));
+    assertThrows(NumberFormatException.class, () -> archive.registerPoints(oleMemberNo, -1));
+  }
+
+  /**
+   * Tests finding members and logging in by e-mail address, and that no two members can have
+   * the same address.
+   */
+  @Test
+  void emailIndexTest() {
+    int oleMemberNo = archive.addMember(ole, oleEnrollDate);
+    int toveMemberNo = archive.addMember(tove, toveEnrollDate);
+    archive.registerPoints(oleMemberNo, 1000);
+
+    System.out.println("Test 37: Members are found by e-mail address, in any case.");
+    assertEquals(oleMemberNo, archive.findByEmail("ole.olsen@dot.com").getMemberNo());
+    assertEquals(toveMemberNo, archive.findByEmail(" Tove.HANSEN@dot.com ").getMemberNo());
+    assertNull(archive.findByEmail("lise@lisand.no"));
+    assertNull(archive.findByEmail(null));
+
+    System.out.println("Test 38: Members log in by e-mail address.");
+    assertEquals(1000, archive.findPointsByEmail("OLE.OLSEN@DOT.COM", "ole"));
+    assertThrows(IllegalArgumentException.class,
+        () -> archive.findPointsByEmail("ole.olsen@dot.com", "wrong"));
+    assertThrows(IllegalArgumentException.class,
+        () -> archive.findPointsByEmail("lise@lisand.no", "lise"));
+    assertEquals(ResultCode.NO_MEMBER,
+        archive.tryFindPointsByEmail("lise@lisand.no", "lise", new PointsResult()).getStatus());
+
+    System.out.println("Test 39: A member with an e-mail address already in use is not added.");
+    Personals otherOle = new Personals("Ole", "Hansen", "Ole.Olsen@dot.com", "olle");
+    assertEquals(-1, archive.addMember(otherOle, oleEnrollDate));
+    int[] added = archive.addMembers(new Personals[] {lise, tove, lise},
+        new LocalDate[] {liseEnrollDate, toveEnrollDate, liseEnrollDate});
+    assertNotEquals(-1, added[0]);
+    assertEquals(-1, added[1]);
+    assertEquals(-1, added[2]);
+    assertEquals(3, archive.getArchiveSize());
+    assertEquals(oleMemberNo, archive.findByEmail("ole.olsen@dot.com").getMemberNo());
+
+    System.out.println("Test 40: A removed member's e-mail address can be used again.");
+    archive.removeMember(archive.findMember(oleMemberNo));
+    assertNull(archive.findByEmail("ole.olsen@dot.com"));
+    int otherOleMemberNo = archive.addMember(otherOle, oleEnrollDate);
+    assertNotEquals(-1, otherOleMemberNo);
+    assertEquals("Hansen", archive.findByEmail("ole.olsen@dot.com").getSurname());
+  }
+
+  /**
+   * Tests finding members by the start of a name, and by a misspelt name, page by page.
+   */
+  @Test
+  void findByNameTest() {
+    int oleMemberNo = archive.addMember(ole, oleEnrollDate);
+    int toveMemberNo = archive.addMember(tove, toveEnrollDate);
+    int liseMemberNo = archive.addMember(lise, liseEnrollDate);
+    int hansMemberNo = archive.addMember(new Personals("Hans", "Hansen",
+        "hans@hansen.no", "hans"), toveEnrollDate);
+
+    System.out.println("Test 41: Members are found by the start of either name, once each.");
+    assertEquals(Arrays.asList(hansMemberNo, toveMemberNo), memberNos(
+        archive.findByName("HAN", 0, 10)));
+    assertEquals(Arrays.asList(liseMemberNo), memberNos(archive.findByName("lis", 0, 10)));
+    assertEquals(Arrays.asList(oleMemberNo), memberNos(archive.findByName(" ol", 0, 10)));
+    assertTrue(archive.findByName("x", 0, 10).isEmpty());
+    assertThrows(IllegalArgumentException.class, () -> archive.findByName("han", -1, 10));
+    assertThrows(IllegalArgumentException.class, () -> archive.findByName("han", 0, 0));
+
+    System.out.println("Test 42: Results come in pages.");
+    assertEquals(Arrays.asList(hansMemberNo), memberNos(archive.findByName("han", 0, 1)));
+    assertEquals(Arrays.asList(toveMemberNo), memberNos(archive.findByName("han", 1, 1)));
+    assertTrue(archive.findByName("han", 2, 1).isEmpty());
+    assertEquals(4, archive.findByName("", 0, 10).size());
+
+    System.out.println("Test 43: Members are found by names a few edits away.");
+    assertEquals(Arrays.asList(hansMemberNo, toveMemberNo), memberNos(
+        archive.findByNameFuzzy("Hansn", 1, 0, 10)));
+    assertEquals(Arrays.asList(liseMemberNo), memberNos(
+        archive.findByNameFuzzy("lsie", 2, 0, 10)));
+    assertTrue(archive.findByNameFuzzy("lsie", 1, 0, 10).isEmpty());
+    assertEquals(Arrays.asList(hansMemberNo), memberNos(
+        archive.findByNameFuzzy("hans", 0, 0, 10)));
+    assertThrows(IllegalArgumentException.class,
+        () -> archive.findByNameFuzzy("hans", MemberArchive.MAX_NAME_DISTANCE + 1, 0, 10));
+
+    System.out.println("Test 44: Removed members are no longer found.");
+    archive.removeMember(archive.findMember(hansMemberNo));
+    assertEquals(Arrays.asList(toveMemberNo), memberNos(archive.findByName("han", 0, 10)));
+    assertEquals(Arrays.asList(toveMemberNo), memberNos(
+        archive.findByNameFuzzy("hansn", 1, 0, 10)));
+
+    System.out.println("Test 55: Many members with one name are paged by member number, after "
+        + "removals.");
+    List<Integer> nordmannNos = new ArrayList<>();
+    for (int i = 0; i < 3000; i++) {
+      int memberNo = archive.addMember(new Personals("Nora", "Nordmann",
+          "nora" + i + "@nordmann.no", "nora"), oleEnrollDate);
+      if (i % 3 == 0) {
+        archive.removeMember(archive.findMember(memberNo));
+      } else {
+        nordmannNos.add(memberNo);
+      }
+    }
+    List<Integer> paged = new ArrayList<>();
+    for (int offset = 0; offset < nordmannNos.size(); offset += 700) {
+      paged.addAll(memberNos(archive.findByName("nordm", offset, 700)));
+    }
+    assertEquals(nordmannNos.stream().sorted().collect(Collectors.toList()), paged);
+  }
+
+  /**
+   * Tests counting and visiting members by enrollment date, and the upgrade run that only checks
+   * members in their first year.
+   */
+  @Test
+  void enrollmentIndexTest() {
+    int oleMemberNo = archive.addMember(ole, oleEnrollDate);
+    int toveMemberNo = archive.addMember(tove, toveEnrollDate);
+    int liseMemberNo = archive.addMember(lise, liseEnrollDate);
+    int jonasMemberNo = archive.addMember(jonas, jonasEnrollDate);
+    int erikMemberNo = archive.addMember(erik, erikEnrollDate);
+
+    System.out.println("Test 45: Members are counted and visited by enrollment date.");
+    assertEquals(2, archive.countEnrolledBetween(LocalDate.of(2006, 1, 1),
+        LocalDate.of(2006, 3, 31)));
+    assertEquals(1, archive.countEnrolledBetween(LocalDate.of(2007, 1, 1),
+        LocalDate.of(2007, 3, 31)));
+    assertEquals(1, archive.countEnrolledBetween(erikEnrollDate, erikEnrollDate));
+    assertEquals(0, archive.countEnrolledBetween(toveEnrollDate, erikEnrollDate));
+    List<BonusMember> visited = new ArrayList<>();
+    archive.forEachEnrolledBetween(LocalDate.of(2007, 1, 1), testDate, visited::add);
+    assertEquals(Arrays.asList(erikMemberNo, toveMemberNo, liseMemberNo), memberNos(visited));
+
+    System.out.println("Test 46: Members in their first year are counted, February 29th too.");
+    assertEquals(3, archive.countInQualificationPeriod(testDate));
+    int leapMemberNo = archive.addMember(new Personals("Skud", "Aar", "skud@aar.no", "skud"),
+        LocalDate.of(2008, 2, 29));
+    assertEquals(1, archive.countInQualificationPeriod(LocalDate.of(2009, 2, 28)));
+    assertEquals(0, archive.countInQualificationPeriod(LocalDate.of(2009, 3, 1)));
+    archive.removeMember(archive.findMember(leapMemberNo));
+    assertEquals(3, archive.countInQualificationPeriod(testDate));
+
+    System.out.println("Test 47: The first-year upgrade run only checks members in their first "
+        + "year.");
+    archive.registerPoints(oleMemberNo, 80000); // above gold limit, but wrong date
+    archive.registerPoints(toveMemberNo, 25000);
+    archive.registerPoints(erikMemberNo, 75000);
+    archive.registerPoints(jonasMemberNo, 30000); // wrong date
+    UpgradeSummary summary = archive.checkAndUpgradeRecentMembers(testDate);
+    assertEquals(3, summary.getMembersChecked());
+    assertEquals(1, summary.getSilverUpgrades());
+    assertEquals(1, summary.getGoldUpgrades());
+    assertEquals(MembershipLevel.BASIC, archive.findMember(oleMemberNo).getLevel());
+    assertEquals(MembershipLevel.SILVER, archive.findMember(toveMemberNo).getLevel());
+    assertEquals(MembershipLevel.GOLD, archive.findMember(erikMemberNo).getLevel());
+    assertEquals(0, archive.checkAndUpgradeMembers(testDate).getTotalUpgrades());
+
+    System.out.println("Test 56: Members visited by enrollment date can be removed by the "
+        + "action.");
+    LocalDate day = LocalDate.of(2010, 1, 1);
+    for (int i = 0; i < 1500; i++) {
+      archive.addMember(new Personals("Nora", "Nordmann", "nora" + i + "@nordmann.no", "nora"),
+          day);
+    }
+    List<BonusMember> removed = new ArrayList<>();
+    archive.forEachEnrolledBetween(day, day, member -> {
+      archive.removeMember(member);
+      removed.add(member);
+    });
+    assertEquals(1500, removed.size());
+    assertEquals(0, archive.countEnrolledBetween(day, day));
+  }
+
+  /**
+   * Tests the leaderboard, ranks and point ranges read from the points index, as members are
+   * credited, upgraded and removed.
+   */
+  @Test
+  void pointsIndexTest() throws InterruptedException {
+    int oleMemberNo = archive.addMember(ole, oleEnrollDate);
+    int toveMemberNo = archive.addMember(tove, toveEnrollDate);
+    int liseMemberNo = archive.addMember(lise, liseEnrollDate);
+    int jonasMemberNo = archive.addMember(jonas, jonasEnrollDate);
+    archive.registerPoints(oleMemberNo, 15000);
+    archive.registerPoints(toveMemberNo, 30000);
+    archive.registerPoints(liseMemberNo, 5000);
+    archive.registerPoints(jonasMemberNo, 5000);
+    int firstTied = Math.min(liseMemberNo, jonasMemberNo);
+    int lastTied = Math.max(liseMemberNo, jonasMemberNo);
+
+    System.out.println("Test 48: Members are ranked by points, and by member number on a tie.");
+    assertEquals(Arrays.asList(toveMemberNo, oleMemberNo), memberNos(archive.findTopMembers(2)));
+    assertEquals(Arrays.asList(toveMemberNo, oleMemberNo, firstTied, lastTied),
+        memberNos(archive.findTopMembers(10)));
+    assertEquals(1, archive.getRank(toveMemberNo));
+    assertEquals(3, archive.getRank(firstTied));
+    assertEquals(4, archive.getRank(lastTied));
+    assertEquals(-1, archive.getRank(-5));
+    assertThrows(IllegalArgumentException.class, () -> archive.findTopMembers(0));
+
+    System.out.println("Test 49: Members are found and counted by points, page by page.");
+    assertEquals(Arrays.asList(oleMemberNo, firstTied, lastTied),
+        memberNos(archive.findByPoints(5000, 15000, 0, 10)));
+    assertEquals(Arrays.asList(lastTied), memberNos(archive.findByPoints(5000, 15000, 2, 10)));
+    assertTrue(archive.findByPoints(5001, 14999, 0, 10).isEmpty());
+    assertTrue(archive.findByPoints(15000, 5000, 0, 10).isEmpty());
+    assertEquals(2, archive.countByPoints(5000, 5000));
+    assertEquals(4, archive.countByPoints(0, Integer.MAX_VALUE));
+    assertEquals(0, archive.countByPoints(30001, Integer.MAX_VALUE));
+    assertThrows(IllegalArgumentException.class, () -> archive.countByPoints(-1, 10));
+    assertThrows(IllegalArgumentException.class, () -> archive.findByPoints(0, 10, -1, 10));
+
+    System.out.println("Test 50: Credits, upgrades and removals move members in the ranking.");
+    archive.registerPoints(lastTied, 40000);
+    assertEquals(1, archive.getRank(lastTied));
+    assertEquals(2, archive.getRank(toveMemberNo));
+    archive.checkAndUpgradeMembers(testDate); // Tove and Lise or Jonas move up a level
+    assertEquals(Arrays.asList(lastTied, toveMemberNo, oleMemberNo, firstTied),
+        memberNos(archive.findTopMembers(10)));
+    archive.removeMember(archive.findMember(oleMemberNo));
+    assertEquals(-1, archive.getRank(oleMemberNo));
+    assertEquals(3, archive.getRank(firstTied));
+    assertEquals(0, archive.countByPoints(15000, 15000));
+
+    System.out.println("Test 51: The ranking matches the points after concurrent credits.");
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      int memberNo = t % 2 == 0 ? toveMemberNo : firstTied;
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < 1000; i++) {
+          archive.tryRegisterPoints(memberNo, 10);
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    List<BonusMember> top = archive.findTopMembers(10);
+    assertEquals(3, top.size());
+    for (int i = 1; i < top.size(); i++) {
+      assertTrue(top.get(i - 1).getPoints() >= top.get(i).getPoints());
+    }
+    int firstTiedPoints = archive.findMember(firstTied).getPoints();
+    assertEquals(1, archive.countByPoints(firstTiedPoints, firstTiedPoints));
+  }
+
+  /**
+   * Tests the ranking against a sorted copy of the archive, over enough members, credits and
+   * removals that members move between the blocks of the points index, and blocks are split and
+   * merged.
+   */
+  @Test
+  void pointsIndexRandomTest() {
+    Random random = new Random(42);
+    List<Integer> memberNos = new ArrayList<>();
+    for (int i = 0; i < 3000; i++) {
+      memberNos.add(archive.addMember(new Personals("Nora", "Nordmann",
+          "nora" + i + "@nordmann.no", "nora"), oleEnrollDate));
+    }
+
+    System.out.println("Test 57: The ranking matches a sorted copy of the archive after random "
+        + "credits, removals and additions.");
+    for (int round = 0; round < 10; round++) {
+      for (int i = 0; i < 2000; i++) {
+        int points = random.nextInt(20) == 0 ? random.nextInt(100000) : random.nextInt(500);
+        archive.registerPoints(memberNos.get(random.nextInt(memberNos.size())), points);
+      }
+      for (int i = 0; i < 200; i++) {
+        int removed = memberNos.remove(random.nextInt(memberNos.size()));
+        archive.removeMember(archive.findMember(removed));
+        memberNos.add(archive.addMember(new Personals("Nora", "Nordmann",
+            "nora" + round + "x" + i + "@nordmann.no", "nora"), oleEnrollDate));
+      }
+      assertRankingMatches(random);
+    }
+    while (memberNos.size() > 100) { // empties the blocks, which are merged
+      for (int i = 0; i < 290; i++) {
+        int removed = memberNos.remove(random.nextInt(memberNos.size()));
+        archive.removeMember(archive.findMember(removed));
+      }
+      assertRankingMatches(random);
+    }
+  }
+
+  /**
+   * Asserts that ranks, pages and counts by points match the members of the archive sorted
+   * by points, most points first, and by member number among members with the same points.
+   */
+  private void assertRankingMatches(Random random) {
+    List<BonusMember> sorted = new ArrayList<>();
+    archive.forEach(sorted::add);
+    sorted.sort(Comparator.comparingInt(BonusMember::getPoints).reversed()
+        .thenComparingInt(BonusMember::getMemberNo));
+    for (int i = 0; i < sorted.size(); i++) {
+      assertEquals(i + 1, archive.getRank(sorted.get(i).getMemberNo()));
+    }
+    assertEquals(memberNos(sorted), memberNos(archive.findTopMembers(sorted.size() + 1)));
+    int minPoints = random.nextInt(5000);
+    int maxPoints = minPoints + random.nextInt(100000);
+    List<BonusMember> inRange = sorted.stream()
+        .filter(member -> member.getPoints() >= minPoints && member.getPoints() <= maxPoints)
+        .collect(Collectors.toList());
+    assertEquals(inRange.size(), archive.countByPoints(minPoints, maxPoints));
+    int offset = inRange.isEmpty() ? 0 : random.nextInt(inRange.size());
+    assertEquals(memberNos(inRange.subList(offset, Math.min(offset + 100, inRange.size()))),
+        memberNos(archive.findByPoints(minPoints, maxPoints, offset, 100)));
+  }
+
+  /**
+   * Tests an archive created without a ranking.
+   */
+  @Test
+  void unrankedArchiveTest() {
+    MemberArchive unranked = new MemberArchive(new OpenAddressingMemberStore(),
+        new MemberNumberAllocator(), EnumSet.complementOf(EnumSet.of(MemberArchive.Index.POINTS)));
+    int oleMemberNo = unranked.addMember(ole, oleEnrollDate);
+
+    System.out.println("Test 58: An archive without a ranking registers points, but does not "
+        + "rank its members.");
+    unranked.registerPoints(oleMemberNo, 30000);
+    assertEquals(30000, unranked.findPoints(oleMemberNo, "ole"));
+    assertThrows(IllegalStateException.class, () -> unranked.findTopMembers(10));
+    assertThrows(IllegalStateException.class, () -> unranked.getRank(oleMemberNo));
+    assertThrows(IllegalStateException.class, () -> unranked.findByPoints(0, 10, 0, 10));
+    assertThrows(IllegalStateException.class, () -> unranked.countByPoints(0, 10));
+    unranked.removeMember(unranked.findMember(oleMemberNo));
+    assertEquals(0, unranked.getArchiveSize());
+  }
+
+  /**
+   * Tests an archive created without any index.
+   */
+  @Test
+  void unindexedArchiveTest() {
+    MemberArchive unindexed = new MemberArchive(new OpenAddressingMemberStore(),
+        new MemberNumberAllocator(), EnumSet.noneOf(MemberArchive.Index.class));
+    int oleMemberNo = unindexed.addMember(ole, oleEnrollDate);
+
+    System.out.println("Test 59: An archive without an e-mail index lets members share an "
+        + "address, and cannot find them by address.");
+    int otherMemberNo = unindexed.addMember(ole, toveEnrollDate);
+    assertTrue(otherMemberNo >= 0);
+    assertEquals(2, unindexed.getArchiveSize());
+    assertThrows(IllegalStateException.class, () -> unindexed.findByEmail(ole.getEMailAddress()));
+    assertThrows(IllegalStateException.class,
+        () -> unindexed.findPointsByEmail(ole.getEMailAddress(), "ole"));
+
+    System.out.println("Test 60: An archive without a name index cannot find members by name.");
+    assertThrows(IllegalStateException.class, () -> unindexed.findByName("ol", 0, 10));
+    assertThrows(IllegalStateException.class, () -> unindexed.findByNameFuzzy("olsn", 1, 0, 10));
+    unindexed.removeMember(unindexed.findMember(oleMemberNo));
+    assertEquals(otherMemberNo, unindexed.findMember(otherMemberNo).getMemberNo());
+  }
+
+  /**
+   * Tests counting and visiting the members of one membership level, as members are added,
+   * upgraded and removed.
+   */
+  @Test
+  void levelIndexTest() {
+    int oleMemberNo = archive.addMember(ole, oleEnrollDate);
+    int toveMemberNo = archive.addMember(tove, toveEnrollDate);
+    int liseMemberNo = archive.addMember(lise, liseEnrollDate);
+    int erikMemberNo = archive.addMember(erik, erikEnrollDate);
+
+    System.out.println("Test 52: New members are counted and visited at Basic level.");
+    assertEquals(4, archive.countAtLevel(MembershipLevel.BASIC));
+    assertEquals(0, archive.countAtLevel(MembershipLevel.SILVER));
+    assertEquals(0, archive.streamAtLevel(MembershipLevel.GOLD).count());
+    assertThrows(IllegalArgumentException.class, () -> archive.countAtLevel(null));
+
+    System.out.println("Test 53: Upgraded members move to their new level.");
+    archive.registerPoints(toveMemberNo, 25000);
+    archive.registerPoints(erikMemberNo, 75000);
+    archive.checkAndUpgradeMembers(testDate);
+    assertEquals(2, archive.countAtLevel(MembershipLevel.BASIC));
+    assertEquals(1, archive.countAtLevel(MembershipLevel.SILVER));
+    assertEquals(1, archive.countAtLevel(MembershipLevel.GOLD));
+    List<BonusMember> basic = new ArrayList<>();
+    archive.forEachAtLevel(MembershipLevel.BASIC, basic::add);
+    List<Integer> basicNos = memberNos(basic);
+    assertEquals(2, basicNos.size());
+    assertTrue(basicNos.contains(oleMemberNo) && basicNos.contains(liseMemberNo));
+    assertEquals(Arrays.asList(toveMemberNo),
+        memberNos(archive.streamAtLevel(MembershipLevel.SILVER).collect(Collectors.toList())));
+    assertEquals(erikMemberNo, archive.parallelStreamAtLevel(MembershipLevel.GOLD)
+        .mapToInt(BonusMember::getMemberNo).sum());
+
+    System.out.println("Test 54: Removed members leave their level.");
+    archive.removeMember(archive.findMember(oleMemberNo));
+    archive.removeMember(archive.findMember(erikMemberNo));
+    assertEquals(1, archive.countAtLevel(MembershipLevel.BASIC));
+    assertEquals(0, archive.countAtLevel(MembershipLevel.GOLD));
+    assertEquals(Arrays.asList(liseMemberNo), memberNos(
+        archive.streamAtLevel(MembershipLevel.BASIC).collect(Collectors.toList())));
+  }
+
+  private static List<Integer> memberNos(List<BonusMember> members) {
+    List<Integer> memberNos = new ArrayList<>();
+    for (BonusMember member : members) {
+      memberNos.add(member.getMemberNo());
+    }
+    return memberNos;
+  }
+
   /**
    * Tests the process of checking members for membership level upgrade eligibility,
    * and the upgrade process itself. The tests are combined because the methods that upgrade
@@ -262,15 +744,15 @@ public class MemberArchiveTest {
             "Erik: Gold");
 
     System.out.println("Test 16: Asserts that each member now has expected membership level.");
-    assertTrue(archive.findMember(b1) instanceof BasicMember,
+    assertEquals(MembershipLevel.BASIC, archive.findMember(b1).getLevel(),
             "Ole is not a basic member.");
-    assertTrue(archive.findMember(b2) instanceof SilverMember,
+    assertEquals(MembershipLevel.SILVER, archive.findMember(b2).getLevel(),
             "Tove is not a silver member.");
-    assertTrue(archive.findMember(b3) instanceof SilverMember,
+    assertEquals(MembershipLevel.SILVER, archive.findMember(b3).getLevel(),
             "Lise is not a silver member.");
-    assertTrue(archive.findMember(b4) instanceof BasicMember,
+    assertEquals(MembershipLevel.BASIC, archive.findMember(b4).getLevel(),
             "Jonas is not a basic member.");
-    assertTrue(archive.findMember(b5) instanceof GoldMember,
+    assertEquals(MembershipLevel.GOLD, archive.findMember(b5).getLevel(),
             "Erik is not a gold member");
 
     // new round of adding points and checking for qualified upgrades
@@ -299,19 +781,170 @@ public class MemberArchiveTest {
 
     System.out.println("Test 18: Asserts that each member is " +
             "the expected level after second round of upgrades.");
-    assertTrue(archive.findMember(b1) instanceof BasicMember,
+    assertEquals(MembershipLevel.BASIC, archive.findMember(b1).getLevel(),
             "Ole is not a basic member.");
-    assertTrue(archive.findMember(b2) instanceof SilverMember,
+    assertEquals(MembershipLevel.SILVER, archive.findMember(b2).getLevel(),
             "Tove is not a silver member.");
-    assertTrue(archive.findMember(b3) instanceof GoldMember,
+    assertEquals(MembershipLevel.GOLD, archive.findMember(b3).getLevel(),
             "Lise is not a silver member.");
-    assertTrue(archive.findMember(b4) instanceof BasicMember,
+    assertEquals(MembershipLevel.BASIC, archive.findMember(b4).getLevel(),
             "Jonas is not a basic member.");
-    assertTrue(archive.findMember(b5) instanceof GoldMember,
+    assertEquals(MembershipLevel.GOLD, archive.findMember(b5).getLevel(),
             "Erik is not a gold member");
 
     // TODO: 04/02/2020 find some more negative tests?
 
 
   }
+
+  /**
+   * Tests that an upgrade changes the level of the member object already in the archive,
+   * so references held to it stay valid, and that the new bonus multiplier applies to it.
+   */
+  @Test
+  void upgradeInPlaceTest() {
+    int toveMemberNo = archive.addMember(tove, toveEnrollDate);
+    BonusMember toveBefore = archive.findMember(toveMemberNo);
+    archive.registerPoints(toveMemberNo, 25000);
+
+    System.out.println("Test 28: Upgrade keeps the member object.");
+    archive.checkAndUpgradeMembers(testDate);
+    assertSame(toveBefore, archive.findMember(toveMemberNo));
+    assertEquals(MembershipLevel.SILVER, toveBefore.getLevel());
+    assertEquals("Silver", toveBefore.getMembershipLevel());
+
+    System.out.println("Test 29: Upgraded member gets the Silver multiplier.");
+    archive.registerPoints(toveMemberNo, 10000);
+    assertEquals(25000 + 12000, toveBefore.getPoints());
+
+    System.out.println("Test 30: Upgrade to Gold keeps the member object.");
+    archive.registerPoints(toveMemberNo, 40000);
+    assertEquals(1, archive.checkAndUpgradeMembers(testDate).getGoldUpgrades());
+    assertSame(toveBefore, archive.findMember(toveMemberNo));
+    assertEquals("Gold", toveBefore.getMembershipLevel());
+  }
+
+  /**
+   * Tests that the candidate based upgrade run upgrades the same members as a full run,
+   * and that only members whose points passed a limit are checked.
+   */
+  @Test
+  void checkAndUpgradeCandidatesTest() {
+    int b1 = archive.addMember(ole, oleEnrollDate);
+    int b2 = archive.addMember(tove, toveEnrollDate);
+    int b3 = archive.addMember(lise, liseEnrollDate);
+    int b4 = archive.addMember(jonas, jonasEnrollDate);
+    int b5 = archive.addMember(erik, erikEnrollDate);
+
+    archive.registerPoints(b1, 10000); // few points and wrong date
+    archive.registerPoints(b2, 25000); // at silver limit
+    archive.registerPoints(b3, 74999); // just below gold limit
+    archive.registerPoints(b4, 80000); // above gold limit, but wrong date.
+    archive.registerPoints(b5, 75000); // at gold limit
+
+    System.out.println("Test 25: Only members above the silver limit are candidates.");
+    assertEquals(4, archive.getUpgradeCandidateCount());
+
+    System.out.println("Test 26: Candidate run upgrades the qualified members.");
+    UpgradeSummary summary = archive.checkAndUpgradeCandidates(testDate);
+    assertEquals(4, summary.getMembersChecked());
+    assertEquals(2, summary.getSilverUpgrades());
+    assertEquals(1, summary.getGoldUpgrades());
+    assertEquals(MembershipLevel.BASIC, archive.findMember(b1).getLevel());
+    assertEquals(MembershipLevel.SILVER, archive.findMember(b2).getLevel());
+    assertEquals(MembershipLevel.SILVER, archive.findMember(b3).getLevel());
+    assertEquals(MembershipLevel.BASIC, archive.findMember(b4).getLevel());
+    assertEquals(MembershipLevel.GOLD, archive.findMember(b5).getLevel());
+    assertEquals(0, archive.getUpgradeCandidateCount());
+
+    System.out.println("Test 27: Lise passes the gold limit and becomes a candidate again.");
+    archive.registerPoints(b3, 1200);
+    archive.registerPoints(b2, 100);
+    assertEquals(1, archive.getUpgradeCandidateCount());
+    assertEquals(1, archive.checkAndUpgradeCandidates(testDate).getGoldUpgrades());
+    assertEquals(MembershipLevel.GOLD, archive.findMember(b3).getLevel());
+  }
+
+  /**
+   * Tests the parallel upgrade run on an archive large enough to be split between threads.
+   * Every third member qualifies for Silver, every third for Gold, and every third has
+   * enrolled too long ago to qualify at all.
+   */
+  @Test
+  void parallelCheckAndUpgradeMembersTest() {
+    int memberCount = 30000;
+    for (int i = 0; i < memberCount; i++) {
+      Personals person = new Personals("First" + i, "Last",
+          "member" + i + "@dot.com", "pass");
+      int memberNo = archive.addMember(person, i % 3 == 2 ? oleEnrollDate : toveEnrollDate);
+      archive.registerPoints(memberNo, i % 3 == 0 ? 30000 : 80000);
+    }
+
+    System.out.println("Test 22: Parallel upgrade run promotes the qualified members.");
+    UpgradeSummary summary = archive.checkAndUpgradeMembers(testDate, 4);
+    assertEquals(memberCount, summary.getMembersChecked());
+    assertEquals(memberCount / 3, summary.getSilverUpgrades());
+    assertEquals(memberCount / 3, summary.getGoldUpgrades());
+    assertEquals(memberCount / 3, archive.stream()
+        .filter(member -> member.getLevel() == MembershipLevel.SILVER).count());
+    assertEquals(memberCount / 3, archive.stream()
+        .filter(member -> member.getLevel() == MembershipLevel.GOLD).count());
+
+    System.out.println("Test 23: A second run finds nothing more to upgrade.");
+    assertEquals(0, archive.checkAndUpgradeMembers(testDate, 4).getTotalUpgrades());
+    assertEquals(0, archive.checkAndUpgradeMembers(testDate).getTotalUpgrades());
+
+    System.out.println("Test 24: Parallelism must be positive.");
+    assertThrows(IllegalArgumentException.class,
+        () -> archive.checkAndUpgradeMembers(testDate, 0));
+  }
+
+  /**
+   * Tests that scans over the columns of the archive give the same answers as
+   * the member objects, and that the upgrade evaluation finds the members a full
+   * upgrade run would upgrade.
+   */
+  @Test
+  void toColumnsTest() {
+    int b1 = archive.addMember(ole, oleEnrollDate);
+    int b2 = archive.addMember(tove, toveEnrollDate);
+    int b3 = archive.addMember(lise, liseEnrollDate);
+    int b4 = archive.addMember(jonas, jonasEnrollDate);
+    int b5 = archive.addMember(erik, erikEnrollDate);
+
+    archive.registerPoints(b1, 10000); // few points and wrong date
+    archive.registerPoints(b2, 25000); // at silver limit
+    archive.registerPoints(b3, 74999); // just below gold limit
+    archive.registerPoints(b4, 80000); // above gold limit, but wrong date.
+    archive.registerPoints(b5, 75000); // at gold limit
+
+    System.out.println("Test 31: Columns hold the same members as the archive.");
+    MemberColumns columns = archive.toColumns();
+    assertEquals(archive.getArchiveSize(), columns.size());
+    for (int row = 0; row < columns.size(); row++) {
+      BonusMember member = archive.findMember(columns.getMemberNo(row));
+      assertEquals(member.getPoints(), columns.getPoints(row));
+      assertEquals(member.getLevel(), columns.getLevel(row));
+      assertEquals(member.getEnrolledEpochDay(), columns.getEnrolledEpochDay(row));
+      assertSame(member.getPersonals(), columns.getPersonals(row));
+    }
+
+    System.out.println("Test 32: Scans over the columns.");
+    assertEquals(264999, columns.sumPoints());
+    assertEquals(264999, columns.sumPointsByLevel()[MembershipLevel.BASIC.ordinal()]);
+    assertEquals(3, columns.countAtOrAbove(MemberArchive.GOLD_LIMIT - 1));
+    assertEquals(2, columns.countEnrolledBetween(oleEnrollDate, oleEnrollDate));
+    assertArrayEquals(new int[] {b5}, columns.findUpgradesTo(testDate, MembershipLevel.GOLD));
+    int[] silver = columns.findUpgradesTo(testDate, MembershipLevel.SILVER);
+    Arrays.sort(silver);
+    assertArrayEquals(new int[] {b2, b3}, silver);
+
+    System.out.println("Test 33: Columns are a snapshot, and do not follow upgrades.");
+    archive.checkAndUpgradeMembers(testDate);
+    assertEquals(5, columns.countByLevel()[MembershipLevel.BASIC.ordinal()]);
+    MemberColumns upgraded = archive.toColumns();
+    assertEquals(1, upgraded.countByLevel()[MembershipLevel.GOLD.ordinal()]);
+    assertEquals(75000, upgraded.sumPointsByLevel()[MembershipLevel.GOLD.ordinal()]);
+    assertEquals(0, upgraded.findUpgradesTo(testDate, MembershipLevel.SILVER).length);
+  }
 }
@@ -0,0 +1,130 @@
+package no.ntnu.iir.olavval.oblig2.test;
+
+import no.ntnu.iir.olavval.oblig2.model.BasicMember;
+import no.ntnu.iir.olavval.oblig2.model.BonusMember;
+import no.ntnu.iir.olavval.oblig2.model.GoldMember;
+import no.ntnu.iir.olavval.oblig2.model.MemberDecoder;
+import no.ntnu.iir.olavval.oblig2.model.MemberEncoder;
+import no.ntnu.iir.olavval.oblig2.model.Personals;
+import no.ntnu.iir.olavval.oblig2.model.SilverMember;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MemberCodecTest {
+
+  private LocalDate enrollDate;
+  private Personals ole;
+  private Personals tove;
+  private Personals aase;
+
+  @BeforeEach
+  void setUp() {
+    this.enrollDate = LocalDate.of(2006, 2, 15);
+    this.ole = new Personals("Ole", "Olsen",
+        "ole.olsen@dot.com", "ole");
+    this.tove = new Personals("Tove", "Hansen",
+        "tove.hansen@dot.com", "tove");
+    this.aase = new Personals("\u00c5se", "\u00d8deg\u00e5rd",
+        "aase@\u00f8deg\u00e5rd.no", "pass\ud83d\udd11"); // a password outside the basic plane
+  }
+
+  /**
+   * Tests that members of all three levels are read back with the same number, points, level,
+   * enrollment date and personal details.
+   */
+  @Test
+  void roundTripTest() throws IOException {
+    BonusMember basic = new BasicMember(1, ole, enrollDate);
+    basic.registerPoints(1234);
+    BonusMember silver = new SilverMember(300, tove, enrollDate.minusYears(50), 30000);
+    BonusMember gold = new GoldMember(Integer.MAX_VALUE, aase, LocalDate.of(2020, 1, 1),
+        Integer.MAX_VALUE);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (MemberEncoder encoder = new MemberEncoder(bytes)) {
+      encoder.write(basic);
+      encoder.write(silver);
+      encoder.write(gold);
+    }
+
+    System.out.println("Test 1: Members of every level are read back unchanged.");
+    MemberDecoder decoder = new MemberDecoder(new ByteArrayInputStream(bytes.toByteArray()));
+    for (BonusMember expected : Arrays.asList(basic, silver, gold)) {
+      BonusMember read = decoder.read();
+      assertEquals(expected.getClass(), read.getClass());
+      assertEquals(expected.getMemberNo(), read.getMemberNo());
+      assertEquals(expected.getPoints(), read.getPoints());
+      assertEquals(expected.getLevel(), read.getLevel());
+      assertEquals(expected.getEnrolledDate(), read.getEnrolledDate());
+      assertEquals(expected.getFirstName(), read.getFirstName());
+      assertEquals(expected.getSurname(), read.getSurname());
+      assertEquals(expected.getPersonals().getEMailAddress(),
+          read.getPersonals().getEMailAddress());
+    }
+    assertNull(decoder.read());
+    assertEquals(3, decoder.getMemberCount());
+
+    System.out.println("Test 2: Passwords are kept, including characters outside the BMP.");
+    decoder = new MemberDecoder(new ByteArrayInputStream(bytes.toByteArray()));
+    assertTrue(decoder.read().getPersonals().okPassword("ole"));
+    assertTrue(decoder.read().getPersonals().okPassword("tove"));
+    assertTrue(decoder.read().getPersonals().okPassword("pass\ud83d\udd11"));
+  }
+
+  /**
+   * Writes more members than fit in one buffer, and asserts that all of them are read back
+   * in order, and that the format stays compact.
+   */
+  @Test
+  void manyMembersTest() throws IOException {
+    int count = 10000;
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (MemberEncoder encoder = new MemberEncoder(bytes)) {
+      for (int i = 0; i < count; i++) {
+        encoder.write(new SilverMember(i, ole, enrollDate, i * 7));
+      }
+      assertEquals(count, encoder.getMemberCount());
+    }
+
+    System.out.println("Test 3: Members spanning many buffers are read back in order.");
+    MemberDecoder decoder = new MemberDecoder(new ByteArrayInputStream(bytes.toByteArray()));
+    for (int i = 0; i < count; i++) {
+      BonusMember read = decoder.read();
+      assertEquals(i, read.getMemberNo());
+      assertEquals(i * 7, read.getPoints());
+    }
+    assertNull(decoder.read());
+
+    System.out.println("Test 4: A member takes well under 64 bytes.");
+    assertTrue(bytes.size() < count * 64, "Encoded size was " + bytes.size());
+  }
+
+  /**
+   * Tests that a stream cut short, or a stream in another format, is reported.
+   */
+  @Test
+  void invalidStreamTest() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (MemberEncoder encoder = new MemberEncoder(bytes)) {
+      encoder.write(new BasicMember(1, ole, enrollDate));
+    }
+    byte[] cut = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 3);
+
+    System.out.println("Test 5: A member cut short is reported.");
+    MemberDecoder decoder = new MemberDecoder(new ByteArrayInputStream(cut));
+    assertThrows(EOFException.class, decoder::read);
+
+    System.out.println("Test 6: A stream that does not hold members is rejected.");
+    assertThrows(IOException.class, () ->
+        new MemberDecoder(new ByteArrayInputStream("id;name\n".getBytes())));
+  }
+}
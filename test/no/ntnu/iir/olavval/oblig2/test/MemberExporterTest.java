@@ -0,0 +1,98 @@
+package no.ntnu.iir.olavval.oblig2.test;
+
+import no.ntnu.iir.olavval.oblig2.model.BonusMember;
+import no.ntnu.iir.olavval.oblig2.model.ExportResult;
+import no.ntnu.iir.olavval.oblig2.model.MemberArchive;
+import no.ntnu.iir.olavval.oblig2.model.MemberDecoder;
+import no.ntnu.iir.olavval.oblig2.model.MemberExporter;
+import no.ntnu.iir.olavval.oblig2.model.MembershipLevel;
+import no.ntnu.iir.olavval.oblig2.model.Personals;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MemberExporterTest {
+
+  private Path file;
+  private MemberArchive archive;
+  private int b1;
+  private int b2;
+  private int b3;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    this.file = Files.createTempFile("export", ".dat");
+    this.archive = new MemberArchive();
+    this.b1 = archive.addMember(new Personals("Ole", "Olsen",
+        "ole.olsen@dot.com", "ole"), LocalDate.of(2006, 2, 15));
+    this.b2 = archive.addMember(new Personals("Tove", "Hansen, jr.",
+        "tove.hansen@dot.com", "tove"), LocalDate.of(2007, 1, 2));
+    this.b3 = archive.addMember(new Personals("Lise", "Lisand",
+        "lise@lisand.no", "lise"), LocalDate.of(2008, 3, 4));
+    archive.registerPoints(b1, 30000);
+    archive.checkAndUpgradeMembers(LocalDate.of(2007, 2, 10));
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  /**
+   * Exports the archive as CSV, with and without filters.
+   */
+  @Test
+  void csvExportTest() throws IOException {
+    MemberExporter exporter = new MemberExporter(archive);
+
+    System.out.println("Test 1: Every member is exported as a CSV line.");
+    ExportResult result = exporter.export(file, MemberExporter.Format.CSV);
+    assertEquals(3, result.getExportedMembers());
+    assertEquals(Files.size(file), result.getBytesWritten());
+    List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+    assertEquals("memberNo,level,points,enrolled,firstname,surname,email", lines.get(0));
+    assertTrue(lines.contains(b1 + ",Silver,30000,2006-02-15,Ole,Olsen,ole.olsen@dot.com"));
+    assertTrue(lines.contains(b2 + ",Basic,0,2007-01-02,Tove,\"Hansen, jr.\",tove.hansen@dot.com"));
+
+    System.out.println("Test 2: Only members at the chosen levels are exported.");
+    exporter.setLevels(MembershipLevel.SILVER, MembershipLevel.GOLD);
+    assertEquals(1, exporter.export(file, MemberExporter.Format.CSV).getExportedMembers());
+    assertEquals(2, Files.readAllLines(file).size());
+
+    System.out.println("Test 3: Only members enrolled in the chosen period are exported.");
+    exporter.setLevels(MembershipLevel.values());
+    exporter.setEnrolledBetween(LocalDate.of(2007, 1, 2), LocalDate.of(2008, 3, 4));
+    assertEquals(2, exporter.export(file, MemberExporter.Format.CSV).getExportedMembers());
+  }
+
+  /**
+   * Exports the archive in the binary format, and reads it back.
+   */
+  @Test
+  void binaryExportTest() throws IOException {
+    MemberExporter exporter = new MemberExporter(archive);
+    exporter.setEnrolledBetween(LocalDate.of(2006, 1, 1), LocalDate.of(2007, 12, 31));
+
+    System.out.println("Test 4: A binary export reads back with MemberDecoder.");
+    assertEquals(2, exporter.export(file, MemberExporter.Format.BINARY).getExportedMembers());
+    try (InputStream in = Files.newInputStream(file)) {
+      MemberDecoder decoder = new MemberDecoder(in);
+      for (BonusMember member = decoder.read(); member != null; member = decoder.read()) {
+        assertNotEquals(b3, member.getMemberNo());
+        assertEquals(archive.findMember(member.getMemberNo()).getPoints(), member.getPoints());
+        assertEquals(archive.findMember(member.getMemberNo()).getLevel(), member.getLevel());
+      }
+      assertEquals(2, decoder.getMemberCount());
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package no.ntnu.iir.olavval.oblig2.test;
+
+import no.ntnu.iir.olavval.oblig2.model.BonusMember;
+import no.ntnu.iir.olavval.oblig2.model.ImportResult;
+import no.ntnu.iir.olavval.oblig2.model.MemberArchive;
+import no.ntnu.iir.olavval.oblig2.model.MemberImporter;
+import no.ntnu.iir.olavval.oblig2.model.Personals;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MemberImporterTest {
+
+  private Path file;
+  private MemberArchive archive;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    this.file = Files.createTempFile("import", ".csv");
+    this.archive = new MemberArchive();
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  /**
+   * Imports a member file with good and bad rows, and asserts that the good rows become members
+   * and the bad rows are reported with their line numbers.
+   */
+  @Test
+  void importMembersTest() throws IOException {
+    Files.write(file, ("firstname,surname,email,password,enrolled\r\n"
+        + "Ole,Olsen,ole.olsen@dot.com,ole,2006-02-15\r\n"
+        + " ,Hansen,tove.hansen@dot.com,tove,2006-02-15\r\n" // blank first name
+        + "Lise,Lisand,lise@lisand.no,lise,2006-13-15\r\n" // no such month
+        + "Per,Persen,per@dot.com,per\r\n" // no enrollment date
+        + "\r\n"
+        + "J\u00f8rn,\u00d8deg\u00e5rd,jorn@dot.com,jorn,2007-01-01") // no newline at the end
+        .getBytes(StandardCharsets.UTF_8));
+
+    ImportResult result = new MemberImporter(archive).importMembers(file);
+
+    System.out.println("Test 1: Good member rows are imported.");
+    assertEquals(2, result.getImportedRows());
+    assertEquals(2, archive.getArchiveSize());
+    BonusMember ole = archive.stream()
+        .filter(member -> member.getFirstName().equals("Ole")).findFirst().orElse(null);
+    assertNotNull(ole);
+    assertEquals(LocalDate.of(2006, 2, 15), ole.getEnrolledDate());
+    assertTrue(ole.getPersonals().okPassword("ole"));
+    assertTrue(archive.stream()
+        .anyMatch(member -> member.getSurname().equals("\u00d8deg\u00e5rd")));
+
+    System.out.println("Test 2: Bad member rows are reported with their line numbers.");
+    assertEquals(3, result.getRejectedRows());
+    List<ImportResult.Reject> rejects = result.getRejects();
+    assertEquals(3, rejects.get(0).getLineNumber());
+    assertEquals(4, rejects.get(1).getLineNumber());
+    assertEquals(5, rejects.get(2).getLineNumber());
+    assertTrue(result.getRowsPerSecond() > 0);
+  }
+
+  /**
+   * Imports more rows than fit in one read chunk or one batch, and point transactions for the
+   * imported members.
+   */
+  @Test
+  void importPointsTest() throws IOException {
+    int memberCount = 5000;
+    StringBuilder members = new StringBuilder("firstname,surname,email,password,enrolled\n");
+    for (int i = 0; i < memberCount; i++) {
+      members.append("First").append(i).append(",Surname").append(i)
+          .append(",member").append(i).append("@dot.com,secret,2006-02-15\n");
+    }
+    Files.write(file, members.toString().getBytes(StandardCharsets.UTF_8));
+    MemberImporter importer = new MemberImporter(archive, 100);
+
+    System.out.println("Test 3: Rows spanning several chunks and batches are all imported.");
+    assertEquals(memberCount, importer.importMembers(file).getImportedRows());
+    assertEquals(memberCount, archive.getArchiveSize());
+
+    int memberNo = archive.addMember(new Personals("Ole", "Olsen", "ole@dot.com", "ole"),
+        LocalDate.of(2006, 2, 15));
+    Files.write(file, ("memberNo,points\n"
+        + memberNo + ",100\n"
+        + memberNo + ", 250 \n"
+        + "999999999,100\n" // no such member
+        + memberNo + ",-5\n"
+        + memberNo + ",lots\n").getBytes(StandardCharsets.UTF_8));
+
+    System.out.println("Test 4: Point transactions are credited, and bad ones reported.");
+    ImportResult result = importer.importPoints(file);
+    assertEquals(2, result.getImportedRows());
+    assertEquals(350, archive.findMember(memberNo).getPoints());
+    assertEquals(3, result.getRejectedRows());
+    assertEquals(4, result.getRejects().get(0).getLineNumber());
+    assertTrue(result.getRejects().get(0).getReason().contains("999999999"));
+    assertEquals(5, result.getRejects().get(1).getLineNumber());
+    assertEquals(6, result.getRejects().get(2).getLineNumber());
+  }
+}
@@ -0,0 +1,97 @@
+package no.ntnu.iir.olavval.oblig2.test;
+
+import no.ntnu.iir.olavval.oblig2.model.MemberNumberAllocator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MemberNumberAllocatorTest {
+
+  /**
+   * Tests that a sequential allocator hands out every number exactly once, in order,
+   * and fails with -1 once the number space is used up.
+   */
+  @Test
+  void sequentialAllocationTest() {
+    MemberNumberAllocator allocator = new MemberNumberAllocator(130, false);
+    System.out.println("Test 1: Numbers are handed out in sequence.");
+    for (int i = 0; i < 130; i++) {
+      assertEquals(i, allocator.allocate());
+    }
+    System.out.println("Test 2: Allocation fails when every number is taken.");
+    assertEquals(-1, allocator.allocate());
+
+    System.out.println("Test 3: Released numbers are handed out again.");
+    assertTrue(allocator.release(77));
+    assertFalse(allocator.release(77));
+    assertEquals(77, allocator.allocate());
+    assertEquals(130, allocator.getTakenCount());
+  }
+
+  /**
+   * Tests that a scrambled allocator hands out every number in the space exactly once,
+   * not in sequence, and that release and markTaken work on scrambled numbers.
+   */
+  @Test
+  void scrambledAllocationTest() {
+    int numberSpace = 1000;
+    MemberNumberAllocator allocator = new MemberNumberAllocator(numberSpace, true);
+    BitSet seen = new BitSet(numberSpace);
+    int inSequence = 0;
+    for (int i = 0; i < numberSpace; i++) {
+      int memberNo = allocator.allocate();
+      assertTrue(memberNo >= 0 && memberNo < numberSpace, "Number out of range: " + memberNo);
+      assertFalse(seen.get(memberNo), "Number handed out twice: " + memberNo);
+      seen.set(memberNo);
+      if (memberNo == i) {
+        inSequence++;
+      }
+    }
+    assertEquals(-1, allocator.allocate());
+    assertTrue(inSequence < 10, "Scrambled numbers should not follow the sequence.");
+
+    assertTrue(allocator.release(500));
+    assertFalse(allocator.markTaken(1));
+    assertTrue(allocator.markTaken(500));
+    assertEquals(-1, allocator.allocate());
+  }
+
+  /**
+   * Tests that concurrent callers never receive the same number.
+   */
+  @Test
+  void concurrentAllocationTest() throws InterruptedException {
+    int threadCount = 8;
+    int perThread = 20000;
+    MemberNumberAllocator allocator =
+        new MemberNumberAllocator(threadCount * perThread, false);
+    int[][] results = new int[threadCount][perThread];
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < threadCount; t++) {
+      int[] result = results[t];
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < perThread; i++) {
+          result[i] = allocator.allocate();
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    BitSet seen = new BitSet();
+    for (int[] result : results) {
+      for (int memberNo : result) {
+        assertTrue(memberNo >= 0);
+        assertFalse(seen.get(memberNo), "Number handed out twice: " + memberNo);
+        seen.set(memberNo);
+      }
+    }
+    assertEquals(-1, allocator.allocate());
+  }
+}
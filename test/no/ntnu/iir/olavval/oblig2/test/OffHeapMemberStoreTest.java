@@ -0,0 +1,120 @@
+package no.ntnu.iir.olavval.oblig2.test;
+
+import no.ntnu.iir.olavval.oblig2.model.BasicMember;
+import no.ntnu.iir.olavval.oblig2.model.BonusMember;
+import no.ntnu.iir.olavval.oblig2.model.GoldMember;
+import no.ntnu.iir.olavval.oblig2.model.MemberArchive;
+import no.ntnu.iir.olavval.oblig2.model.MembershipLevel;
+import no.ntnu.iir.olavval.oblig2.model.OffHeapMemberStore;
+import no.ntnu.iir.olavval.oblig2.model.Personals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapMemberStoreTest {
+
+  private OffHeapMemberStore store;
+  private Personals ole;
+  private LocalDate enrollDate;
+
+  @BeforeEach
+  void setUp() {
+    this.store = new OffHeapMemberStore();
+    this.ole = new Personals("Ole", "Olsen",
+        "ole.olsen@dot.com", "ole");
+    this.enrollDate = LocalDate.of(2006, 2, 15);
+  }
+
+  /**
+   * Tests that a stored member reads back with the same state, and that changes made
+   * through a view are kept in the store.
+   */
+  @Test
+  void viewsTest() {
+    System.out.println("Test 1: A stored member reads back with the same state.");
+    assertTrue(store.putIfAbsent(new GoldMember(7, ole, enrollDate, 100)));
+    assertFalse(store.putIfAbsent(new BasicMember(7, ole, enrollDate)));
+    BonusMember view = store.get(7);
+    assertEquals(7, view.getMemberNo());
+    assertEquals(100, view.getPoints());
+    assertEquals(MembershipLevel.GOLD, view.getLevel());
+    assertEquals(enrollDate, view.getEnrolledDate());
+    assertEquals("Ole", view.getFirstName());
+    assertEquals("ole.olsen@dot.com", view.getEmail());
+    assertTrue(view.getPersonals().okPassword("ole"));
+
+    System.out.println("Test 2: Points and password changes are written to the store.");
+    view.registerPoints(1000); // Gold multiplier applies
+    assertEquals(1600, store.get(7).getPoints());
+    assertTrue(view.getPersonals().changePassword("ole", "olsen"));
+    assertTrue(store.get(7).getPersonals().okPassword("olsen"));
+
+    System.out.println("Test 3: Remove returns a copy, and old views stop working.");
+    BonusMember removed = store.remove(7);
+    assertEquals(1600, removed.getPoints());
+    assertEquals(MembershipLevel.GOLD, removed.getLevel());
+    assertNull(store.get(7));
+    assertEquals(0, store.size());
+    assertThrows(IllegalStateException.class, view::getPoints);
+  }
+
+  /**
+   * Runs a long random sequence of adds and removes against both the store and a HashMap,
+   * and asserts that both hold the same members afterwards. This covers resizing, reuse of
+   * removed records and removal from the middle of probe runs.
+   */
+  @Test
+  void matchesHashMapTest() {
+    Map<Integer, Integer> expected = new HashMap<>(); // member number to points
+    Random random = new Random(42);
+
+    for (int i = 0; i < 200000; i++) {
+      int memberNo = random.nextInt(5000);
+      if (random.nextInt(3) == 0) {
+        BonusMember removed = store.remove(memberNo);
+        Integer points = expected.remove(memberNo);
+        assertEquals(points, removed == null ? null : removed.getPoints());
+      } else {
+        BonusMember member = new BasicMember(memberNo, ole, enrollDate);
+        member.registerPoints(i);
+        assertEquals(!expected.containsKey(memberNo), store.putIfAbsent(member));
+        expected.putIfAbsent(memberNo, i);
+      }
+    }
+
+    assertEquals(expected.size(), store.size());
+    for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+      assertEquals(entry.getValue(), store.get(entry.getKey()).getPoints());
+    }
+    int iterated = 0;
+    for (BonusMember member : store) {
+      assertEquals(expected.get(member.getMemberNo()), member.getPoints());
+      iterated++;
+    }
+    assertEquals(expected.size(), iterated);
+  }
+
+  /**
+   * Tests that a MemberArchive runs on top of the off-heap store, including in-place upgrades.
+   */
+  @Test
+  void archiveTest() {
+    MemberArchive archive = new MemberArchive(store);
+    LocalDate testDate = LocalDate.of(2007, 2, 10);
+    int memberNo = archive.addMember(ole, enrollDate);
+    archive.registerPoints(memberNo, 30000);
+
+    System.out.println("Test 4: Archive upgrades a member kept off the heap.");
+    assertEquals(1, archive.checkAndUpgradeMembers(testDate).getSilverUpgrades());
+    assertEquals(MembershipLevel.SILVER, archive.findMember(memberNo).getLevel());
+    assertEquals(30000, archive.findPoints(memberNo, "ole"));
+    archive.registerPoints(memberNo, 1000);
+    assertEquals(31200, archive.findMember(memberNo).getPoints());
+  }
+}
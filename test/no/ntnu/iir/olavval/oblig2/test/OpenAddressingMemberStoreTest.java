@@ -0,0 +1,95 @@
+package no.ntnu.iir.olavval.oblig2.test;
+
+import no.ntnu.iir.olavval.oblig2.model.BasicMember;
+import no.ntnu.iir.olavval.oblig2.model.BonusMember;
+import no.ntnu.iir.olavval.oblig2.model.OpenAddressingMemberStore;
+import no.ntnu.iir.olavval.oblig2.model.Personals;
+import no.ntnu.iir.olavval.oblig2.model.SilverMember;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OpenAddressingMemberStoreTest {
+
+  private OpenAddressingMemberStore store;
+  private Personals ole;
+  private LocalDate enrollDate;
+
+  @BeforeEach
+  void setUp() {
+    this.store = new OpenAddressingMemberStore();
+    this.ole = new Personals("Ole", "Olsen",
+        "ole.olsen@dot.com", "ole");
+    this.enrollDate = LocalDate.of(2006, 2, 15);
+  }
+
+  /**
+   * Tests adding, finding, replacing and removing single members,
+   * including member number 0 which is a valid member number.
+   */
+  @Test
+  void basicOperationsTest() {
+    BonusMember zero = new BasicMember(0, ole, enrollDate);
+    System.out.println("Test 1: Add member number 0.");
+    assertTrue(store.putIfAbsent(zero));
+    assertSame(zero, store.get(0));
+    assertTrue(store.contains(0));
+    assertEquals(1, store.size());
+
+    System.out.println("Test 2: Adding the same member number again fails.");
+    assertFalse(store.putIfAbsent(new BasicMember(0, ole, enrollDate)));
+    assertSame(zero, store.get(0));
+
+    System.out.println("Test 3: Replace requires the stored object.");
+    SilverMember silverZero = new SilverMember(0, ole, enrollDate, 0);
+    assertFalse(store.replace(new BasicMember(0, ole, enrollDate), silverZero));
+    assertTrue(store.replace(zero, silverZero));
+    assertSame(silverZero, store.get(0));
+
+    System.out.println("Test 4: Remove member number 0.");
+    assertSame(silverZero, store.remove(0));
+    assertNull(store.get(0));
+    assertNull(store.remove(0));
+    assertEquals(0, store.size());
+  }
+
+  /**
+   * Runs a long random sequence of adds and removes against both the store and a HashMap,
+   * and asserts that both hold the same members afterwards. This covers resizing and
+   * removal from the middle of probe runs.
+   */
+  @Test
+  void matchesHashMapTest() {
+    Map<Integer, BonusMember> expected = new HashMap<>();
+    Random random = new Random(42);
+
+    for (int i = 0; i < 200000; i++) {
+      int memberNo = random.nextInt(5000);
+      if (random.nextInt(3) == 0) {
+        assertSame(expected.remove(memberNo), store.remove(memberNo));
+      } else {
+        BonusMember member = new BasicMember(memberNo, ole, enrollDate);
+        assertEquals(!expected.containsKey(memberNo), store.putIfAbsent(member));
+        expected.putIfAbsent(memberNo, member);
+      }
+    }
+
+    assertEquals(expected.size(), store.size());
+    for (Map.Entry<Integer, BonusMember> entry : expected.entrySet()) {
+      assertSame(entry.getValue(), store.get(entry.getKey()));
+    }
+    int iterated = 0;
+    for (BonusMember member : store) {
+      assertSame(expected.get(member.getMemberNo()), member);
+      iterated++;
+    }
+    assertEquals(expected.size(), iterated);
+    assertEquals(expected.size(), store.stream().count());
+  }
+}
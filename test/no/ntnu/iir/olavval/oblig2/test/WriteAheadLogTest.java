@@ -0,0 +1,203 @@
+package no.ntnu.iir.olavval.oblig2.test;
+
+import no.ntnu.iir.olavval.oblig2.model.MemberArchive;
+import no.ntnu.iir.olavval.oblig2.model.MembershipLevel;
+import no.ntnu.iir.olavval.oblig2.model.OpenAddressingMemberStore;
+import no.ntnu.iir.olavval.oblig2.model.Personals;
+import no.ntnu.iir.olavval.oblig2.model.StripedMemberStore;
+import no.ntnu.iir.olavval.oblig2.model.WriteAheadLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteAheadLogTest {
+
+  private Path directory;
+  private LocalDate testDate;
+  private LocalDate enrollDate;
+  private Personals ole;
+  private Personals tove;
+  private Personals lise;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    this.directory = Files.createTempDirectory("members");
+    this.testDate = LocalDate.of(2007, 2, 10);
+    this.enrollDate = LocalDate.of(2006, 2, 15);
+    this.ole = new Personals("Ole", "Olsen",
+        "ole.olsen@dot.com", "ole");
+    this.tove = new Personals("Tove", "Hansen",
+        "tove.hansen@dot.com", "tove");
+    this.lise = new Personals("Lise", "Lisand",
+        "lise@lisand.no", "lise");
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  /**
+   * Tests that replaying the log rebuilds the members, points, levels and removals of
+   * the archive that wrote it.
+   */
+  @Test
+  void replayTest() throws IOException {
+    WriteAheadLog log = new WriteAheadLog(directory, 0);
+    MemberArchive archive = new MemberArchive(new OpenAddressingMemberStore(), log);
+    int b1 = archive.addMember(ole, enrollDate);
+    int b2 = archive.addMember(tove, enrollDate);
+    int b3 = archive.addMember(lise, enrollDate);
+    archive.registerPoints(b1, 30000);
+    archive.checkAndUpgradeMembers(testDate);
+    archive.registerPoints(b1, 1000); // Silver multiplier applies
+    archive.registerPoints(new int[] {b2, b2}, new int[] {100, 200});
+    archive.removeMember(archive.findMember(b3));
+    log.close();
+
+    System.out.println("Test 1: Replaying the log rebuilds the archive.");
+    WriteAheadLog reopened = new WriteAheadLog(directory, 0);
+    MemberArchive replayed = new MemberArchive(new OpenAddressingMemberStore(), reopened);
+    assertEquals(2, replayed.getArchiveSize());
+    assertEquals(31200, replayed.findMember(b1).getPoints());
+    assertEquals(MembershipLevel.SILVER, replayed.findMember(b1).getLevel());
+    assertEquals(300, replayed.findPoints(b2, "tove"));
+    assertNull(replayed.findMember(b3));
+    assertEquals(b2, replayed.findByEmail("tove.hansen@dot.com").getMemberNo());
+    assertNull(replayed.findByEmail("lise@lisand.no"));
+
+    System.out.println("Test 2: The replayed archive keeps logging.");
+    replayed.registerPoints(b2, 50);
+    reopened.close();
+    WriteAheadLog again = new WriteAheadLog(directory, 0);
+    assertEquals(350, new MemberArchive(new OpenAddressingMemberStore(), again)
+        .findMember(b2).getPoints());
+    again.close();
+  }
+
+  /**
+   * Tests that a record cut short by a crash is dropped, while the records before it are kept.
+   */
+  @Test
+  void tornTailTest() throws IOException {
+    WriteAheadLog log = new WriteAheadLog(directory, 0);
+    MemberArchive archive = new MemberArchive(new OpenAddressingMemberStore(), log);
+    int b1 = archive.addMember(ole, enrollDate);
+    archive.registerPoints(b1, 500);
+    log.close();
+    Path segment = directory.resolve(String.format("segment-%020d.wal", 1));
+    long length = Files.size(segment);
+    // the start of a record, whose body never made it to disk
+    Files.write(segment, new byte[] {0, 0, 0, 9, 1, 2, 3, 4, 2}, StandardOpenOption.APPEND);
+
+    System.out.println("Test 3: A torn record at the end of the log is cut off.");
+    WriteAheadLog reopened = new WriteAheadLog(directory, 0);
+    assertEquals(length, Files.size(segment));
+    MemberArchive replayed = new MemberArchive(new OpenAddressingMemberStore(), reopened);
+    assertEquals(500, replayed.findMember(b1).getPoints());
+    reopened.close();
+  }
+
+  /**
+   * Credits points from several threads at once, and asserts that the credits share forces
+   * to disk, and that every credit is in the log.
+   */
+  @Test
+  void groupCommitTest() throws IOException, InterruptedException {
+    WriteAheadLog log = new WriteAheadLog(directory, 1_000_000); // 1 ms batch window
+    MemberArchive archive = new MemberArchive(new StripedMemberStore(), log);
+    int memberNo = archive.addMember(ole, enrollDate);
+    int threadCount = 8;
+    int creditsPerThread = 200;
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < threadCount; t++) {
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < creditsPerThread; i++) {
+          archive.registerPoints(memberNo, 1);
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    System.out.println("Test 4: Concurrent credits share forces to disk.");
+    assertTrue(log.getBatchCount() < threadCount * creditsPerThread,
+        "Expected fewer forces than credits, got " + log.getBatchCount());
+    log.close();
+
+    WriteAheadLog reopened = new WriteAheadLog(directory, 0);
+    assertEquals(threadCount * creditsPerThread,
+        new MemberArchive(new OpenAddressingMemberStore(), reopened)
+            .findMember(memberNo).getPoints());
+    reopened.close();
+  }
+
+  /**
+   * Writes a snapshot while a member keeps being credited, and asserts that the covered log
+   * segments are deleted, and that the snapshot and the rest of the log rebuild the archive.
+   */
+  @Test
+  void checkpointTest() throws IOException, InterruptedException, ExecutionException {
+    WriteAheadLog log = new WriteAheadLog(directory, 0);
+    MemberArchive archive = new MemberArchive(new StripedMemberStore(), log);
+    int b1 = archive.addMember(ole, enrollDate);
+    int b2 = archive.addMember(tove, enrollDate);
+    int b3 = archive.addMember(lise, enrollDate);
+    archive.registerPoints(b1, 30000);
+    archive.checkAndUpgradeMembers(testDate);
+    Thread creditor = new Thread(() -> {
+      for (int i = 0; i < 500; i++) {
+        archive.registerPoints(b2, 10);
+      }
+    });
+    creditor.start();
+    archive.checkpoint().get();
+    creditor.join();
+    archive.removeMember(archive.findMember(b3));
+    archive.registerPoints(b1, 1000); // Silver multiplier applies
+
+    System.out.println("Test 5: A checkpoint deletes the log segments its snapshot covers.");
+    try (Stream<Path> files = Files.list(directory)) {
+      assertEquals(2, files.count(), "Expected one snapshot and one log segment");
+    }
+    log.close();
+
+    System.out.println("Test 6: The snapshot and the rest of the log rebuild the archive.");
+    WriteAheadLog reopened = new WriteAheadLog(directory, 0);
+    MemberArchive restored = new MemberArchive(new OpenAddressingMemberStore(), reopened);
+    assertEquals(2, restored.getArchiveSize());
+    assertEquals(31200, restored.findMember(b1).getPoints());
+    assertEquals(MembershipLevel.SILVER, restored.findMember(b1).getLevel());
+    assertEquals(5000, restored.findPoints(b2, "tove"));
+    assertNull(restored.findMember(b3));
+
+    System.out.println("Test 7: A second checkpoint replaces the first snapshot.");
+    restored.registerPoints(b2, 50);
+    restored.checkpoint().get();
+    reopened.close();
+    WriteAheadLog again = new WriteAheadLog(directory, 0);
+    assertEquals(5050, new MemberArchive(new OpenAddressingMemberStore(), again)
+        .findMember(b2).getPoints());
+    try (Stream<Path> files = Files.list(directory)) {
+      assertEquals(2, files.count(), "Expected one snapshot and one log segment");
+    }
+    again.close();
+  }
+}